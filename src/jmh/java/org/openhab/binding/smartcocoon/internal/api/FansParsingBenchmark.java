@@ -0,0 +1,135 @@
+/**
+ * Copyright (c) 2010-2023 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.binding.smartcocoon.internal.api;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.StringJoiner;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.eclipse.jdt.annotation.Nullable;
+import org.openhab.binding.smartcocoon.internal.dto.FanInfoResultDTO;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import com.google.gson.Gson;
+import com.google.gson.stream.JsonReader;
+
+/**
+ * Benchmarks parsing of the /fans response of a poll, as done by {@link SmartCocoonAPI#getFansAsync}.
+ *
+ * The payloads repeat the fan of the recorded fan.json resource with distinct ids. The first poll creates all
+ * DTOs, an unchanged poll reuses the DTOs of the previous snapshot. {@link #gsonFromJson} is the baseline of the
+ * former parsing, which decoded the content to a String and bound it to a new array of DTOs with
+ * {@link Gson#fromJson}.
+ *
+ * All of them read the content from a byte array, as the binding buffers the response before parsing it: the
+ * checksum of the content tells an unchanged list apart without parsing it. The allocation per poll is reported as
+ * gc.alloc.rate.norm by the GC profiler, which the jmh profile and {@link #main} enable.
+ *
+ * @author Mike Fedotov - Initial contribution
+ */
+@NonNullByDefault
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class FansParsingBenchmark {
+
+    @Param({ "10", "1000", "10000" })
+    public int fans;
+
+    private final Gson gson = new Gson();
+    private byte[] payload = new byte[0];
+    private SmartCocoonFansSnapshot parsed = SmartCocoonFansSnapshot.EMPTY;
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(FansParsingBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class).build()).run();
+    }
+
+    @Setup
+    public void setUp() throws IOException {
+        String fan;
+        try (InputStream stream = FansParsingBenchmark.class.getResourceAsStream("fan.json")) {
+            if (stream == null) {
+                throw new IOException("fan.json not found");
+            }
+            fan = new String(stream.readAllBytes(), StandardCharsets.UTF_8);
+        }
+        StringJoiner content = new StringJoiner(",", "{\"fans\":[", "]}");
+        for (int i = 0; i < fans; i++) {
+            content.add(fan.replace("1000", Integer.toString(1000 + i)).replace("a1b2c3d4e5f6",
+                    String.format("a1b2c3%06x", i)));
+        }
+        payload = content.toString().getBytes(StandardCharsets.UTF_8);
+        SmartCocoonFansSnapshot parsed = read(SmartCocoonFansSnapshot.EMPTY);
+        if (parsed == null || parsed.getFans().size() != fans) {
+            throw new IllegalStateException("Payload not parsed as expected");
+        }
+        this.parsed = parsed;
+    }
+
+    @Benchmark
+    public @Nullable SmartCocoonFansSnapshot firstPoll() throws IOException {
+        return read(SmartCocoonFansSnapshot.EMPTY);
+    }
+
+    @Benchmark
+    public @Nullable SmartCocoonFansSnapshot unchangedPoll() throws IOException {
+        return read(parsed);
+    }
+
+    @Benchmark
+    public Map<String, FanInfoResultDTO> gsonFromJson() {
+        FansResult result = gson.fromJson(new String(payload, StandardCharsets.UTF_8), FansResult.class);
+        Map<String, FanInfoResultDTO> fans = new HashMap<>();
+        for (FanInfoResultDTO fan : result.fans) {
+            fans.put(fan.fan_id, fan);
+        }
+        return fans;
+    }
+
+    private @Nullable SmartCocoonFansSnapshot read(SmartCocoonFansSnapshot previous) throws IOException {
+        JsonReader reader = new JsonReader(
+                new InputStreamReader(new ByteArrayInputStream(payload), StandardCharsets.UTF_8));
+        return SmartCocoonAPI.readFans(reader, previous, Instant.EPOCH);
+    }
+
+    private static class FansResult {
+        public int total;
+        public FanInfoResultDTO[] fans = new FanInfoResultDTO[0];
+    }
+}
@@ -0,0 +1,80 @@
+/**
+ * Copyright (c) 2010-2023 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.binding.smartcocoon.internal.api;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.eclipse.jetty.client.HttpClient;
+import org.eclipse.jetty.client.api.Request;
+import org.eclipse.jetty.http.HttpMethod;
+import org.openhab.binding.smartcocoon.internal.SmartCocoonBridgeConfiguration;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.google.gson.Gson;
+
+/**
+ * Benchmarks building the requests of the API, done for every request sent. The requests are never sent, the HTTP
+ * client is not even started.
+ *
+ * @author Mike Fedotov - Initial contribution
+ */
+@NonNullByDefault
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class RequestBenchmark {
+
+    private static final String FANS_URL = SmartCocoonAPI.DEFAULT_BASE_URL + "/fans";
+
+    private @NonNullByDefault({}) ScheduledExecutorService scheduler;
+    private @NonNullByDefault({}) SmartCocoonAPI api;
+
+    @Setup
+    public void setUp() {
+        scheduler = Executors.newSingleThreadScheduledExecutor();
+        api = new SmartCocoonAPI(new SmartCocoonBridgeConfiguration(), new HttpClient(), new Gson(), scheduler,
+                new SmartCocoonRequestLimiter(1), null, Runnable::run);
+    }
+
+    @TearDown
+    public void tearDown() {
+        api.dispose();
+        scheduler.shutdownNow();
+    }
+
+    @Benchmark
+    public Request listRequest() {
+        return api.createRequest(FANS_URL, HttpMethod.GET);
+    }
+
+    @Benchmark
+    public Request fanRequest() {
+        return api.createRequest(FANS_URL + "/1000", HttpMethod.PUT);
+    }
+}
@@ -0,0 +1,64 @@
+/**
+ * Copyright (c) 2010-2023 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.binding.smartcocoon.internal.api;
+
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks the conversion between the speed of the fanSpeed channel and the speed level of the cloud, done for
+ * every published speed and every speed command.
+ *
+ * @author Mike Fedotov - Initial contribution
+ */
+@NonNullByDefault
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class SpeedConversionBenchmark {
+
+    // Not constant, so the conversions are not folded
+    public int maxSpeed = 100;
+    public int maxSpeedLevel = 12;
+
+    @Benchmark
+    public int toSpeedLevel() {
+        int sum = 0;
+        for (int speed = 0; speed <= maxSpeed; speed++) {
+            sum += SmartCocoonAPI.toSpeedLevel(speed);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public int toSpeed() {
+        int sum = 0;
+        for (int speedLevel = 0; speedLevel <= maxSpeedLevel; speedLevel++) {
+            sum += SmartCocoonAPI.toSpeed(speedLevel);
+        }
+        return sum;
+    }
+}
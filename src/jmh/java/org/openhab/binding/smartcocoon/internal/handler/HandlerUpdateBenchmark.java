@@ -0,0 +1,119 @@
+/**
+ * Copyright (c) 2010-2023 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.binding.smartcocoon.internal.handler;
+
+import static org.openhab.binding.smartcocoon.internal.SmartCocoonBindingConstants.*;
+
+import java.lang.reflect.Proxy;
+import java.time.ZoneId;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.openhab.binding.smartcocoon.internal.dto.FanInfoResultDTO;
+import org.openhab.core.thing.ChannelUID;
+import org.openhab.core.thing.Thing;
+import org.openhab.core.thing.ThingStatus;
+import org.openhab.core.thing.ThingStatusDetail;
+import org.openhab.core.thing.ThingStatusInfo;
+import org.openhab.core.thing.ThingUID;
+import org.openhab.core.thing.binding.ThingHandlerCallback;
+import org.openhab.core.thing.binding.builder.ChannelBuilder;
+import org.openhab.core.thing.binding.builder.ThingBuilder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks the fan-out of a fan's state to its channels by {@link SmartCocoonHandler#update(FanInfoResultDTO)},
+ * done for every changed fan of a poll. All channels are linked, the callback only counts the published states.
+ *
+ * @author Mike Fedotov - Initial contribution
+ */
+@NonNullByDefault
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class HandlerUpdateBenchmark {
+
+    private static final List<String> CHANNELS = List.of(CHANNEL_FAN_SWITCH, CHANNEL_FAN_SPEED,
+            CHANNEL_RUNTIME_TODAY, CHANNEL_DUTY_CYCLE, CHANNEL_AVERAGE_SPEED);
+
+    private final FanInfoResultDTO running = fan("always_on", 6, true);
+    private final FanInfoResultDTO stopped = fan("always_off", 3, false);
+    private @NonNullByDefault({}) SmartCocoonHandler handler;
+    private long publishedStates;
+    private boolean toggle;
+
+    @Setup
+    public void setUp() {
+        ThingUID thingUID = new ThingUID(THING_TYPE_FAN, "benchmark");
+        ThingBuilder thingBuilder = ThingBuilder.create(THING_TYPE_FAN, thingUID);
+        for (String channelId : CHANNELS) {
+            thingBuilder.withChannel(ChannelBuilder.create(new ChannelUID(thingUID, channelId), null).build());
+        }
+        Thing thing = thingBuilder.build();
+        thing.setStatusInfo(new ThingStatusInfo(ThingStatus.ONLINE, ThingStatusDetail.NONE, null));
+
+        // Version independent stub of the callback, only what the handler uses on updates is implemented
+        ThingHandlerCallback callback = (ThingHandlerCallback) Proxy.newProxyInstance(
+                ThingHandlerCallback.class.getClassLoader(), new Class<?>[] { ThingHandlerCallback.class },
+                (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "isChannelLinked":
+                            return Boolean.TRUE;
+                        case "stateUpdated":
+                            publishedStates++;
+                            return null;
+                        default:
+                            return null;
+                    }
+                });
+        handler = new SmartCocoonHandler(thing, ZoneId::systemDefault);
+        handler.setCallback(callback);
+        handler.update(running);
+    }
+
+    @Benchmark
+    public long changedFan() {
+        toggle = !toggle;
+        handler.update(toggle ? stopped : running);
+        return publishedStates;
+    }
+
+    @Benchmark
+    public long unchangedFan() {
+        handler.update(running);
+        return publishedStates;
+    }
+
+    private static FanInfoResultDTO fan(String mode, int speedLevel, boolean fanOn) {
+        FanInfoResultDTO fan = new FanInfoResultDTO();
+        fan.id = "1000";
+        fan.fan_id = "a1b2c3d4e5f6";
+        fan.mode = mode;
+        fan.speed_level = speedLevel;
+        fan.fan_on = fanOn;
+        return fan;
+    }
+}
@@ -0,0 +1,139 @@
+/**
+ * Copyright (c) 2010-2023 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.binding.smartcocoon.internal.handler;
+
+import static org.openhab.binding.smartcocoon.internal.SmartCocoonBindingConstants.*;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.openhab.binding.smartcocoon.internal.api.SmartCocoonFansSnapshot;
+import org.openhab.binding.smartcocoon.internal.dto.FanInfoResultDTO;
+import org.openhab.core.config.core.Configuration;
+import org.openhab.core.thing.ChannelUID;
+import org.openhab.core.thing.Thing;
+import org.openhab.core.thing.ThingUID;
+import org.openhab.core.thing.binding.ThingHandlerCallback;
+import org.openhab.core.thing.binding.builder.ChannelBuilder;
+import org.openhab.core.thing.binding.builder.ThingBuilder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks the latency of updating the aggregated channels of a zone when one of its members changed: replacing
+ * the contribution of the member by {@link SmartCocoonZoneHandler#fanChanged}, as done for the changed fans of a
+ * poll, against aggregating all members again by {@link SmartCocoonZoneHandler#update}. All channels are linked,
+ * the callback only counts the published states.
+ *
+ * @author Mike Fedotov - Initial contribution
+ */
+@NonNullByDefault
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class ZoneUpdateBenchmark {
+
+    private static final List<String> CHANNELS = List.of(CHANNEL_FAN_SWITCH, CHANNEL_FAN_SPEED, CHANNEL_ANY_ON,
+            CHANNEL_FANS_ON, CHANNEL_AVERAGE_SPEED);
+
+    @Param({ "50" })
+    public int members;
+
+    private @NonNullByDefault({}) SmartCocoonZoneHandler handler;
+    private @NonNullByDefault({}) SmartCocoonFansSnapshot snapshot;
+    private @NonNullByDefault({}) String changedDeviceId;
+    private final FanInfoResultDTO[] changedStates = new FanInfoResultDTO[2];
+    private long publishedStates;
+    private boolean toggle;
+
+    @Setup
+    public void setUp() {
+        List<String> deviceIds = new ArrayList<>();
+        snapshot = SmartCocoonFansSnapshot.EMPTY;
+        for (int i = 0; i < members; i++) {
+            String deviceId = String.format("a1b2c3d4%04x", i);
+            deviceIds.add(deviceId);
+            snapshot = snapshot.withFan(fan(deviceId, i % 2 == 0 ? "always_on" : "always_off", i % 13));
+        }
+        changedDeviceId = deviceIds.get(members / 2);
+        changedStates[0] = fan(changedDeviceId, "always_on", 12);
+        changedStates[1] = fan(changedDeviceId, "always_off", 0);
+
+        ThingUID thingUID = new ThingUID(THING_TYPE_ZONE, "benchmark");
+        ThingBuilder thingBuilder = ThingBuilder.create(THING_TYPE_ZONE, thingUID)
+                .withConfiguration(new Configuration(Map.of("deviceIds", String.join(",", deviceIds))));
+        for (String channelId : CHANNELS) {
+            thingBuilder.withChannel(ChannelBuilder.create(new ChannelUID(thingUID, channelId), null).build());
+        }
+        Thing thing = thingBuilder.build();
+
+        // Version independent stub of the callback, only what the handler uses on updates is implemented
+        ThingHandlerCallback callback = (ThingHandlerCallback) Proxy.newProxyInstance(
+                ThingHandlerCallback.class.getClassLoader(), new Class<?>[] { ThingHandlerCallback.class },
+                (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "isChannelLinked":
+                            return Boolean.TRUE;
+                        case "stateUpdated":
+                            publishedStates++;
+                            return null;
+                        default:
+                            return null;
+                    }
+                });
+        handler = new SmartCocoonZoneHandler(thing);
+        handler.setCallback(callback);
+        // Without a bridge the zone is aggregated by the benchmark only
+        handler.initialize();
+        handler.update(snapshot);
+    }
+
+    @Benchmark
+    public long memberChanged() {
+        toggle = !toggle;
+        handler.fanChanged(changedDeviceId, changedStates[toggle ? 1 : 0]);
+        return publishedStates;
+    }
+
+    @Benchmark
+    public long allMembersAggregated() {
+        handler.update(snapshot);
+        return publishedStates;
+    }
+
+    private static FanInfoResultDTO fan(String deviceId, String mode, int speedLevel) {
+        FanInfoResultDTO fan = new FanInfoResultDTO();
+        fan.id = Long.toString(Long.parseLong(deviceId.substring(8), 16) + 1000);
+        fan.fan_id = deviceId;
+        fan.mode = mode;
+        fan.speed_level = speedLevel;
+        fan.fan_on = !"always_off".equals(mode);
+        return fan;
+    }
+}
@@ -24,18 +24,44 @@ import org.openhab.core.thing.ThingTypeUID;
 @NonNullByDefault
 public class SmartCocoonBindingConstants {
 
-    private static final String BINDING_ID = "smartcocoon";
+    public static final String BINDING_ID = "smartcocoon";
 
     // List of all Thing Type UIDs
     public static final ThingTypeUID THING_TYPE_FAN = new ThingTypeUID(BINDING_ID, "fan");
     public static final ThingTypeUID THING_TYPE_BRIDGE = new ThingTypeUID(BINDING_ID, "account");
+    public static final ThingTypeUID THING_TYPE_ZONE = new ThingTypeUID(BINDING_ID, "zone");
 
 
     // List of all Channel ids
     public static final String CHANNEL_FAN_SWITCH = "power";
     public static final String CHANNEL_FAN_SPEED = "fanSpeed";
+    public static final String CHANNEL_RUNTIME_TODAY = "runtimeToday";
+    public static final String CHANNEL_DUTY_CYCLE = "dutyCycle";
+    public static final String CHANNEL_AVERAGE_SPEED = "averageSpeed";
+    public static final String CHANNEL_ANY_ON = "anyOn";
+    public static final String CHANNEL_FANS_ON = "fansOn";
+    public static final String CHANNEL_POLLING_INTERVAL = "pollingInterval";
+    public static final String CHANNEL_POLL_FETCH_TIME = "pollFetchTime";
+    public static final String CHANNEL_POLL_PARSE_TIME = "pollParseTime";
+    public static final String CHANNEL_POLL_DISPATCH_TIME = "pollDispatchTime";
+    public static final String CHANNEL_API_REQUESTS = "apiRequests";
+    public static final String CHANNEL_API_ERRORS = "apiErrors";
+    public static final String CHANNEL_API_RETRIES = "apiRetries";
+    public static final String CHANNEL_LOGINS = "logins";
+    public static final String CHANNEL_TOKEN_EXPIRIES = "tokenExpiries";
+    public static final String CHANNEL_BYTES_RECEIVED = "bytesReceived";
+    public static final String CHANNEL_POLLS = "polls";
+    public static final String CHANNEL_UNCHANGED_POLLS = "unchangedPolls";
+    public static final String CHANNEL_QUEUED_REQUESTS = "queuedRequests";
+    public static final String CHANNEL_QUEUE_WAIT_TIME = "queueWaitTime";
+    public static final String CHANNEL_QUEUED_TASKS = "queuedTasks";
+    public static final String CHANNEL_RUNNING_TASKS = "runningTasks";
+    // Latency channels of the endpoints are named by the endpoint tag and these suffixes, e.g. authLatencyP50
+    public static final String CHANNEL_SUFFIX_LATENCY_P50 = "LatencyP50";
+    public static final String CHANNEL_SUFFIX_LATENCY_P95 = "LatencyP95";
 
     // List of all Config properties
     public static final String CONFIG_PROPERTY_FAN_ID = "fanId";
+    public static final String CONFIG_PROPERTY_DEVICE_ID = "deviceId";
 
 }
@@ -28,4 +28,9 @@ public class SmartCocoonBridgeConfiguration {
     public String username = "";
     public String password = "";
     public int refreshInterval = 15;
+    public int minRefreshInterval = 5;
+    public int maxRefreshInterval = 300;
+    public String apiUrl = "https://app.mysmartcocoon.com/api";
+    public boolean virtualThreads = false;
+    public boolean longPolling = false;
 }
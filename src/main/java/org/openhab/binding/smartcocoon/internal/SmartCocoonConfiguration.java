@@ -26,4 +26,14 @@ public class SmartCocoonConfiguration {
      * Sample configuration parameters. Replace with your own.
      */
     public String deviceId = "";
+
+    /**
+     * Time in milliseconds commands are buffered and merged before they are sent to the fan.
+     */
+    public int commandCoalescingWindow = 300;
+
+    /**
+     * Time in minutes the duty cycle and average speed are computed over.
+     */
+    public int dutyCycleWindow = 60;
 }
@@ -12,6 +12,9 @@
  */
 package org.openhab.binding.smartcocoon.internal;
 
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+
 import org.eclipse.jdt.annotation.NonNullByDefault;
 import org.eclipse.jdt.annotation.Nullable;
 
@@ -25,7 +28,7 @@ public class SmartCocoonException extends Exception {
 
     private static final long serialVersionUID = 1L;
 
-    public SmartCocoonException(Exception source) {
+    public SmartCocoonException(Throwable source) {
         super(source);
     }
 
@@ -33,6 +36,18 @@ public class SmartCocoonException extends Exception {
         super(message);
     }
 
+    /**
+     * Returns the {@link SmartCocoonException} behind a failed future, wrapping any other failure.
+     */
+    public static SmartCocoonException of(Throwable throwable) {
+        Throwable cause = throwable;
+        while ((cause instanceof CompletionException || cause instanceof ExecutionException)
+                && cause.getCause() != null) {
+            cause = cause.getCause();
+        }
+        return cause instanceof SmartCocoonException ? (SmartCocoonException) cause : new SmartCocoonException(cause);
+    }
+
     @Override
     public @Nullable String getMessage() {
         Throwable throwable = getCause();
@@ -41,7 +56,8 @@ public class SmartCocoonException extends Exception {
             if (localMessage != null) {
                 return localMessage;
             }
+            return "";
         }
-        return "";
+        return super.getMessage();
     }
 }
@@ -0,0 +1,29 @@
+/**
+ * Copyright (c) 2010-2023 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.binding.smartcocoon.internal;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+
+/**
+ * The {@link SmartCocoonZoneConfiguration} class contains fields mapping zone configuration parameters.
+ *
+ * @author Mike Fedotov - Initial contribution
+ */
+@NonNullByDefault
+public class SmartCocoonZoneConfiguration {
+
+    /**
+     * Comma separated device ids of the fans in the zone.
+     */
+    public String deviceIds = "";
+}
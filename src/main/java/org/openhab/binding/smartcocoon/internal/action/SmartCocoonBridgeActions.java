@@ -0,0 +1,112 @@
+/**
+ * Copyright (c) 2010-2023 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.binding.smartcocoon.internal.action;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.eclipse.jdt.annotation.Nullable;
+import org.openhab.binding.smartcocoon.internal.SmartCocoonException;
+import org.openhab.binding.smartcocoon.internal.api.SmartCocoonAPI;
+import org.openhab.binding.smartcocoon.internal.api.SmartCocoonFanTarget;
+import org.openhab.binding.smartcocoon.internal.handler.SmartCocoonBridgeHandler;
+import org.openhab.core.automation.annotation.ActionInput;
+import org.openhab.core.automation.annotation.RuleAction;
+import org.openhab.core.thing.binding.ThingActions;
+import org.openhab.core.thing.binding.ThingActionsScope;
+import org.openhab.core.thing.binding.ThingHandler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The {@link SmartCocoonBridgeActions} lets rules command many fans of an account with a single call.
+ *
+ * @author Mike Fedotov - Initial contribution
+ */
+@ThingActionsScope(name = "smartcocoon")
+@NonNullByDefault
+public class SmartCocoonBridgeActions implements ThingActions {
+
+    private static final long TIMEOUT_SEC = 60;
+
+    private final Logger logger = LoggerFactory.getLogger(SmartCocoonBridgeActions.class);
+
+    private @Nullable SmartCocoonBridgeHandler handler;
+
+    @Override
+    public void setThingHandler(ThingHandler handler) {
+        if (handler instanceof SmartCocoonBridgeHandler) {
+            this.handler = (SmartCocoonBridgeHandler) handler;
+        }
+    }
+
+    @Override
+    public @Nullable ThingHandler getThingHandler() {
+        return handler;
+    }
+
+    /**
+     * Sets all given fans to the same mode and/or speed.
+     *
+     * @return result by device id, one of {@link SmartCocoonFanTarget.Result}
+     */
+    @RuleAction(label = "set fans", description = "Sets the mode and/or speed of many fans of the account at once.")
+    public Map<String, Object> setFans(
+            @ActionInput(name = "deviceIds", label = "Device IDs", description = "Comma separated device IDs of the fans") @Nullable String deviceIds,
+            @ActionInput(name = "mode", label = "Mode", description = "always_on, always_off, auto or eco, empty to keep the mode") @Nullable String mode,
+            @ActionInput(name = "speed", label = "Speed", description = "Speed in percent, empty to keep the speed") @Nullable Integer speed) {
+        SmartCocoonBridgeHandler handler = this.handler;
+        if (handler == null) {
+            logger.warn("SmartCocoon action service ThingHandler is null!");
+            return Map.of();
+        }
+        if (deviceIds == null || deviceIds.isBlank()) {
+            logger.warn("No device IDs given to set");
+            return Map.of();
+        }
+        String targetMode = mode == null || mode.isBlank() ? null : mode.strip();
+        if (targetMode != null && !SmartCocoonAPI.isKnownMode(targetMode)) {
+            logger.warn("Mode {} is not one of always_on, always_off, auto or eco", targetMode);
+            return Map.of();
+        }
+        if (speed != null && (speed < 0 || speed > 100)) {
+            logger.warn("Speed {} is out of range 0 to 100", speed);
+            return Map.of();
+        }
+        SmartCocoonFanTarget target = new SmartCocoonFanTarget(targetMode, speed);
+        Map<String, SmartCocoonFanTarget> targets = new HashMap<>();
+        for (String deviceId : deviceIds.split(",")) {
+            if (!deviceId.isBlank()) {
+                targets.put(deviceId.strip(), target);
+            }
+        }
+        try {
+            Map<String, Object> results = new HashMap<>();
+            handler.setFans(targets).get(TIMEOUT_SEC, TimeUnit.SECONDS)
+                    .forEach((deviceId, result) -> results.put(deviceId, result.name()));
+            return results;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            logger.warn("Failed to set fans: {}", SmartCocoonException.of(e).getMessage());
+        }
+        return Map.of();
+    }
+
+    public static Map<String, Object> setFans(ThingActions actions, @Nullable String deviceIds, @Nullable String mode,
+            @Nullable Integer speed) {
+        return ((SmartCocoonBridgeActions) actions).setFans(deviceIds, mode, speed);
+    }
+}
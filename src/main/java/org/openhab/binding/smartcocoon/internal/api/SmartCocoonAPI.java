@@ -12,12 +12,29 @@
  */
 package org.openhab.binding.smartcocoon.internal.api;
 
-//import static org.openhab.binding.smartcocoon.internal.SmartCocoonBindingConstants.*;
-
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
 import java.time.Instant;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.StringJoiner;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.zip.CRC32C;
 
 import org.eclipse.jdt.annotation.NonNullByDefault;
 import org.eclipse.jdt.annotation.Nullable;
@@ -26,288 +43,781 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import org.eclipse.jetty.client.HttpClient;
-import org.eclipse.jetty.client.api.ContentResponse;
 import org.eclipse.jetty.client.api.Request;
+import org.eclipse.jetty.client.api.Result;
+import org.eclipse.jetty.client.util.BufferingResponseListener;
 import org.eclipse.jetty.client.util.StringContentProvider;
+import org.eclipse.jetty.http.HttpFields;
 import org.eclipse.jetty.http.HttpHeader;
 import org.eclipse.jetty.http.HttpMethod;
 import org.eclipse.jetty.http.HttpStatus;
 
 import com.google.gson.Gson;
+import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
 import com.google.gson.JsonParser;
-import com.google.gson.JsonSyntaxException;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
 
 import org.openhab.binding.smartcocoon.internal.SmartCocoonException;
 import org.openhab.binding.smartcocoon.internal.SmartCocoonBridgeConfiguration;
+import org.openhab.binding.smartcocoon.internal.api.SmartCocoonMetrics.Endpoint;
+import org.openhab.binding.smartcocoon.internal.api.SmartCocoonRequestScheduler.Priority;
 import org.openhab.binding.smartcocoon.internal.dto.FanInfoResultDTO;
 
-class FansResult {
-  int total;
-  FanInfoResultDTO[] fans;
-}
-
 /**
- * The {@link SmartCocoonAPI} handles the REST API calls
+ * The {@link SmartCocoonAPI} handles the REST API calls.
+ *
+ * All calls are sent asynchronously and complete their {@link CompletableFuture} from the HTTP client's
+ * response callback, so no thread waits for the cloud. The blocking methods are thin wrappers for callers
+ * which need the result in place. Responses are processed on the given executor, e.g. a
+ * {@link SmartCocoonWorkExecutor}, or on the HTTP client's thread if it runs tasks in place.
  *
  * @author Mike Fedotov - Initial contribution
  */
 @NonNullByDefault
 public class SmartCocoonAPI {
-    private static final String BASE_URL = "https://app.mysmartcocoon.com/api";
+    public static final String DEFAULT_BASE_URL = "https://app.mysmartcocoon.com/api";
     private static final String USER_AGENT = "SmartCocoon/1 CFNetwork/1312 Darwin/21.0.0";
 
-    private static final String AUTH_URL = BASE_URL + "/auth/sign_in";
-    private static final String FANS_URL = BASE_URL + "/fans";
+    private static final String AUTH_PATH = "/auth/sign_in";
+    private static final String FANS_PATH = "/fans";
 
     private static final String JSON_CONTENT_TYPE = "application/json";
-    //private static final int MAX_RETRIES = 3;
+    private static final int REQUEST_TIMEOUT_SEC = 10;
+    private static final int MAX_CONTENT_LENGTH = 16 * 1024 * 1024;
+    // Limits of the requests of an account to the cloud
+    private static final int MAX_REQUESTS_IN_FLIGHT = 4;
+    private static final double MAX_REQUESTS_PER_SECOND = 5;
+    private static final int MAX_REQUEST_BURST = 10;
+    private static final int MAX_RETRIES = 3;
+    private static final Duration RETRY_BASE_DELAY = Duration.ofMillis(500);
+    private static final Duration RETRY_MAX_DELAY = Duration.ofSeconds(8);
+    private static final int CIRCUIT_FAILURE_THRESHOLD = 5;
+    private static final Duration CIRCUIT_MIN_OPEN = Duration.ofSeconds(30);
+    private static final Duration CIRCUIT_MAX_OPEN = Duration.ofMinutes(5);
+
+    // Modes reported by the cloud and accepted by it, used to avoid keeping a fresh copy of the same string per fan
+    // and poll
+    private static final String[] KNOWN_MODES = { "always_on", "always_off", "auto", "eco" };
 
     private final Logger logger = LoggerFactory.getLogger(SmartCocoonAPI.class);
     private final Gson gson;
     private final HttpClient httpClient;
+    private final HttpClient longPollHttpClient;
     private final String username;
     private final String password;
-    private @Nullable String accessToken = null;
-    private @Nullable String uid = null;
-    private @Nullable String client = null;
-    private int tokenExpiry = 0;
+    private final String authUrl;
+    private final String fansUrl;
+    private final SmartCocoonAuthenticator authenticator;
+    private final SmartCocoonMetrics metrics = new SmartCocoonMetrics();
+    private final SmartCocoonRequestScheduler requestScheduler;
+    private final SmartCocoonCircuitBreaker circuitBreaker = new SmartCocoonCircuitBreaker(CIRCUIT_FAILURE_THRESHOLD,
+            CIRCUIT_MIN_OPEN, CIRCUIT_MAX_OPEN);
+    private final ScheduledExecutorService scheduler;
+    private final Executor responseExecutor;
+
+    // Validators of the last fans list, to detect that nothing changed without parsing it again
+    private volatile @Nullable String fansEntityTag;
+    private volatile @Nullable String fansLastModified;
+    private volatile long fansChecksum = -1;
+
+    /**
+     * @param loginLimiter limits concurrent logins, may be shared with other accounts
+     * @param tokenStore keeps the credentials across restarts, null to keep them in memory only
+     * @param responseExecutor runs the processing of responses
+     */
+    public SmartCocoonAPI(SmartCocoonBridgeConfiguration configuration, HttpClient httpClient, Gson gson,
+            ScheduledExecutorService scheduler, SmartCocoonRequestLimiter loginLimiter,
+            @Nullable SmartCocoonTokenStore tokenStore, Executor responseExecutor) {
+        this(configuration, httpClient, httpClient, gson, scheduler, loginLimiter, tokenStore, responseExecutor);
+    }
 
-    public SmartCocoonAPI(SmartCocoonBridgeConfiguration configuration, HttpClient httpClient, Gson gson) {
+    /**
+     * @param longPollHttpClient client sending the long polls, which hold their connection until the cloud answers
+     */
+    public SmartCocoonAPI(SmartCocoonBridgeConfiguration configuration, HttpClient httpClient,
+            HttpClient longPollHttpClient, Gson gson, ScheduledExecutorService scheduler,
+            SmartCocoonRequestLimiter loginLimiter, @Nullable SmartCocoonTokenStore tokenStore,
+            Executor responseExecutor) {
         this.gson = gson;
-	this.username = configuration.username;
-	this.password = configuration.password;
+        this.username = configuration.username;
+        this.password = configuration.password;
         this.httpClient = httpClient;
+        this.longPollHttpClient = longPollHttpClient;
+        this.scheduler = scheduler;
+        this.responseExecutor = responseExecutor;
+        String baseUrl = configuration.apiUrl.isBlank() ? DEFAULT_BASE_URL : configuration.apiUrl.strip();
+        if (baseUrl.endsWith("/")) {
+            baseUrl = baseUrl.substring(0, baseUrl.length() - 1);
+        }
+        this.authUrl = baseUrl + AUTH_PATH;
+        this.fansUrl = baseUrl + FANS_PATH;
+        this.authenticator = new SmartCocoonAuthenticator(() -> loginLimiter.submit(this::requestLogin), scheduler,
+                tokenStore);
+        this.requestScheduler = new SmartCocoonRequestScheduler(scheduler, MAX_REQUESTS_IN_FLIGHT,
+                MAX_REQUESTS_PER_SECOND, MAX_REQUEST_BURST, metrics.getQueueWait());
+    }
+
+    public void dispose() {
+        authenticator.dispose();
+        requestScheduler.dispose();
+    }
+
+    public SmartCocoonRequestScheduler getRequestScheduler() {
+        return requestScheduler;
     }
 
-    public boolean refresh(Map<String, FanInfoResultDTO> smartCocoonThings) {
+    public SmartCocoonCircuitBreaker getCircuitBreaker() {
+        return circuitBreaker;
+    }
+
+    public SmartCocoonAuthenticator getAuthenticator() {
+        return authenticator;
+    }
+
+    public SmartCocoonMetrics getMetrics() {
+        return metrics;
+    }
+
+    public @Nullable SmartCocoonFansSnapshot refresh(SmartCocoonFansSnapshot previous) {
         try {
-            if (Instant.now().isAfter(Instant.ofEpochSecond(this.tokenExpiry))) {
-                // Login again since token is expired
-                this.login();
-            }
-            // Get all appliances
-            String json = this.getFans();
-            FansResult r;
-            r = gson.fromJson(json, FansResult.class);
-            FanInfoResultDTO[] dtos = r.fans;
-            if (dtos != null) {
-                for (FanInfoResultDTO dto : dtos) {
-                    String deviceId = dto.fan_id;
-		    if (deviceId != null){
-			smartCocoonThings.put(deviceId, dto);
-		    }
-                }
-                return true;
-            }
-        } catch (JsonSyntaxException | SmartCocoonException e) {
+            return await(refreshAsync(previous));
+        } catch (SmartCocoonException e) {
             logger.warn("Failed to refresh! {}", e.getMessage());
         }
-        return false;
+        return null;
     }
 
+    /**
+     * Fetches all fans of the account. Expired credentials are renewed by the {@link SmartCocoonAuthenticator}.
+     *
+     * @param previous snapshot of the last poll, the new one is compared to
+     * @return future completing with the new snapshot of the fans
+     */
+    public CompletableFuture<SmartCocoonFansSnapshot> refreshAsync(SmartCocoonFansSnapshot previous) {
+        // Get all appliances, read straight from the response content
+        return getFansAsync(previous);
+    }
+
+    public String getFanInfo(String fanId) throws SmartCocoonException {
+        return await(getFanInfoAsync(fanId));
+    }
 
-   public String getFanInfo(String fanId) throws SmartCocoonException {
+    public CompletableFuture<String> getFanInfoAsync(String fanId) {
         if (fanId == null || fanId.isEmpty()) {
-              throw new SmartCocoonException ("Internal error: getFanInfo invalid parameter");
+            return CompletableFuture.failedFuture(new SmartCocoonException("Internal error: getFanInfo invalid parameter"));
         }
-        try {
+        return sendAuthorized(Endpoint.GET, fansUrl + "/" + fanId, HttpMethod.GET, null, response -> {
+            if (response.status != HttpStatus.OK_200) {
+                throw new SmartCocoonException("Failed to get status for fan " + fanId + ", status: " + response.status
+                        + ", response: " + response.getContentAsString());
+            }
+            return response.getContentAsString();
+        });
+    }
 
-            if (client == null || accessToken == null || uid == null) {
-               tryLogin();
+    /**
+     * Fetches the current state of a single fan.
+     *
+     * @param fanId the fan's API id, as used for commands
+     */
+    public CompletableFuture<FanInfoResultDTO> getFanAsync(String fanId) {
+        if (fanId == null || fanId.isEmpty()) {
+            return CompletableFuture.failedFuture(new SmartCocoonException("Internal error: getFan invalid parameter"));
+        }
+        return sendAuthorized(Endpoint.GET, fansUrl + "/" + fanId, HttpMethod.GET, null, response -> {
+            if (response.status != HttpStatus.OK_200) {
+                throw new SmartCocoonException("Failed to get status for fan " + fanId + ", status: " + response.status
+                        + ", response: " + response.getContentAsString());
+            }
+            JsonElement json = JsonParser.parseReader(response.getContentAsReader());
+            // The fan is returned either as is or wrapped into a "fan" member
+            if (json.isJsonObject() && json.getAsJsonObject().has("fan")) {
+                json = json.getAsJsonObject().get("fan");
+            }
+            FanInfoResultDTO dto = gson.fromJson(json, FanInfoResultDTO.class);
+            if (dto == null || dto.fan_id == null) {
+                throw new SmartCocoonException("Unexpected status for fan " + fanId + ": " + response.getContentAsString());
             }
+            dto.mode = internMode(dto.mode);
+            return dto;
+        });
+    }
 
-            if (client == null || accessToken == null || uid == null) {
-              throw new SmartCocoonException ("Internal error: Expected authentication information not availabl");
+    public String getFans() throws SmartCocoonException {
+        return await(sendAuthorized(Endpoint.LIST, fansUrl, HttpMethod.GET, null, response -> {
+            if (response.status != HttpStatus.OK_200) {
+                throw new SmartCocoonException("Failed to get fans, status: " + response.status + ", response: "
+                        + response.getContentAsString());
             }
+            return response.getContentAsString();
+        }));
+    }
 
-            Request request = createRequest(FANS_URL + "/" + fanId, HttpMethod.GET);
-            request.header("client", client);
-            request.header("access-token", accessToken);
-            request.header("uid", uid);
+    public SmartCocoonFansSnapshot getFans(SmartCocoonFansSnapshot previous) throws SmartCocoonException {
+        return await(getFansAsync(previous));
+    }
 
-            logger.debug("HTTP GET Request {}.", request.toString());
-            ContentResponse httpResponse = request.send();
-            if (httpResponse.getStatus() != HttpStatus.OK_200) {
-                throw new SmartCocoonException("Failed to get status for fan " + fanId + ", status: " + httpResponse.getStatus() + ", response: " + httpResponse.getContentAsString());
-            }
-            return httpResponse.getContentAsString();
+    /**
+     * Fetches all fans of the account into a new snapshot by streaming over the received content. The
+     * {@link FanInfoResultDTO} instances of unchanged fans and their ID strings are taken over from the previous
+     * snapshot, so a poll of unchanged fans does not retain any new objects. Fans missing from the response are
+     * dropped.
+     *
+     * If the server reports the list as not modified, or it is identical to the last one, it is not parsed again
+     * and the previous fans are returned as they are.
+     *
+     * The response is buffered, up to 16 MB, and parsed from the buffer rather than
+     * streamed from the connection: the checksum of the whole content is needed to tell an unchanged list apart.
+     * The buffer is the only copy of the content, it is not decoded to a String.
+     *
+     * @param previous snapshot of the last poll, the new one is compared to
+     * @return future completing with the new snapshot of the fans
+     */
+    public CompletableFuture<SmartCocoonFansSnapshot> getFansAsync(SmartCocoonFansSnapshot previous) {
+        return getFansAsync(previous, Endpoint.LIST, request -> {
+        });
+    }
 
-        } catch (InterruptedException | TimeoutException | ExecutionException e) {
-            throw new SmartCocoonException(e);
-        }
-        
-   }
+    /**
+     * Long polls the fans of the account: the server is asked to hold the request until the fans differ from the
+     * last ones received, or the given time passed. The result is the same as of {@link #getFansAsync}, i.e. the
+     * previous fans as they are if nothing changed. Servers not supporting this answer at once.
+     *
+     * @param wait longest time the server may hold the request
+     * @return future completing with the new snapshot of the fans
+     */
+    public CompletableFuture<SmartCocoonFansSnapshot> watchFansAsync(SmartCocoonFansSnapshot previous, Duration wait) {
+        return getFansAsync(previous, Endpoint.WATCH, request -> {
+            request.param("wait", Long.toString(wait.toSeconds()));
+            request.timeout(wait.toSeconds() + REQUEST_TIMEOUT_SEC, TimeUnit.SECONDS);
+        });
+    }
 
-   public String getFans() throws SmartCocoonException {
-        try {
+    private CompletableFuture<SmartCocoonFansSnapshot> getFansAsync(SmartCocoonFansSnapshot previous,
+            Endpoint endpoint, Consumer<Request> customizer) {
+        String fansEntityTag = this.fansEntityTag;
+        String fansLastModified = this.fansLastModified;
+        return sendAuthorized(endpoint, fansUrl, HttpMethod.GET, null, request -> {
+            // Let the server tell us when nothing changed since the last poll
+            if (fansEntityTag != null) {
+                request.header(HttpHeader.IF_NONE_MATCH, fansEntityTag);
+            }
+            if (fansLastModified != null) {
+                request.header(HttpHeader.IF_MODIFIED_SINCE, fansLastModified);
+            }
+            customizer.accept(request);
+        }, response -> {
+            metrics.recordPoll();
+            Instant fetchedAt = Instant.now();
+            if (response.status == HttpStatus.NOT_MODIFIED_304) {
+                metrics.recordUnchangedPoll();
+                return previous.unchanged(fetchedAt);
+            }
+            if (response.status != HttpStatus.OK_200) {
+                throw new SmartCocoonException("Failed to get fans, status: " + response.status + ", response: "
+                        + response.getContentAsString());
+            }
+            // Servers ignoring conditional requests mostly return the very same content
+            CRC32C checksum = new CRC32C();
+            checksum.update(response.content);
+            long fansChecksum = checksum.getValue();
+            if (fansChecksum == this.fansChecksum && previous.getGeneration() > 0) {
+                metrics.recordUnchangedPoll();
+                return previous.unchanged(fetchedAt);
+            }
 
-            if (client == null || accessToken == null || uid == null) {
-               tryLogin();
+            long parseStart = System.nanoTime();
+            SmartCocoonFansSnapshot snapshot = readFans(response.getContentAsReader(), previous, fetchedAt);
+            metrics.getPollParse().record(System.nanoTime() - parseStart);
+            if (snapshot == null) {
+                this.fansChecksum = -1;
+                this.fansEntityTag = null;
+                this.fansLastModified = null;
+                throw new SmartCocoonException("Response did not contain a list of fans");
             }
+            // Only remember what was parsed successfully
+            this.fansChecksum = fansChecksum;
+            this.fansEntityTag = response.headers.get(HttpHeader.ETAG);
+            this.fansLastModified = response.headers.get(HttpHeader.LAST_MODIFIED);
+            return snapshot;
+        });
+    }
 
-            if (client == null || accessToken == null || uid == null) {
-              throw new SmartCocoonException ("Internal error: Expected authentication information not availabl");
+    /**
+     * Reads a fans list into a new snapshot, compared to the previous one.
+     *
+     * @return the new snapshot, or null if the content had no list of fans
+     */
+    static @Nullable SmartCocoonFansSnapshot readFans(JsonReader reader, SmartCocoonFansSnapshot previous,
+            Instant fetchedAt) throws IOException {
+        SmartCocoonFansSnapshot snapshot = null;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            if ("fans".equals(reader.nextName()) && reader.peek() == JsonToken.BEGIN_ARRAY) {
+                Map<String, FanInfoResultDTO> fans = new HashMap<>();
+                Set<String> changedFans = new HashSet<>();
+                reader.beginArray();
+                while (reader.hasNext()) {
+                    readFan(reader, previous, fans, changedFans);
+                }
+                reader.endArray();
+
+                Set<String> removedFans = new HashSet<>(previous.getFans().keySet());
+                removedFans.removeAll(fans.keySet());
+                if (changedFans.isEmpty() && removedFans.isEmpty() && previous.getGeneration() > 0) {
+                    snapshot = previous.unchanged(fetchedAt);
+                } else {
+                    snapshot = new SmartCocoonFansSnapshot(previous.getGeneration() + 1, fetchedAt, fans,
+                            changedFans, removedFans, false);
+                }
+            } else {
+                reader.skipValue();
             }
+        }
+        reader.endObject();
+        return snapshot;
+    }
 
-            Request request = createRequest(FANS_URL, HttpMethod.GET);
-            request.header("client", client);
-            request.header("access-token", accessToken);
-            request.header("uid", uid);
+    private static void readFan(JsonReader reader, SmartCocoonFansSnapshot previous,
+            Map<String, FanInfoResultDTO> fans, Set<String> changedFans) throws IOException {
+        @Nullable String id = null;
+        @Nullable String fanId = null;
+        @Nullable String mode = null;
+        int speedLevel = 0;
+        boolean fanOn = false;
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (reader.peek() == JsonToken.NULL) {
+                reader.nextNull();
+                continue;
+            }
+            switch (name) {
+                case "id":
+                    id = reader.nextString();
+                    break;
+                case "fan_id":
+                    fanId = reader.nextString();
+                    break;
+                case "mode":
+                    mode = reader.nextString();
+                    break;
+                case "speed_level":
+                    speedLevel = reader.nextInt();
+                    break;
+                case "fan_on":
+                    fanOn = reader.nextBoolean();
+                    break;
+                default:
+                    reader.skipValue();
+            }
+        }
+        reader.endObject();
 
-            logger.debug("HTTP GET Request {}.", request.toString());
-            ContentResponse httpResponse = request.send();
-            if (httpResponse.getStatus() != HttpStatus.OK_200) {
-                throw new SmartCocoonException("Failed to get fans, status: " + httpResponse.getStatus() + ", response: " + httpResponse.getContentAsString());
+        if (fanId == null) {
+            return;
+        }
+        FanInfoResultDTO previousDto = previous.get(fanId);
+        if (previousDto != null && Objects.equals(previousDto.id, id) && Objects.equals(previousDto.mode, mode)
+                && previousDto.speed_level == speedLevel && previousDto.fan_on == fanOn) {
+            fans.put(fanId, previousDto);
+            return;
+        }
+        // Published DTOs are never modified, a changed fan gets a new one
+        FanInfoResultDTO dto = new FanInfoResultDTO();
+        dto.fan_id = previousDto != null ? previousDto.fan_id : fanId;
+        dto.id = reuse(previousDto != null ? previousDto.id : null, id);
+        dto.mode = internMode(mode);
+        dto.speed_level = speedLevel;
+        dto.fan_on = fanOn;
+        fans.put(fanId, dto);
+        changedFans.add(fanId);
+    }
+
+    private static @Nullable String reuse(@Nullable String previous, @Nullable String current) {
+        return previous != null && previous.equals(current) ? previous : current;
+    }
+
+    private static @Nullable String internMode(@Nullable String mode) {
+        for (String knownMode : KNOWN_MODES) {
+            if (knownMode.equals(mode)) {
+                return knownMode;
             }
-            return httpResponse.getContentAsString();
+        }
+        return mode;
+    }
 
-        } catch (InterruptedException | TimeoutException | ExecutionException e) {
-            throw new SmartCocoonException(e);
+    /**
+     * @return whether the mode is one the fans can be set to
+     */
+    public static boolean isKnownMode(String mode) {
+        for (String knownMode : KNOWN_MODES) {
+            if (knownMode.equals(mode)) {
+                return true;
+            }
         }
-        
-   }
+        return false;
+    }
 
-    private Request createRequest(String uri, HttpMethod httpMethod) {
+    Request createRequest(String uri, HttpMethod httpMethod) {
+        return createRequest(httpClient, uri, httpMethod);
+    }
+
+    private Request createRequest(HttpClient httpClient, String uri, HttpMethod httpMethod) {
         Request request = httpClient.newRequest(uri).method(httpMethod);
 
         request.header(HttpHeader.ACCEPT, JSON_CONTENT_TYPE);
         request.header(HttpHeader.CONTENT_TYPE, JSON_CONTENT_TYPE);
         request.header(HttpHeader.USER_AGENT, USER_AGENT);
-
-        logger.debug("HTTP POST Request {}.", request.toString());
+        request.timeout(REQUEST_TIMEOUT_SEC, TimeUnit.SECONDS);
 
         return request;
     }
 
-    private void login() throws SmartCocoonException {
-        try {
-            client = null;
-            accessToken = null;
-            uid = null;
-            tokenExpiry = 0;
+    /**
+     * Sends the request with the current credentials. If the cloud rejects them, the request is retried once with
+     * fresh credentials.
+     */
+    private <T> CompletableFuture<T> sendAuthorized(Endpoint endpoint, String uri, HttpMethod httpMethod,
+            @Nullable String content, ResponseHandler<T> handler) {
+        return sendAuthorized(endpoint, uri, httpMethod, content, request -> {
+        }, handler);
+    }
 
-            String json = "{\"email\": \"" + this.username + "\", \"password\": \"" + this.password
-                    + "\"}";
+    /**
+     * @param customizer adds request specific headers
+     */
+    private <T> CompletableFuture<T> sendAuthorized(Endpoint endpoint, String uri, HttpMethod httpMethod,
+            @Nullable String content, Consumer<Request> customizer, ResponseHandler<T> handler) {
+        CompletableFuture<ApiResponse> response;
+        if (endpoint == Endpoint.WATCH) {
+            // The long poll transport repeats failed long polls with a backoff of its own
+            response = sendAuthorized(endpoint, uri, httpMethod, content, customizer, true);
+        } else {
+            // Reading fans is idempotent and a fan update sets an absolute state, so all of them can be retried
+            response = new CompletableFuture<>();
+            sendWithRetries(() -> sendAuthorized(endpoint, uri, httpMethod, content, customizer, true), 0, response);
+        }
+        return response.thenApplyAsync(r -> handle(handler, r), responseExecutor);
+    }
 
-            // Fetch ClientToken
-            Request request = createRequest(AUTH_URL, HttpMethod.POST);
-            request.content(new StringContentProvider(json), JSON_CONTENT_TYPE);
+    /**
+     * Sends the request, repeating it with jittered exponential backoff while it fails for a transient reason.
+     */
+    private void sendWithRetries(Supplier<CompletableFuture<ApiResponse>> attempt, int retries,
+            CompletableFuture<ApiResponse> result) {
+        attempt.get().whenComplete((response, exception) -> {
+            boolean transientFailure = exception != null ? isTransportFailure(exception)
+                    : isTransientStatus(response.status);
+            Duration delay = transientFailure && retries < MAX_RETRIES
+                    ? getRetryDelay(retries, exception == null ? response : null)
+                    : null;
+            if (delay == null) {
+                if (exception != null) {
+                    result.completeExceptionally(exception);
+                } else {
+                    result.complete(response);
+                }
+                return;
+            }
+            logger.debug("Request failed for a transient reason, retry {} of {} in {} ms", retries + 1, MAX_RETRIES,
+                    delay.toMillis());
+            metrics.recordRetry();
+            scheduler.schedule(() -> sendWithRetries(attempt, retries + 1, result), delay.toMillis(),
+                    TimeUnit.MILLISECONDS);
+        });
+    }
 
-            logger.debug("HTTP POST Request {}.", request.toString());
+    private static boolean isTransportFailure(Throwable exception) {
+        Throwable cause = SmartCocoonException.of(exception).getCause();
+        return cause instanceof IOException || cause instanceof TimeoutException;
+    }
 
-            ContentResponse httpResponse = request.send();
-            if (httpResponse.getStatus() != HttpStatus.OK_200) {
-                throw new SmartCocoonException("Failed to authenticate: " + httpResponse.getContentAsString());
-            }
-            // All required auth data comes in headers:
-            // client, access-token, expiry, uid
-            client = httpResponse.getHeaders().get("client");
-            accessToken = httpResponse.getHeaders().get("access-token");
-            uid = httpResponse.getHeaders().get("uid");
+    private static boolean isTransientStatus(int status) {
+        return status == HttpStatus.TOO_MANY_REQUESTS_429 || HttpStatus.isServerError(status);
+    }
 
-            // Those three headers are expected to be present in the response, cannot proceed if missing
-            if (client == null || accessToken == null || uid == null) {
-              throw new SmartCocoonException ("Expected headers not present in auth response");
+    /**
+     * @return random delay up to the exponential backoff, or the delay the cloud asked for, or null if the cloud
+     *         asked to wait longer than a request is worth retrying for
+     */
+    private @Nullable Duration getRetryDelay(int retries, @Nullable ApiResponse response) {
+        if (response != null) {
+            String retryAfter = response.headers.get(HttpHeader.RETRY_AFTER);
+            if (retryAfter != null) {
+                try {
+                    Duration requested = Duration.ofSeconds(Long.parseLong(retryAfter.strip()));
+                    if (requested.compareTo(RETRY_MAX_DELAY) > 0) {
+                        // Retrying earlier would only be rejected again, the next poll or command will try again
+                        logger.debug("Cloud asked to retry in {} s, not retrying", requested.getSeconds());
+                        return null;
+                    }
+                    return requested;
+                } catch (NumberFormatException e) {
+                    // An HTTP date, use the own backoff
+                }
             }
+        }
+        long backoffMillis = Math.min(RETRY_MAX_DELAY.toMillis(), RETRY_BASE_DELAY.toMillis() << retries);
+        // Jitter over the upper half, so requests failing together do not retry together
+        return Duration.ofMillis(backoffMillis / 2 + ThreadLocalRandom.current().nextLong(backoffMillis / 2 + 1));
+    }
 
-            // We generally can do with the missing/invalid expiry header
-            tokenExpiry = 0;
-            try {
-              tokenExpiry = Integer.parseInt(httpResponse.getHeaders().get("expiry"));
-            } catch (Exception ignore) {}
+    private CompletableFuture<ApiResponse> sendAuthorized(Endpoint endpoint, String uri, HttpMethod httpMethod,
+            @Nullable String content, Consumer<Request> customizer, boolean retryUnauthorized) {
+        return authenticator.getCredentials().thenCompose(credentials -> {
+            // Long polls must not hold the connections other requests need
+            Request request = createRequest(endpoint == Endpoint.WATCH ? longPollHttpClient : httpClient, uri,
+                    httpMethod);
+            request.header("client", credentials.getClient());
+            request.header("access-token", credentials.getAccessToken());
+            request.header("uid", credentials.getUid());
+            if (content != null) {
+                request.content(new StringContentProvider(content));
+            }
+            customizer.accept(request);
+
+            logger.debug("HTTP {} Request {}.", httpMethod, request);
+            return send(request, endpoint).thenCompose(response -> {
+                if (response.status == HttpStatus.UNAUTHORIZED_401 && retryUnauthorized) {
+                    logger.debug("Credentials rejected for {}, retrying with a new login", uri);
+                    metrics.recordTokenExpiry();
+                    authenticator.invalidate(credentials);
+                    return sendAuthorized(endpoint, uri, httpMethod, content, customizer, false);
+                }
+                return CompletableFuture.completedFuture(response);
+            });
+        });
+    }
 
-        } catch (InterruptedException | TimeoutException | ExecutionException e) {
-            throw new SmartCocoonException(e);
+    /**
+     * Sends the request once the request scheduler of the account starts it. While the circuit breaker is open the
+     * request fails at once.
+     *
+     * Long polls are sent at once and bypass the circuit breaker: they are held by the server for long, so they
+     * would block a slot of the scheduler and could hold the single probe of a half-open circuit.
+     */
+    private CompletableFuture<ApiResponse> send(Request request, Endpoint endpoint) {
+        if (endpoint == Endpoint.WATCH) {
+            return sendNow(request, endpoint);
         }
+        if (!circuitBreaker.tryAcquire()) {
+            metrics.recordCircuitRejection();
+            return CompletableFuture.failedFuture(new SmartCocoonException(
+                    "Cloud unavailable, requests suspended until " + circuitBreaker.getOpenUntil()));
+        }
+        return requestScheduler.submit(getPriority(endpoint), () -> sendNow(request, endpoint))
+                .whenComplete((response, exception) -> {
+                    if (exception != null) {
+                        if (isTransportFailure(exception)) {
+                            circuitBreaker.onFailure();
+                        } else {
+                            circuitBreaker.onNeutral();
+                        }
+                    } else if (isTransientStatus(response.status)) {
+                        circuitBreaker.onFailure();
+                    } else {
+                        circuitBreaker.onSuccess();
+                    }
+                });
     }
 
-   private void tryLogin()  throws SmartCocoonException {
-      // Plan to implement checks to avoid excessive login attempts...
-      login();
-   }
+    private static Priority getPriority(Endpoint endpoint) {
+        switch (endpoint) {
+            case AUTH:
+                return Priority.AUTH;
+            case PUT:
+                return Priority.COMMAND;
+            case GET:
+                return Priority.REFRESH;
+            default:
+                return Priority.POLL;
+        }
+    }
 
+    private CompletableFuture<ApiResponse> sendNow(Request request, Endpoint endpoint) {
+        CompletableFuture<ApiResponse> future = new CompletableFuture<>();
+        long start = System.nanoTime();
+        request.send(new BufferingResponseListener(MAX_CONTENT_LENGTH) {
+            @Override
+            public void onComplete(@Nullable Result result) {
+                if (result == null) {
+                    future.completeExceptionally(new SmartCocoonException("Internal error: no result for request"));
+                } else if (result.isFailed()) {
+                    future.completeExceptionally(new SmartCocoonException(result.getFailure()));
+                } else {
+                    byte[] content = getContent();
+                    int status = result.getResponse().getStatus();
+                    metrics.recordRequest(endpoint, System.nanoTime() - start, status, content.length);
+                    future.complete(new ApiResponse(status, result.getResponse().getHeaders(), content));
+                }
+            }
+        });
+        return future;
+    }
 
-  public void setFanMode (String fanId, String mode) throws SmartCocoonException {
-        if (fanId == null || fanId.isEmpty()) {
-              throw new SmartCocoonException ("Internal error: getFanInfo invalid parameter");
-        }
-        if ( mode == null || ( !(mode.equals("always_on") || mode.equals("always_off")) ) ) {
-              throw new SmartCocoonException ("Internal error: setFanMode invalid parameter");
+    private static <T> T handle(ResponseHandler<T> handler, ApiResponse response) {
+        try {
+            return handler.handle(response);
+        } catch (SmartCocoonException e) {
+            throw new CompletionException(e);
+        } catch (IOException | JsonParseException | IllegalStateException | NumberFormatException e) {
+            // Malformed JSON or unexpected value types
+            throw new CompletionException(new SmartCocoonException(e));
         }
+    }
 
+    private static <T> T await(CompletableFuture<T> future) throws SmartCocoonException {
         try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SmartCocoonException(e);
+        } catch (ExecutionException e) {
+            throw SmartCocoonException.of(e);
+        }
+    }
 
-            if (client == null || accessToken == null || uid == null) {
-               tryLogin();
+    private CompletableFuture<SmartCocoonCredentials> requestLogin() {
+        JsonObject login = new JsonObject();
+        login.addProperty("email", this.username);
+        login.addProperty("password", this.password);
+        String json = gson.toJson(login);
+
+        // Fetch ClientToken
+        Request request = createRequest(authUrl, HttpMethod.POST);
+        request.content(new StringContentProvider(json), JSON_CONTENT_TYPE);
+
+        logger.debug("HTTP POST Request {}.", request.toString());
+
+        metrics.recordLogin();
+        return send(request, Endpoint.AUTH).thenApplyAsync(response -> handle(r -> {
+            if (r.status != HttpStatus.OK_200) {
+                throw new SmartCocoonException("Failed to authenticate: " + r.getContentAsString());
             }
+            // All required auth data comes in headers:
+            // client, access-token, expiry, uid
+            String client = r.headers.get("client");
+            String accessToken = r.headers.get("access-token");
+            String uid = r.headers.get("uid");
 
+            // Those three headers are expected to be present in the response, cannot proceed if missing
             if (client == null || accessToken == null || uid == null) {
-              throw new SmartCocoonException ("Internal error: Expected authentication information not availabl");
+                throw new SmartCocoonException("Expected headers not present in auth response");
             }
 
-            Request request = createRequest(FANS_URL + "/" + fanId, HttpMethod.PUT);
-            request.header("client", client);
-            request.header("access-token", accessToken);
-            request.header("uid", uid);
-
-            //request.content(new StringContentProvider("{\"mode\": \"" + mode + "\"}", JSON_CONTENT_TYPE));
-            request.content(new StringContentProvider("{\"mode\": \"" + mode + "\"}"));
-
-            logger.debug("HTTP PUT Request {}.", request.toString());
-            ContentResponse httpResponse = request.send();
-            if (httpResponse.getStatus() != HttpStatus.OK_200) {
-                throw new SmartCocoonException("Failed to set mode " + mode + " for fan " + fanId + 
-                            ", status: " + httpResponse.getStatus() + ", response: " + httpResponse.getContentAsString());
+            // We generally can do with the missing/invalid expiry header
+            long tokenExpiry = 0;
+            try {
+                tokenExpiry = Long.parseLong(r.headers.get("expiry"));
+            } catch (Exception ignore) {
             }
+            return new SmartCocoonCredentials(client, accessToken, uid, tokenExpiry);
+        }, response), responseExecutor);
+    }
 
+    public void setFanMode(String fanId, String mode) throws SmartCocoonException {
+        await(setFanModeAsync(fanId, mode));
+    }
 
-            //return;
+    public CompletableFuture<@Nullable Void> setFanModeAsync(String fanId, String mode) {
+        return setFanStateAsync(fanId, mode, null);
+    }
 
-        } catch (InterruptedException | TimeoutException | ExecutionException e) {
-            throw new SmartCocoonException(e);
-        }
-  }
+    public void setFanSpeed(String fanId, int speed) throws SmartCocoonException {
+        await(setFanSpeedAsync(fanId, speed));
+    }
 
-  public void setFanSpeed(String fanId, int speed) throws SmartCocoonException {
+    public CompletableFuture<@Nullable Void> setFanSpeedAsync(String fanId, int speed) {
+        return setFanStateAsync(fanId, null, speed);
+    }
+
+    /**
+     * Sets mode and/or speed of a fan with a single PUT request.
+     *
+     * @param mode the new mode, "always_on", "always_off", "auto" or "eco", or null to keep the mode
+     * @param speed the new speed from 0 to 100, or null to keep the speed
+     */
+    public CompletableFuture<@Nullable Void> setFanStateAsync(String fanId, @Nullable String mode,
+            @Nullable Integer speed) {
         if (fanId == null || fanId.isEmpty()) {
-              throw new SmartCocoonException ("Internal error: getFanInfo invalid parameter");
+            return CompletableFuture.failedFuture(new SmartCocoonException("Internal error: setFanState invalid parameter"));
         }
-        if ( speed < 0 || speed > 100) {
-              throw new SmartCocoonException ("Internal error: setFanSpeed invalid speed");
+        if (mode != null && !isKnownMode(mode)) {
+            return CompletableFuture.failedFuture(new SmartCocoonException("Internal error: setFanMode invalid parameter"));
+        }
+        if (speed != null && (speed < 0 || speed > 100)) {
+            return CompletableFuture.failedFuture(new SmartCocoonException("Internal error: setFanSpeed invalid speed"));
+        }
+        if (mode == null && speed == null) {
+            return CompletableFuture.failedFuture(new SmartCocoonException("Internal error: setFanState nothing to set"));
         }
 
-        try {
-
-            if (client == null || accessToken == null || uid == null) {
-               tryLogin();
-            }
-
-            if (client == null || accessToken == null || uid == null) {
-              throw new SmartCocoonException ("Internal error: Expected authentication information not availabl");
-            }
+        JsonObject content = new JsonObject();
+        StringJoiner description = new StringJoiner(" and ");
+        if (mode != null) {
+            content.addProperty("mode", mode);
+            description.add("mode " + mode);
+        }
+        if (speed != null) {
+            // The app sends the speed level as string
+            content.addProperty("speed_level", Integer.toString(toSpeedLevel(speed)));
+            description.add("speed " + speed);
+        }
 
-            Request request = createRequest(FANS_URL + "/" + fanId, HttpMethod.PUT);
-            request.header("client", client);
-            request.header("access-token", accessToken);
-            request.header("uid", uid);
+        return sendAuthorized(Endpoint.PUT, fansUrl + "/" + fanId, HttpMethod.PUT, gson.toJson(content),
+                response -> {
+                    if (response.status != HttpStatus.OK_200) {
+                        throw new SmartCocoonException("Failed to set " + description + " for fan " + fanId
+                                + ", status: " + response.status + ", response: " + response.getContentAsString());
+                    }
+                    return null;
+                });
+    }
 
-            //request.content(new StringContentProvider("{\"mode\": \"" + mode + "\"}", JSON_CONTENT_TYPE));
-            request.content(new StringContentProvider("{\"speed_level\": \"" + speed/8 + "\"}"));
+    /**
+     * Converts a speed from 0 to 100 to the fan's speed level from 0 to 12.
+     */
+    public static int toSpeedLevel(int speed) {
+        return speed / 8;
+    }
 
-            logger.debug("HTTP PUT Request {}.", request.toString());
-            ContentResponse httpResponse = request.send();
-            if (httpResponse.getStatus() != HttpStatus.OK_200) {
-                throw new SmartCocoonException("Failed to set speed " + speed + " for fan " + fanId + 
-                            ", status: " + httpResponse.getStatus() + ", response: " + httpResponse.getContentAsString());
-            }
+    /**
+     * Converts the fan's speed level from 0 to 12 to a speed from 0 to 100.
+     */
+    public static int toSpeed(int speedLevel) {
+        return speedLevel * 8 + speedLevel / 3;
+    }
 
+    @FunctionalInterface
+    private interface ResponseHandler<T> {
+        T handle(ApiResponse response) throws SmartCocoonException, IOException;
+    }
 
-            //return;
+    /**
+     * Status, headers and raw content of a completed response.
+     */
+    private static class ApiResponse {
+        final int status;
+        final HttpFields headers;
+        final byte[] content;
+
+        ApiResponse(int status, HttpFields headers, byte[] content) {
+            this.status = status;
+            this.headers = headers;
+            this.content = content;
+        }
 
-        } catch (InterruptedException | TimeoutException | ExecutionException e) {
-            throw new SmartCocoonException(e);
+        String getContentAsString() {
+            return new String(content, StandardCharsets.UTF_8);
         }
-  }
 
+        JsonReader getContentAsReader() {
+            return new JsonReader(new InputStreamReader(new ByteArrayInputStream(content), StandardCharsets.UTF_8));
+        }
+    }
 }
@@ -0,0 +1,202 @@
+/**
+ * Copyright (c) 2010-2023 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.binding.smartcocoon.internal.api;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.eclipse.jdt.annotation.Nullable;
+import org.openhab.binding.smartcocoon.internal.SmartCocoonException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The {@link SmartCocoonAuthenticator} owns the credentials of an account.
+ *
+ * Only one login runs at a time, concurrent callers share its result. The credentials are published as a single
+ * immutable {@link SmartCocoonCredentials} and renewed in the background shortly before they expire, so requests
+ * normally never wait for a login.
+ *
+ * Logins are throttled: a new login is not started shortly after the last one, and failed logins back off
+ * exponentially, so wrong credentials or an outage do not cause a stream of login attempts.
+ *
+ * With a {@link SmartCocoonTokenStore} the credentials outlive restarts, they are reused until they expire or the
+ * cloud rejects them.
+ *
+ * @author Mike Fedotov - Initial contribution
+ */
+@NonNullByDefault
+public class SmartCocoonAuthenticator {
+
+    private static final Duration RENEWAL_MARGIN = Duration.ofMinutes(5);
+    private static final Duration MIN_RENEWAL_DELAY = Duration.ofSeconds(10);
+    private static final Duration MIN_LOGIN_INTERVAL = Duration.ofSeconds(10);
+    private static final Duration MAX_LOGIN_BACKOFF = Duration.ofMinutes(10);
+
+    private final Logger logger = LoggerFactory.getLogger(SmartCocoonAuthenticator.class);
+    private final Supplier<CompletableFuture<SmartCocoonCredentials>> login;
+    private final ScheduledExecutorService scheduler;
+    private final @Nullable SmartCocoonTokenStore tokenStore;
+
+    private final AtomicReference<@Nullable SmartCocoonCredentials> credentials = new AtomicReference<>();
+    private @Nullable CompletableFuture<SmartCocoonCredentials> loginInProgress;
+    private @Nullable ScheduledFuture<?> renewalJob;
+    private long logins;
+    private int failedLogins;
+    private Instant nextLoginAllowed = Instant.EPOCH;
+
+    /**
+     * @param login sends the login request, completing with the new credentials
+     * @param scheduler runs the background renewal
+     * @param tokenStore keeps the credentials across restarts, null to keep them in memory only
+     */
+    public SmartCocoonAuthenticator(Supplier<CompletableFuture<SmartCocoonCredentials>> login,
+            ScheduledExecutorService scheduler, @Nullable SmartCocoonTokenStore tokenStore) {
+        this.login = login;
+        this.scheduler = scheduler;
+        this.tokenStore = tokenStore;
+        if (tokenStore != null) {
+            SmartCocoonCredentials stored = tokenStore.load();
+            if (stored != null && !stored.isExpired(Instant.now())) {
+                logger.debug("Reusing stored credentials");
+                credentials.set(stored);
+                synchronized (this) {
+                    scheduleRenewal(stored);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return whether credentials are available without a login
+     */
+    public boolean hasCredentials() {
+        SmartCocoonCredentials current = credentials.get();
+        return current != null && !current.isExpired(Instant.now());
+    }
+
+    /**
+     * Returns valid credentials, logging in if there are none or they are expired.
+     */
+    public CompletableFuture<SmartCocoonCredentials> getCredentials() {
+        SmartCocoonCredentials current = credentials.get();
+        if (current != null && !current.isExpired(Instant.now())) {
+            return CompletableFuture.completedFuture(current);
+        }
+        return login();
+    }
+
+    /**
+     * Drops the given credentials after the cloud rejected them. Credentials which were already replaced by a
+     * newer login are kept, so a burst of rejected requests causes a single login.
+     */
+    public void invalidate(SmartCocoonCredentials rejected) {
+        if (credentials.compareAndSet(rejected, null)) {
+            logger.debug("Credentials rejected, a new login is required");
+            SmartCocoonTokenStore tokenStore = this.tokenStore;
+            if (tokenStore != null) {
+                tokenStore.clear();
+            }
+        }
+    }
+
+    /**
+     * Starts a login, or joins the one already running. Fails at once while logins are throttled.
+     */
+    public synchronized CompletableFuture<SmartCocoonCredentials> login() {
+        CompletableFuture<SmartCocoonCredentials> loginInProgress = this.loginInProgress;
+        if (loginInProgress != null) {
+            return loginInProgress;
+        }
+        if (Instant.now().isBefore(nextLoginAllowed)) {
+            return CompletableFuture
+                    .failedFuture(new SmartCocoonException("Login suspended until " + nextLoginAllowed));
+        }
+        logins++;
+        CompletableFuture<SmartCocoonCredentials> result = new CompletableFuture<>();
+        this.loginInProgress = result;
+        login.get().whenComplete((newCredentials, exception) -> {
+            synchronized (this) {
+                this.loginInProgress = null;
+                if (exception == null) {
+                    failedLogins = 0;
+                    nextLoginAllowed = Instant.now().plus(MIN_LOGIN_INTERVAL);
+                    credentials.set(newCredentials);
+                    scheduleRenewal(newCredentials);
+                    SmartCocoonTokenStore tokenStore = this.tokenStore;
+                    if (tokenStore != null) {
+                        tokenStore.save(newCredentials);
+                    }
+                } else {
+                    failedLogins++;
+                    // MIN_LOGIN_INTERVAL * 2^(failedLogins - 1), the shift is capped to stay far from overflowing
+                    Duration backoff = MIN_LOGIN_INTERVAL.multipliedBy(1L << Math.min(failedLogins - 1, 20));
+                    nextLoginAllowed = Instant.now()
+                            .plus(backoff.compareTo(MAX_LOGIN_BACKOFF) > 0 ? MAX_LOGIN_BACKOFF : backoff);
+                }
+            }
+            if (exception == null) {
+                result.complete(newCredentials);
+            } else {
+                result.completeExceptionally(SmartCocoonException.of(exception));
+            }
+        });
+        return result;
+    }
+
+    /**
+     * @return number of logins started since creation
+     */
+    public synchronized long getLogins() {
+        return logins;
+    }
+
+    public synchronized void dispose() {
+        ScheduledFuture<?> renewalJob = this.renewalJob;
+        if (renewalJob != null) {
+            renewalJob.cancel(false);
+            this.renewalJob = null;
+        }
+    }
+
+    private void scheduleRenewal(SmartCocoonCredentials newCredentials) {
+        ScheduledFuture<?> renewalJob = this.renewalJob;
+        if (renewalJob != null) {
+            renewalJob.cancel(false);
+            this.renewalJob = null;
+        }
+        if (newCredentials.getExpiry() == 0) {
+            // Unknown lifetime, the token is renewed once the cloud rejects it
+            return;
+        }
+        Duration delay = Duration.between(Instant.now(), Instant.ofEpochSecond(newCredentials.getExpiry()))
+                .minus(RENEWAL_MARGIN);
+        if (delay.compareTo(MIN_RENEWAL_DELAY) < 0) {
+            delay = MIN_RENEWAL_DELAY;
+        }
+        this.renewalJob = scheduler.schedule(() -> {
+            logger.debug("Renewing credentials before they expire");
+            login().exceptionally(exception -> {
+                logger.warn("Failed to renew credentials: {}", SmartCocoonException.of(exception).getMessage());
+                return null;
+            });
+        }, delay.toMillis(), TimeUnit.MILLISECONDS);
+    }
+}
@@ -0,0 +1,139 @@
+/**
+ * Copyright (c) 2010-2023 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.binding.smartcocoon.internal.api;
+
+import java.time.Duration;
+import java.time.Instant;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The {@link SmartCocoonCircuitBreaker} stops the requests of an account while the cloud is unavailable.
+ *
+ * After a number of consecutive failures the circuit opens and requests fail at once without being sent. Once the
+ * open period passed, a single probe request is let through: if it succeeds the circuit closes, otherwise it opens
+ * again for twice as long, up to a maximum.
+ *
+ * @author Mike Fedotov - Initial contribution
+ */
+@NonNullByDefault
+public class SmartCocoonCircuitBreaker {
+
+    public enum State {
+        CLOSED,
+        OPEN,
+        HALF_OPEN
+    }
+
+    private final Logger logger = LoggerFactory.getLogger(SmartCocoonCircuitBreaker.class);
+
+    private final int failureThreshold;
+    private final Duration minOpenDuration;
+    private final Duration maxOpenDuration;
+
+    private State state = State.CLOSED;
+    private int consecutiveFailures;
+    private Duration openDuration;
+    private Instant openUntil = Instant.EPOCH;
+    private boolean probeInFlight;
+
+    /**
+     * @param failureThreshold number of consecutive failures opening the circuit
+     */
+    public SmartCocoonCircuitBreaker(int failureThreshold, Duration minOpenDuration, Duration maxOpenDuration) {
+        this.failureThreshold = failureThreshold;
+        this.minOpenDuration = minOpenDuration;
+        this.maxOpenDuration = maxOpenDuration;
+        this.openDuration = minOpenDuration;
+    }
+
+    /**
+     * @return whether a request may be sent now, if so its outcome must be reported
+     */
+    public synchronized boolean tryAcquire() {
+        switch (state) {
+            case OPEN:
+                if (Instant.now().isBefore(openUntil)) {
+                    return false;
+                }
+                logger.debug("Circuit half open, probing the cloud");
+                state = State.HALF_OPEN;
+                probeInFlight = true;
+                return true;
+            case HALF_OPEN:
+                if (probeInFlight) {
+                    return false;
+                }
+                probeInFlight = true;
+                return true;
+            default:
+                return true;
+        }
+    }
+
+    /**
+     * The cloud answered a request.
+     */
+    public synchronized void onSuccess() {
+        if (state != State.CLOSED) {
+            logger.debug("Circuit closed, the cloud is available again");
+        }
+        state = State.CLOSED;
+        consecutiveFailures = 0;
+        openDuration = minOpenDuration;
+        probeInFlight = false;
+    }
+
+    /**
+     * A request failed because the cloud is unreachable or unavailable.
+     */
+    public synchronized void onFailure() {
+        consecutiveFailures++;
+        if (state == State.HALF_OPEN) {
+            Duration doubled = openDuration.multipliedBy(2);
+            openDuration = doubled.compareTo(maxOpenDuration) > 0 ? maxOpenDuration : doubled;
+            open();
+        } else if (state == State.CLOSED && consecutiveFailures >= failureThreshold) {
+            open();
+        }
+    }
+
+    /**
+     * A request failed for a reason telling nothing about the availability of the cloud, e.g. it was cancelled. The
+     * failures are not reset, but a probe may be sent again.
+     */
+    public synchronized void onNeutral() {
+        probeInFlight = false;
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+
+    /**
+     * @return time the circuit stays open, or now if it is not open
+     */
+    public synchronized Instant getOpenUntil() {
+        return state == State.OPEN ? openUntil : Instant.now();
+    }
+
+    private void open() {
+        state = State.OPEN;
+        probeInFlight = false;
+        openUntil = Instant.now().plus(openDuration);
+        logger.debug("Circuit opened after {} consecutive failures, failing requests for {} s", consecutiveFailures,
+                openDuration.toSeconds());
+    }
+}
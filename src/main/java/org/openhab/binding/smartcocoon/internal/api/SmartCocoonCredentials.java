@@ -0,0 +1,65 @@
+/**
+ * Copyright (c) 2010-2023 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.binding.smartcocoon.internal.api;
+
+import java.time.Instant;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+
+/**
+ * The {@link SmartCocoonCredentials} holds the authentication headers returned by a login. Instances are
+ * immutable, so a request always sends a consistent set of headers.
+ *
+ * @author Mike Fedotov - Initial contribution
+ */
+@NonNullByDefault
+public final class SmartCocoonCredentials {
+
+    private final String client;
+    private final String accessToken;
+    private final String uid;
+    private final long expiry;
+
+    /**
+     * @param expiry expiry of the token in epoch seconds, 0 if unknown
+     */
+    public SmartCocoonCredentials(String client, String accessToken, String uid, long expiry) {
+        this.client = client;
+        this.accessToken = accessToken;
+        this.uid = uid;
+        this.expiry = expiry;
+    }
+
+    public String getClient() {
+        return client;
+    }
+
+    public String getAccessToken() {
+        return accessToken;
+    }
+
+    public String getUid() {
+        return uid;
+    }
+
+    public long getExpiry() {
+        return expiry;
+    }
+
+    /**
+     * A token without known expiry is considered valid until the cloud rejects it.
+     */
+    public boolean isExpired(Instant now) {
+        return expiry != 0 && !now.isBefore(Instant.ofEpochSecond(expiry));
+    }
+}
@@ -0,0 +1,76 @@
+/**
+ * Copyright (c) 2010-2023 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.binding.smartcocoon.internal.api;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.eclipse.jdt.annotation.Nullable;
+import org.openhab.binding.smartcocoon.internal.dto.FanInfoResultDTO;
+
+/**
+ * The {@link SmartCocoonFanTarget} is the state a fan is commanded to by a bulk operation. The mode, the speed or
+ * both can be given, the fan keeps the other one.
+ *
+ * @author Mike Fedotov - Initial contribution
+ */
+@NonNullByDefault
+public final class SmartCocoonFanTarget {
+
+    /**
+     * Outcome of commanding a single fan.
+     */
+    public enum Result {
+        /** The command was accepted by the cloud */
+        SET,
+        /** The fan already was in the target state, no command was sent */
+        UNCHANGED,
+        /** The fan is not on the account or was not polled yet */
+        UNKNOWN_FAN,
+        /** The command was not accepted */
+        FAILED
+    }
+
+    private final @Nullable String mode;
+    private final @Nullable Integer speed;
+
+    /**
+     * @param mode mode of the fan, e.g. always_on, or null to keep it
+     * @param speed speed in percent, or null to keep it
+     */
+    public SmartCocoonFanTarget(@Nullable String mode, @Nullable Integer speed) {
+        this.mode = mode;
+        this.speed = speed;
+    }
+
+    public @Nullable String getMode() {
+        return mode;
+    }
+
+    public @Nullable Integer getSpeed() {
+        return speed;
+    }
+
+    /**
+     * @return whether the fan is in the target state already
+     */
+    public boolean isReachedBy(FanInfoResultDTO fan) {
+        String mode = this.mode;
+        Integer speed = this.speed;
+        return (mode == null || mode.equals(fan.mode))
+                && (speed == null || SmartCocoonAPI.toSpeedLevel(speed) == fan.speed_level);
+    }
+
+    @Override
+    public String toString() {
+        return "mode: " + mode + ", speed: " + speed;
+    }
+}
@@ -0,0 +1,164 @@
+/**
+ * Copyright (c) 2010-2023 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.binding.smartcocoon.internal.api;
+
+import java.time.Instant;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.eclipse.jdt.annotation.Nullable;
+import org.openhab.binding.smartcocoon.internal.dto.FanInfoResultDTO;
+
+/**
+ * The {@link SmartCocoonFansSnapshot} holds the fans of an account as returned by one poll. Instances are immutable
+ * and so are the {@link FanInfoResultDTO}s they hold, a poll publishes a new snapshot instead of updating the
+ * previous one. DTOs of unchanged fans are shared between snapshots.
+ *
+ * The generation is increased whenever the fans differ from the previous snapshot. A snapshot restored after a
+ * restart is stale until a poll confirms or replaces it.
+ *
+ * @author Mike Fedotov - Initial contribution
+ */
+@NonNullByDefault
+public final class SmartCocoonFansSnapshot {
+
+    /**
+     * Snapshot before the first poll.
+     */
+    public static final SmartCocoonFansSnapshot EMPTY = new SmartCocoonFansSnapshot(0, Instant.EPOCH, Map.of(),
+            Set.of(), Set.of(), false);
+
+    private final long generation;
+    private final Instant fetchedAt;
+    private final Map<String, FanInfoResultDTO> fans;
+    private final Set<String> changedFans;
+    private final Set<String> removedFans;
+    private final boolean stale;
+
+    /**
+     * @param fans fans by fan_id, not copied, must not be modified afterwards
+     * @param changedFans fan_ids of the fans added or changed since the previous generation
+     * @param removedFans fan_ids of the fans which were in the previous generation only
+     * @param stale whether the fans were restored rather than received from the cloud
+     */
+    SmartCocoonFansSnapshot(long generation, Instant fetchedAt, Map<String, FanInfoResultDTO> fans,
+            Set<String> changedFans, Set<String> removedFans, boolean stale) {
+        this.generation = generation;
+        this.fetchedAt = fetchedAt;
+        this.fans = Collections.unmodifiableMap(fans);
+        this.changedFans = Collections.unmodifiableSet(changedFans);
+        this.removedFans = Collections.unmodifiableSet(removedFans);
+        this.stale = stale;
+    }
+
+    public long getGeneration() {
+        return generation;
+    }
+
+    /**
+     * @return time the fans were received, or confirmed to be unchanged
+     */
+    public Instant getFetchedAt() {
+        return fetchedAt;
+    }
+
+    /**
+     * @return fans by fan_id
+     */
+    public Map<String, FanInfoResultDTO> getFans() {
+        return fans;
+    }
+
+    public @Nullable FanInfoResultDTO get(String fanId) {
+        return fans.get(fanId);
+    }
+
+    public Set<String> getChangedFans() {
+        return changedFans;
+    }
+
+    public Set<String> getRemovedFans() {
+        return removedFans;
+    }
+
+    /**
+     * @return whether the fans were restored after a restart and not confirmed by a poll yet
+     */
+    public boolean isStale() {
+        return stale;
+    }
+
+    public boolean hasChanges() {
+        return !changedFans.isEmpty() || !removedFans.isEmpty();
+    }
+
+    /**
+     * @return the same fans, confirmed to be unchanged at the given time
+     */
+    SmartCocoonFansSnapshot unchanged(Instant fetchedAt) {
+        return new SmartCocoonFansSnapshot(generation, fetchedAt, fans, Set.of(), Set.of(), false);
+    }
+
+    /**
+     * Fans received by one transport may have been compared to fans outdated by another transport meanwhile.
+     *
+     * @param previous the fans this snapshot was compared to
+     * @param current the fans applied last
+     * @return this snapshot if it was compared to the current fans, otherwise its fans compared to the current ones
+     */
+    public SmartCocoonFansSnapshot rebase(SmartCocoonFansSnapshot previous, SmartCocoonFansSnapshot current) {
+        if (previous == current) {
+            return this;
+        }
+        if (!hasChanges() && generation == previous.generation) {
+            // Only confirms the outdated fans, nothing new
+            return current;
+        }
+        Set<String> changedFans = new HashSet<>();
+        fans.forEach((fanId, fan) -> {
+            if (!sameState(fan, current.fans.get(fanId))) {
+                changedFans.add(fanId);
+            }
+        });
+        Set<String> removedFans = new HashSet<>(current.fans.keySet());
+        removedFans.removeAll(fans.keySet());
+        if (changedFans.isEmpty() && removedFans.isEmpty()) {
+            return current.unchanged(fetchedAt);
+        }
+        return new SmartCocoonFansSnapshot(current.generation + 1, fetchedAt, fans, changedFans, removedFans, false);
+    }
+
+    private static boolean sameState(FanInfoResultDTO fan, @Nullable FanInfoResultDTO other) {
+        return other != null && Objects.equals(fan.id, other.id) && Objects.equals(fan.mode, other.mode)
+                && fan.speed_level == other.speed_level && fan.fan_on == other.fan_on;
+    }
+
+    /**
+     * @return the next generation with a single fan replaced, e.g. by a refresh of that fan
+     */
+    public SmartCocoonFansSnapshot withFan(FanInfoResultDTO fan) {
+        String fanId = fan.fan_id;
+        // A refresh returns a new instance even if nothing changed
+        if (fanId == null || sameState(fan, fans.get(fanId))) {
+            return this;
+        }
+        Map<String, FanInfoResultDTO> fans = new HashMap<>(this.fans);
+        fans.put(fanId, fan);
+        return new SmartCocoonFansSnapshot(generation + 1, Instant.now(), fans, Set.of(fanId), Set.of(), stale);
+    }
+}
@@ -0,0 +1,165 @@
+/**
+ * Copyright (c) 2010-2023 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.binding.smartcocoon.internal.api;
+
+import java.time.Duration;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.eclipse.jdt.annotation.Nullable;
+import org.openhab.binding.smartcocoon.internal.SmartCocoonException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The {@link SmartCocoonLongPollTransport} receives the changes of the fans of an account as they happen, by long
+ * polling the cloud: each request is held by the server until the fans change or the hold time passed, and the next
+ * request is sent as soon as one completes.
+ *
+ * The changes are considered pushed while the requests succeed. Failed requests are repeated with exponential
+ * backoff. If the server answers without holding the requests, it does not support long polling and the transport
+ * gives up, leaving the fans to be polled.
+ *
+ * @author Mike Fedotov - Initial contribution
+ */
+@NonNullByDefault
+public class SmartCocoonLongPollTransport implements SmartCocoonTransport {
+
+    private static final Duration HOLD_TIME = Duration.ofSeconds(60);
+    // Answers without changes faster than this were not held by the server
+    private static final Duration MIN_HOLD_TIME = Duration.ofSeconds(2);
+    private static final int MAX_UNHELD_ANSWERS = 3;
+    private static final Duration MIN_RETRY_DELAY = Duration.ofSeconds(5);
+    private static final Duration MAX_RETRY_DELAY = Duration.ofMinutes(5);
+
+    private final Logger logger = LoggerFactory.getLogger(SmartCocoonLongPollTransport.class);
+    private final SmartCocoonAPI api;
+    private final ScheduledExecutorService scheduler;
+    private final Duration minHoldTime;
+    private final Duration minRetryDelay;
+    private final Duration maxRetryDelay;
+
+    private @Nullable Listener listener;
+    private @Nullable ScheduledFuture<?> retryJob;
+    private volatile boolean pushing;
+    private int failures;
+    private int unheldAnswers;
+
+    public SmartCocoonLongPollTransport(SmartCocoonAPI api, ScheduledExecutorService scheduler) {
+        this(api, scheduler, MIN_HOLD_TIME, MIN_RETRY_DELAY, MAX_RETRY_DELAY);
+    }
+
+    SmartCocoonLongPollTransport(SmartCocoonAPI api, ScheduledExecutorService scheduler, Duration minHoldTime,
+            Duration minRetryDelay, Duration maxRetryDelay) {
+        this.api = api;
+        this.scheduler = scheduler;
+        this.minHoldTime = minHoldTime;
+        this.minRetryDelay = minRetryDelay;
+        this.maxRetryDelay = maxRetryDelay;
+    }
+
+    @Override
+    public synchronized void start(Listener listener) {
+        this.listener = listener;
+        this.failures = 0;
+        this.unheldAnswers = 0;
+        scheduler.execute(this::watch);
+    }
+
+    @Override
+    public synchronized void stop() {
+        // A request still held by the server completes later and is ignored
+        this.listener = null;
+        this.pushing = false;
+        ScheduledFuture<?> retryJob = this.retryJob;
+        if (retryJob != null) {
+            retryJob.cancel(false);
+            this.retryJob = null;
+        }
+    }
+
+    @Override
+    public boolean isPushing() {
+        return this.pushing;
+    }
+
+    private void watch() {
+        Listener listener;
+        synchronized (this) {
+            listener = this.listener;
+        }
+        if (listener == null) {
+            return;
+        }
+        SmartCocoonFansSnapshot previous = listener.getFansSnapshot();
+        long start = System.nanoTime();
+        api.watchFansAsync(previous, HOLD_TIME).whenComplete((snapshot, exception) -> {
+            synchronized (this) {
+                if (this.listener != listener) {
+                    return;
+                }
+            }
+            if (exception != null) {
+                watchFailed(listener, SmartCocoonException.of(exception));
+            } else if (!snapshot.hasChanges() && System.nanoTime() - start < minHoldTime.toNanos()) {
+                watchNotHeld(listener, previous, snapshot);
+            } else {
+                synchronized (this) {
+                    this.failures = 0;
+                    this.unheldAnswers = 0;
+                }
+                this.pushing = true;
+                listener.onFans(previous, snapshot);
+                watch();
+            }
+        });
+    }
+
+    private void watchFailed(Listener listener, SmartCocoonException exception) {
+        this.pushing = false;
+        Duration delay;
+        synchronized (this) {
+            this.failures++;
+            // min * 2^(failures - 1), the shift is capped to stay far from overflowing
+            long backoffMillis = Math.min(maxRetryDelay.toMillis(),
+                    minRetryDelay.toMillis() << Math.min(this.failures - 1, 20));
+            delay = Duration.ofMillis(backoffMillis / 2 + ThreadLocalRandom.current().nextLong(backoffMillis / 2 + 1));
+            this.retryJob = scheduler.schedule(this::watch, delay.toMillis(), TimeUnit.MILLISECONDS);
+        }
+        logger.debug("Long poll failed, retrying in {} ms: {}", delay.toMillis(), exception.getMessage());
+        listener.onFailure(exception);
+    }
+
+    private void watchNotHeld(Listener listener, SmartCocoonFansSnapshot previous, SmartCocoonFansSnapshot snapshot) {
+        boolean unsupported;
+        synchronized (this) {
+            this.unheldAnswers++;
+            unsupported = this.unheldAnswers >= MAX_UNHELD_ANSWERS;
+            if (unsupported) {
+                this.listener = null;
+            } else {
+                // Do not flood a server which answers at once
+                this.retryJob = scheduler.schedule(this::watch, minHoldTime.toMillis(), TimeUnit.MILLISECONDS);
+            }
+        }
+        listener.onFans(previous, snapshot);
+        if (unsupported) {
+            this.pushing = false;
+            logger.info("The cloud does not hold long polls, falling back to polling");
+            listener.onFailure(new SmartCocoonException("Long polling is not supported by the cloud"));
+        }
+    }
+}
@@ -0,0 +1,291 @@
+/**
+ * Copyright (c) 2010-2023 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.binding.smartcocoon.internal.api;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+
+/**
+ * The {@link SmartCocoonMetrics} collects the operational metrics of an account: request latencies per endpoint,
+ * counters for logins, rejected tokens, error statuses and received bytes, the duration of the poll phases and the
+ * time requests waited to be started.
+ *
+ * Recording only adds to striped counters and never allocates, so the metrics are always on. Meters are named
+ * and shaped like Micrometer's timers and counters (count, total time, max, cumulative buckets), so they can be
+ * bound to a Micrometer registry as they are.
+ *
+ * @author Mike Fedotov - Initial contribution
+ */
+@NonNullByDefault
+public class SmartCocoonMetrics {
+
+    public enum Endpoint {
+        AUTH("auth"),
+        LIST("list"),
+        WATCH("watch"),
+        GET("get"),
+        PUT("put");
+
+        private final String tag;
+
+        Endpoint(String tag) {
+            this.tag = tag;
+        }
+
+        public String getTag() {
+            return tag;
+        }
+    }
+
+    public static final String REQUEST_TIMER = "smartcocoon.api.requests";
+    public static final String POLL_PARSE_TIMER = "smartcocoon.poll.parse";
+    public static final String POLL_DISPATCH_TIMER = "smartcocoon.poll.dispatch";
+    public static final String QUEUE_WAIT_TIMER = "smartcocoon.api.queue.wait";
+    public static final String LOGINS_COUNTER = "smartcocoon.api.logins";
+    public static final String TOKEN_EXPIRIES_COUNTER = "smartcocoon.api.token.expiries";
+    public static final String ERROR_STATUSES_COUNTER = "smartcocoon.api.errors";
+    public static final String BYTES_RECEIVED_COUNTER = "smartcocoon.api.received.bytes";
+    public static final String RETRIES_COUNTER = "smartcocoon.api.retries";
+    public static final String CIRCUIT_REJECTIONS_COUNTER = "smartcocoon.api.circuit.rejections";
+    public static final String POLLS_COUNTER = "smartcocoon.poll.count";
+    public static final String UNCHANGED_POLLS_COUNTER = "smartcocoon.poll.unchanged";
+
+    private final Map<Endpoint, Timer> requestTimers = new EnumMap<>(Endpoint.class);
+    private final Timer pollParse = new Timer();
+    private final Timer pollDispatch = new Timer();
+    private final Timer queueWait = new Timer();
+    private final LongAdder logins = new LongAdder();
+    private final LongAdder tokenExpiries = new LongAdder();
+    private final LongAdder errorStatuses = new LongAdder();
+    private final LongAdder bytesReceived = new LongAdder();
+    private final LongAdder retries = new LongAdder();
+    private final LongAdder circuitRejections = new LongAdder();
+    private final LongAdder polls = new LongAdder();
+    private final LongAdder unchangedPolls = new LongAdder();
+
+    public SmartCocoonMetrics() {
+        for (Endpoint endpoint : Endpoint.values()) {
+            requestTimers.put(endpoint, new Timer());
+        }
+    }
+
+    public void recordRequest(Endpoint endpoint, long durationNanos, int status, int contentLength) {
+        getRequestTimer(endpoint).record(durationNanos);
+        // Not modified is the expected answer to conditional polls
+        if (status != 200 && status != 304) {
+            errorStatuses.increment();
+        }
+        bytesReceived.add(contentLength);
+    }
+
+    public void recordLogin() {
+        logins.increment();
+    }
+
+    public void recordTokenExpiry() {
+        tokenExpiries.increment();
+    }
+
+    public void recordRetry() {
+        retries.increment();
+    }
+
+    /**
+     * A request was not sent, because the circuit breaker was open.
+     */
+    public void recordCircuitRejection() {
+        circuitRejections.increment();
+    }
+
+    public void recordPoll() {
+        polls.increment();
+    }
+
+    /**
+     * A poll returned the same fans as the previous one, and was neither parsed nor dispatched.
+     */
+    public void recordUnchangedPoll() {
+        unchangedPolls.increment();
+    }
+
+    public Timer getRequestTimer(Endpoint endpoint) {
+        Timer timer = requestTimers.get(endpoint);
+        if (timer == null) {
+            throw new IllegalArgumentException("No timer for " + endpoint);
+        }
+        return timer;
+    }
+
+    /**
+     * @return timer of fetching the fans list, the first phase of a poll
+     */
+    public Timer getPollFetch() {
+        return getRequestTimer(Endpoint.LIST);
+    }
+
+    public Timer getPollParse() {
+        return pollParse;
+    }
+
+    public Timer getPollDispatch() {
+        return pollDispatch;
+    }
+
+    /**
+     * @return timer of the time requests waited for the request scheduler to start them
+     */
+    public Timer getQueueWait() {
+        return queueWait;
+    }
+
+    public long getLogins() {
+        return logins.sum();
+    }
+
+    public long getTokenExpiries() {
+        return tokenExpiries.sum();
+    }
+
+    public long getErrorStatuses() {
+        return errorStatuses.sum();
+    }
+
+    public long getBytesReceived() {
+        return bytesReceived.sum();
+    }
+
+    public long getRetries() {
+        return retries.sum();
+    }
+
+    public long getCircuitRejections() {
+        return circuitRejections.sum();
+    }
+
+    public long getPolls() {
+        return polls.sum();
+    }
+
+    public long getUnchangedPolls() {
+        return unchangedPolls.sum();
+    }
+
+    public long getRequests() {
+        long requests = 0;
+        for (Timer timer : requestTimers.values()) {
+            requests += timer.count();
+        }
+        return requests;
+    }
+
+    /**
+     * A latency histogram with fixed buckets.
+     */
+    public static class Timer {
+
+        // Upper bounds of the buckets in milliseconds, the last bucket is unbounded
+        private static final long[] BUCKET_BOUNDS_MS = { 1, 2, 5, 10, 20, 50, 100, 200, 500, 1000, 2000, 5000,
+                10000, 30000 };
+
+        private final LongAdder[] buckets = new LongAdder[BUCKET_BOUNDS_MS.length + 1];
+        private final LongAdder count = new LongAdder();
+        private final LongAdder totalNanos = new LongAdder();
+        private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+        private volatile long lastNanos;
+
+        Timer() {
+            for (int i = 0; i < buckets.length; i++) {
+                buckets[i] = new LongAdder();
+            }
+        }
+
+        public void record(long durationNanos) {
+            long durationMillis = TimeUnit.NANOSECONDS.toMillis(durationNanos);
+            int bucket = 0;
+            while (bucket < BUCKET_BOUNDS_MS.length && durationMillis > BUCKET_BOUNDS_MS[bucket]) {
+                bucket++;
+            }
+            buckets[bucket].increment();
+            count.increment();
+            totalNanos.add(durationNanos);
+            maxNanos.accumulate(durationNanos);
+            lastNanos = durationNanos;
+        }
+
+        public long count() {
+            return count.sum();
+        }
+
+        public double totalTime(TimeUnit unit) {
+            return (double) totalNanos.sum() / unit.toNanos(1);
+        }
+
+        public double max(TimeUnit unit) {
+            return (double) maxNanos.get() / unit.toNanos(1);
+        }
+
+        public double mean(TimeUnit unit) {
+            long count = count();
+            return count == 0 ? 0 : totalTime(unit) / count;
+        }
+
+        public double last(TimeUnit unit) {
+            return (double) lastNanos / unit.toNanos(1);
+        }
+
+        /**
+         * @return the upper bound in milliseconds of the bucket holding the given percentile, an estimate of the
+         *         percentile within the bucket resolution
+         */
+        public long percentileMillis(double percentile) {
+            long total = count();
+            if (total == 0) {
+                return 0;
+            }
+            long rank = (long) Math.ceil(percentile * total);
+            long seen = 0;
+            for (int i = 0; i < BUCKET_BOUNDS_MS.length; i++) {
+                seen += buckets[i].sum();
+                if (seen >= rank) {
+                    return BUCKET_BOUNDS_MS[i];
+                }
+            }
+            return TimeUnit.NANOSECONDS.toMillis(maxNanos.get());
+        }
+
+        /**
+         * @return upper bounds in milliseconds of the bounded buckets
+         */
+        public static long[] getBucketBoundsMillis() {
+            return BUCKET_BOUNDS_MS.clone();
+        }
+
+        /**
+         * @return number of recorded durations up to each bucket bound, as cumulative histogram
+         */
+        public long[] cumulativeBucketCounts() {
+            long[] counts = new long[BUCKET_BOUNDS_MS.length];
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += buckets[i].sum();
+                counts[i] = seen;
+            }
+            return counts;
+        }
+    }
+}
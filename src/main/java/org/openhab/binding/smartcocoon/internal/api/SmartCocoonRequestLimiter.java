@@ -0,0 +1,107 @@
+/**
+ * Copyright (c) 2010-2023 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.binding.smartcocoon.internal.api;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+
+/**
+ * The {@link SmartCocoonRequestLimiter} caps the number of asynchronous operations running at the same time.
+ * Operations over the limit wait in submission order, without holding a thread, until a running one completes.
+ * Waiting operations are started in a loop, so operations completing at once do not nest their successors' starts
+ * on the stack.
+ *
+ * @author Mike Fedotov - Initial contribution
+ */
+@NonNullByDefault
+public class SmartCocoonRequestLimiter {
+
+    private final int maxRunning;
+    private final Queue<Runnable> waiting = new ArrayDeque<>();
+    private int running;
+    // Whether a thread is starting waiting operations, guarded by this
+    private boolean draining;
+
+    public SmartCocoonRequestLimiter(int maxRunning) {
+        this.maxRunning = maxRunning;
+    }
+
+    /**
+     * Starts the operation now if below the limit, otherwise once a running operation completes.
+     *
+     * @return future completing with the result of the operation
+     */
+    public <T> CompletableFuture<T> submit(Supplier<CompletableFuture<T>> operation) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        Runnable start = () -> {
+            CompletableFuture<T> started;
+            try {
+                started = operation.get();
+            } catch (RuntimeException e) {
+                started = CompletableFuture.failedFuture(e);
+            }
+            started.whenComplete((value, exception) -> {
+                release();
+                if (exception == null) {
+                    result.complete(value);
+                } else {
+                    result.completeExceptionally(exception);
+                }
+            });
+        };
+        synchronized (this) {
+            if (running >= maxRunning || draining) {
+                waiting.add(start);
+                return result;
+            }
+            running++;
+        }
+        start.run();
+        return result;
+    }
+
+    public synchronized int getRunning() {
+        return running;
+    }
+
+    public synchronized int getWaiting() {
+        return waiting.size();
+    }
+
+    private void release() {
+        synchronized (this) {
+            running--;
+            if (draining) {
+                // Started by the loop below, on this thread or another one
+                return;
+            }
+            draining = true;
+        }
+        while (true) {
+            Runnable next;
+            synchronized (this) {
+                next = running < maxRunning ? waiting.poll() : null;
+                if (next == null) {
+                    draining = false;
+                    return;
+                }
+                running++;
+            }
+            next.run();
+        }
+    }
+}
@@ -0,0 +1,231 @@
+/**
+ * Copyright (c) 2010-2023 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.binding.smartcocoon.internal.api;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.eclipse.jdt.annotation.Nullable;
+import org.openhab.binding.smartcocoon.internal.SmartCocoonException;
+
+/**
+ * The {@link SmartCocoonRequestScheduler} orders the requests of an account to the cloud.
+ *
+ * Requests wait in one queue per {@link Priority} and the most important waiting request is started first. A
+ * token bucket limits the rate requests are started at, and the number of requests in flight is capped, so a big
+ * poll neither delays a user's command nor provokes throttling by the cloud. Waiting does not hold a thread.
+ *
+ * @author Mike Fedotov - Initial contribution
+ */
+@NonNullByDefault
+public class SmartCocoonRequestScheduler {
+
+    /**
+     * Priority classes, most important first.
+     */
+    public enum Priority {
+        AUTH,
+        COMMAND,
+        REFRESH,
+        POLL
+    }
+
+    private final ScheduledExecutorService scheduler;
+    private final int maxInFlight;
+    private final double permitsPerNano;
+    private final double burst;
+    private final SmartCocoonMetrics.Timer queueWait;
+
+    // All fields below are guarded by this
+    private final Map<Priority, Queue<Entry<?>>> waiting = new EnumMap<>(Priority.class);
+    private int waitingCount;
+    private int inFlight;
+    private double tokens;
+    private long lastRefillNanos;
+    private @Nullable ScheduledFuture<?> refillJob;
+    private boolean disposed;
+
+    /**
+     * @param maxInFlight maximum number of requests started and not completed yet
+     * @param ratePerSecond sustained number of requests started per second
+     * @param burst number of requests which may be started at once after a quiet period
+     * @param queueWait timer recording how long requests waited before they were started
+     */
+    public SmartCocoonRequestScheduler(ScheduledExecutorService scheduler, int maxInFlight, double ratePerSecond,
+            int burst, SmartCocoonMetrics.Timer queueWait) {
+        this.scheduler = scheduler;
+        this.maxInFlight = maxInFlight;
+        this.permitsPerNano = ratePerSecond / TimeUnit.SECONDS.toNanos(1);
+        this.burst = burst;
+        this.queueWait = queueWait;
+        this.tokens = burst;
+        this.lastRefillNanos = System.nanoTime();
+        for (Priority priority : Priority.values()) {
+            waiting.put(priority, new ArrayDeque<>());
+        }
+    }
+
+    /**
+     * Queues a request, it is started once no more important request waits and the limits allow it.
+     *
+     * @return future completing with the result of the request
+     */
+    public <T> CompletableFuture<T> submit(Priority priority, Supplier<CompletableFuture<T>> request) {
+        Entry<T> entry = new Entry<>(request);
+        synchronized (this) {
+            if (disposed) {
+                return CompletableFuture.failedFuture(new SmartCocoonException("Account is disposed"));
+            }
+            queue(priority).add(entry);
+            waitingCount++;
+        }
+        dispatch();
+        return entry.result;
+    }
+
+    /**
+     * Fails all waiting requests, requests in flight complete as usual.
+     */
+    public void dispose() {
+        List<Entry<?>> cancelled = new ArrayList<>();
+        synchronized (this) {
+            disposed = true;
+            ScheduledFuture<?> refillJob = this.refillJob;
+            if (refillJob != null) {
+                refillJob.cancel(false);
+                this.refillJob = null;
+            }
+            for (Queue<Entry<?>> queue : waiting.values()) {
+                cancelled.addAll(queue);
+                queue.clear();
+            }
+            waitingCount = 0;
+        }
+        for (Entry<?> entry : cancelled) {
+            entry.result.completeExceptionally(new SmartCocoonException("Account is disposed"));
+        }
+    }
+
+    public synchronized int getWaiting() {
+        return waitingCount;
+    }
+
+    public synchronized int getWaiting(Priority priority) {
+        return queue(priority).size();
+    }
+
+    public synchronized int getInFlight() {
+        return inFlight;
+    }
+
+    private void dispatch() {
+        List<Entry<?>> started = new ArrayList<>();
+        synchronized (this) {
+            refill();
+            while (waitingCount > 0 && inFlight < maxInFlight && tokens >= 1) {
+                started.add(next());
+                waitingCount--;
+                inFlight++;
+                tokens--;
+            }
+            if (waitingCount > 0 && inFlight < maxInFlight && refillJob == null && !disposed) {
+                // Out of tokens, continue once the next one is available
+                long delayNanos = (long) Math.ceil((1 - tokens) / permitsPerNano);
+                refillJob = scheduler.schedule(this::refilled, delayNanos, TimeUnit.NANOSECONDS);
+            }
+        }
+        long now = System.nanoTime();
+        for (Entry<?> entry : started) {
+            queueWait.record(now - entry.queuedNanos);
+            entry.start(this::completed);
+        }
+    }
+
+    /**
+     * Runs as the refill job, only the job itself clears it, so at most one is pending.
+     */
+    private void refilled() {
+        synchronized (this) {
+            refillJob = null;
+        }
+        dispatch();
+    }
+
+    private void completed() {
+        synchronized (this) {
+            inFlight--;
+        }
+        dispatch();
+    }
+
+    private void refill() {
+        long now = System.nanoTime();
+        tokens = Math.min(burst, tokens + (now - lastRefillNanos) * permitsPerNano);
+        lastRefillNanos = now;
+    }
+
+    private Entry<?> next() {
+        for (Queue<Entry<?>> queue : waiting.values()) {
+            Entry<?> entry = queue.poll();
+            if (entry != null) {
+                return entry;
+            }
+        }
+        throw new IllegalStateException("No request waiting");
+    }
+
+    private Queue<Entry<?>> queue(Priority priority) {
+        Queue<Entry<?>> queue = waiting.get(priority);
+        if (queue == null) {
+            throw new IllegalArgumentException("No queue for " + priority);
+        }
+        return queue;
+    }
+
+    private static class Entry<T> {
+        private final Supplier<CompletableFuture<T>> request;
+        private final CompletableFuture<T> result = new CompletableFuture<>();
+        private final long queuedNanos = System.nanoTime();
+
+        Entry(Supplier<CompletableFuture<T>> request) {
+            this.request = request;
+        }
+
+        void start(Runnable completed) {
+            CompletableFuture<T> started;
+            try {
+                started = request.get();
+            } catch (RuntimeException e) {
+                started = CompletableFuture.failedFuture(e);
+            }
+            started.whenComplete((value, exception) -> {
+                completed.run();
+                if (exception == null) {
+                    result.complete(value);
+                } else {
+                    result.completeExceptionally(exception);
+                }
+            });
+        }
+    }
+}
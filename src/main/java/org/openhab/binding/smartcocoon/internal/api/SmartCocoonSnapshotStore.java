@@ -0,0 +1,106 @@
+/**
+ * Copyright (c) 2010-2023 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.binding.smartcocoon.internal.api;
+
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.eclipse.jdt.annotation.Nullable;
+import org.openhab.binding.smartcocoon.internal.dto.FanInfoResultDTO;
+import org.openhab.core.storage.Storage;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+
+/**
+ * The {@link SmartCocoonSnapshotStore} keeps the last polled fans of an account across restarts, so the fans show
+ * their last known state right away instead of waiting for the first poll.
+ *
+ * @author Mike Fedotov - Initial contribution
+ */
+@NonNullByDefault
+public class SmartCocoonSnapshotStore {
+
+    private final Logger logger = LoggerFactory.getLogger(SmartCocoonSnapshotStore.class);
+    private final Storage<String> storage;
+    private final String key;
+    private final Gson gson;
+
+    /**
+     * @param key key of the account in the storage, e.g. the bridge's thing UID
+     */
+    public SmartCocoonSnapshotStore(Storage<String> storage, String key, Gson gson) {
+        this.storage = storage;
+        this.key = key;
+        this.gson = gson;
+    }
+
+    /**
+     * @return the stored fans as stale snapshot, or null if none were stored
+     */
+    public @Nullable SmartCocoonFansSnapshot load() {
+        String stored = storage.get(key);
+        if (stored == null) {
+            return null;
+        }
+        try {
+            StoredSnapshot snapshot = gson.fromJson(stored, StoredSnapshot.class);
+            FanInfoResultDTO[] storedFans = snapshot != null ? snapshot.fans : null;
+            if (snapshot == null || storedFans == null) {
+                throw new JsonParseException("No fans");
+            }
+            Map<String, FanInfoResultDTO> fans = new HashMap<>();
+            for (FanInfoResultDTO fan : storedFans) {
+                String fanId = fan.fan_id;
+                if (fanId != null) {
+                    fans.put(fanId, fan);
+                }
+            }
+            return new SmartCocoonFansSnapshot(snapshot.generation, Instant.ofEpochMilli(snapshot.fetchedAt), fans,
+                    Set.of(), Set.of(), true);
+        } catch (JsonParseException e) {
+            logger.debug("Dropping stored fans which cannot be read: {}", e.getMessage());
+            storage.remove(key);
+            return null;
+        }
+    }
+
+    /**
+     * Stores the fans of a poll, stale snapshots are not stored again.
+     */
+    public void save(SmartCocoonFansSnapshot snapshot) {
+        if (snapshot.isStale() || snapshot.getGeneration() == 0) {
+            return;
+        }
+        StoredSnapshot stored = new StoredSnapshot();
+        stored.generation = snapshot.getGeneration();
+        stored.fetchedAt = snapshot.getFetchedAt().toEpochMilli();
+        stored.fans = snapshot.getFans().values().toArray(FanInfoResultDTO[]::new);
+        storage.put(key, gson.toJson(stored));
+    }
+
+    public void clear() {
+        storage.remove(key);
+    }
+
+    private static class StoredSnapshot {
+        long generation;
+        long fetchedAt;
+        FanInfoResultDTO @Nullable [] fans;
+    }
+}
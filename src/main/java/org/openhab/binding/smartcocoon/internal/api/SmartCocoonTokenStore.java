@@ -0,0 +1,155 @@
+/**
+ * Copyright (c) 2010-2023 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.binding.smartcocoon.internal.api;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.Base64;
+
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.PBEKeySpec;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.eclipse.jdt.annotation.Nullable;
+import org.openhab.core.storage.Storage;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The {@link SmartCocoonTokenStore} keeps the credentials of an account across restarts.
+ *
+ * They are stored encrypted with AES-GCM, keyed from the account's password and bound to its username. After the
+ * username or password of the account changed, the stored credentials can no longer be decrypted and are dropped.
+ *
+ * @author Mike Fedotov - Initial contribution
+ */
+@NonNullByDefault
+public class SmartCocoonTokenStore {
+
+    private static final byte FORMAT_VERSION = 1;
+    private static final int SALT_LENGTH = 16;
+    private static final int IV_LENGTH = 12;
+    private static final int TAG_LENGTH_BITS = 128;
+    private static final int KEY_LENGTH_BITS = 256;
+    private static final int KEY_ITERATIONS = 65536;
+
+    private final Logger logger = LoggerFactory.getLogger(SmartCocoonTokenStore.class);
+    private final SecureRandom random = new SecureRandom();
+    private final Storage<String> storage;
+    private final String key;
+    private final String username;
+    private final String password;
+
+    // Key derivation is slow on purpose, the key is derived once per salt
+    private byte @Nullable [] salt;
+    private @Nullable SecretKey secretKey;
+
+    /**
+     * @param key key of the account in the storage, e.g. the bridge's thing UID
+     */
+    public SmartCocoonTokenStore(Storage<String> storage, String key, String username, String password) {
+        this.storage = storage;
+        this.key = key;
+        this.username = username;
+        this.password = password;
+    }
+
+    /**
+     * @return the stored credentials, or null if there are none or they do not belong to the current account
+     */
+    public synchronized @Nullable SmartCocoonCredentials load() {
+        String stored = storage.get(key);
+        if (stored == null) {
+            return null;
+        }
+        try {
+            ByteBuffer buffer = ByteBuffer.wrap(Base64.getDecoder().decode(stored));
+            if (buffer.get() != FORMAT_VERSION) {
+                throw new GeneralSecurityException("Unknown format");
+            }
+            byte[] salt = new byte[SALT_LENGTH];
+            byte[] iv = new byte[IV_LENGTH];
+            byte[] encrypted = new byte[buffer.remaining() - SALT_LENGTH - IV_LENGTH];
+            buffer.get(salt).get(iv).get(encrypted);
+
+            Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
+            cipher.init(Cipher.DECRYPT_MODE, getSecretKey(salt), new GCMParameterSpec(TAG_LENGTH_BITS, iv));
+            cipher.updateAAD(username.getBytes(StandardCharsets.UTF_8));
+            String[] fields = new String(cipher.doFinal(encrypted), StandardCharsets.UTF_8).split("\n", -1);
+            if (fields.length != 4) {
+                throw new GeneralSecurityException("Unexpected content");
+            }
+            return new SmartCocoonCredentials(fields[0], fields[1], fields[2], Long.parseLong(fields[3]));
+        } catch (GeneralSecurityException | RuntimeException e) {
+            // Also a changed username or password, which fails authentication of the content
+            logger.debug("Dropping stored credentials which cannot be read: {}", e.getMessage());
+            storage.remove(key);
+            return null;
+        }
+    }
+
+    public synchronized void save(SmartCocoonCredentials credentials) {
+        String content = String.join("\n", credentials.getClient(), credentials.getAccessToken(),
+                credentials.getUid(), Long.toString(credentials.getExpiry()));
+        try {
+            byte[] salt = this.salt;
+            if (salt == null) {
+                salt = new byte[SALT_LENGTH];
+                random.nextBytes(salt);
+            }
+            byte[] iv = new byte[IV_LENGTH];
+            random.nextBytes(iv);
+
+            Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
+            cipher.init(Cipher.ENCRYPT_MODE, getSecretKey(salt), new GCMParameterSpec(TAG_LENGTH_BITS, iv));
+            cipher.updateAAD(username.getBytes(StandardCharsets.UTF_8));
+            byte[] encrypted = cipher.doFinal(content.getBytes(StandardCharsets.UTF_8));
+
+            ByteBuffer buffer = ByteBuffer.allocate(1 + SALT_LENGTH + IV_LENGTH + encrypted.length);
+            buffer.put(FORMAT_VERSION).put(salt).put(iv).put(encrypted);
+            storage.put(key, Base64.getEncoder().encodeToString(buffer.array()));
+        } catch (GeneralSecurityException e) {
+            logger.debug("Failed to store credentials: {}", e.getMessage());
+        }
+    }
+
+    public synchronized void clear() {
+        storage.remove(key);
+    }
+
+    private SecretKey getSecretKey(byte[] salt) throws GeneralSecurityException {
+        SecretKey secretKey = this.secretKey;
+        byte[] currentSalt = this.salt;
+        if (secretKey != null && currentSalt != null && Arrays.equals(currentSalt, salt)) {
+            return secretKey;
+        }
+        PBEKeySpec keySpec = new PBEKeySpec(password.toCharArray(), salt, KEY_ITERATIONS, KEY_LENGTH_BITS);
+        try {
+            byte[] encoded = SecretKeyFactory.getInstance("PBKDF2WithHmacSHA256").generateSecret(keySpec)
+                    .getEncoded();
+            secretKey = new SecretKeySpec(encoded, "AES");
+        } finally {
+            keySpec.clearPassword();
+        }
+        this.salt = salt.clone();
+        this.secretKey = secretKey;
+        return secretKey;
+    }
+}
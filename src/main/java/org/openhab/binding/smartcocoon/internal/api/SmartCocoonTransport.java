@@ -0,0 +1,63 @@
+/**
+ * Copyright (c) 2010-2023 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.binding.smartcocoon.internal.api;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.openhab.binding.smartcocoon.internal.SmartCocoonException;
+
+/**
+ * The {@link SmartCocoonTransport} is a way the fans of an account arrive from the cloud, e.g. by polling them or
+ * by the cloud pushing their changes. Transports only fetch fans, applying them to the things is left to the
+ * {@link Listener}.
+ *
+ * @author Mike Fedotov - Initial contribution
+ */
+@NonNullByDefault
+public interface SmartCocoonTransport {
+
+    /**
+     * Receives the fans from a transport.
+     */
+    interface Listener {
+
+        /**
+         * @return the fans applied last, new fans are compared to them
+         */
+        SmartCocoonFansSnapshot getFansSnapshot();
+
+        /**
+         * Fans were received.
+         *
+         * @param previous the fans the received ones were compared to
+         * @param received the received fans
+         */
+        void onFans(SmartCocoonFansSnapshot previous, SmartCocoonFansSnapshot received);
+
+        /**
+         * Fetching the fans failed, the transport keeps trying.
+         */
+        void onFailure(SmartCocoonException exception);
+    }
+
+    /**
+     * Starts fetching fans, until {@link #stop()} is called.
+     */
+    void start(Listener listener);
+
+    void stop();
+
+    /**
+     * @return whether changes of the fans currently arrive without being polled
+     */
+    boolean isPushing();
+}
@@ -0,0 +1,144 @@
+/**
+ * Copyright (c) 2010-2023 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.binding.smartcocoon.internal.api;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.eclipse.jdt.annotation.Nullable;
+import org.openhab.core.common.NamedThreadFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The {@link SmartCocoonWorkExecutor} runs the work of the binding off the threads openHAB shares between all
+ * bindings, i.e. processing responses of the cloud and initializing things.
+ *
+ * On Java 21 or newer every task gets its own virtual thread, otherwise the tasks run on a small pool of platform
+ * threads owned by the binding. Either way a semaphore caps the number of tasks running at the same time, further
+ * tasks wait for a permit.
+ *
+ * @author Mike Fedotov - Initial contribution
+ */
+@NonNullByDefault
+public class SmartCocoonWorkExecutor implements Executor {
+
+    private static final long POOL_KEEP_ALIVE_SEC = 60;
+
+    private final Logger logger = LoggerFactory.getLogger(SmartCocoonWorkExecutor.class);
+    private final ExecutorService executor;
+    private final boolean virtualThreads;
+    private final Semaphore permits;
+    private final AtomicInteger waiting = new AtomicInteger();
+    private final AtomicInteger running = new AtomicInteger();
+
+    /**
+     * @param name name of the platform threads, if virtual threads are not available
+     * @param maxRunning maximum number of tasks running at the same time
+     */
+    public SmartCocoonWorkExecutor(String name, int maxRunning) {
+        this(name, maxRunning, createVirtualThreadExecutor());
+    }
+
+    /**
+     * @param virtualExecutor executor starting a virtual thread per task, or null to use a pool of platform threads
+     */
+    SmartCocoonWorkExecutor(String name, int maxRunning, @Nullable ExecutorService virtualExecutor) {
+        if (virtualExecutor != null) {
+            this.executor = virtualExecutor;
+            this.virtualThreads = true;
+        } else {
+            // One thread per permit, so a task never blocks a pool thread waiting for a permit
+            ThreadPoolExecutor pool = new ThreadPoolExecutor(maxRunning, maxRunning, POOL_KEEP_ALIVE_SEC,
+                    TimeUnit.SECONDS, new LinkedBlockingQueue<>(), new NamedThreadFactory(name));
+            pool.allowCoreThreadTimeOut(true);
+            this.executor = pool;
+            this.virtualThreads = false;
+        }
+        this.permits = new Semaphore(maxRunning);
+        logger.debug("Running work on {}", virtualThreads ? "virtual threads" : "a pool of " + maxRunning + " threads");
+    }
+
+    /**
+     * Java 21 is not required by openHAB yet, so the virtual thread executor is looked up at runtime.
+     */
+    static @Nullable ExecutorService createVirtualThreadExecutor() {
+        try {
+            Object executor = Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+            return executor instanceof ExecutorService ? (ExecutorService) executor : null;
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    @Override
+    public void execute(Runnable task) {
+        waiting.incrementAndGet();
+        try {
+            executor.execute(() -> run(task));
+        } catch (RejectedExecutionException e) {
+            waiting.decrementAndGet();
+            throw e;
+        }
+    }
+
+    private void run(Runnable task) {
+        try {
+            permits.acquire();
+        } catch (InterruptedException e) {
+            waiting.decrementAndGet();
+            Thread.currentThread().interrupt();
+            return;
+        }
+        waiting.decrementAndGet();
+        running.incrementAndGet();
+        try {
+            task.run();
+        } catch (RuntimeException e) {
+            logger.warn("Unexpected failure of a task: {}", e.getMessage(), e);
+        } finally {
+            running.decrementAndGet();
+            permits.release();
+        }
+    }
+
+    /**
+     * Stops accepting tasks, tasks already submitted still run.
+     */
+    public void dispose() {
+        executor.shutdown();
+    }
+
+    public boolean isVirtualThreads() {
+        return virtualThreads;
+    }
+
+    /**
+     * @return number of tasks submitted and not started yet
+     */
+    public int getWaiting() {
+        return waiting.get();
+    }
+
+    public int getRunning() {
+        return running.get();
+    }
+}
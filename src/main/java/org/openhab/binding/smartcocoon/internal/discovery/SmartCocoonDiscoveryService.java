@@ -0,0 +1,141 @@
+/**
+ * Copyright (c) 2010-2023 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.binding.smartcocoon.internal.discovery;
+
+import static org.openhab.binding.smartcocoon.internal.SmartCocoonBindingConstants.*;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.eclipse.jdt.annotation.Nullable;
+import org.openhab.binding.smartcocoon.internal.api.SmartCocoonFansSnapshot;
+import org.openhab.binding.smartcocoon.internal.handler.SmartCocoonBridgeHandler;
+import org.openhab.core.config.discovery.AbstractDiscoveryService;
+import org.openhab.core.config.discovery.DiscoveryResult;
+import org.openhab.core.config.discovery.DiscoveryResultBuilder;
+import org.openhab.core.thing.ThingUID;
+import org.openhab.core.thing.binding.ThingHandler;
+import org.openhab.core.thing.binding.ThingHandlerService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The {@link SmartCocoonDiscoveryService} discovers the fans of an account from the polls of its bridge, it never
+ * calls the API itself. Only fans which were added to or removed from the account since the last poll are
+ * reported to the inbox.
+ *
+ * @author Mike Fedotov - Initial contribution
+ */
+@NonNullByDefault
+public class SmartCocoonDiscoveryService extends AbstractDiscoveryService implements ThingHandlerService {
+
+    private static final int SEARCH_TIME = 2;
+
+    private final Logger logger = LoggerFactory.getLogger(SmartCocoonDiscoveryService.class);
+
+    private @Nullable SmartCocoonBridgeHandler handler;
+
+    // Fan ids reported to the inbox, guarded by this
+    private final Set<String> discoveredFans = new HashSet<>();
+
+    public SmartCocoonDiscoveryService() {
+        super(Set.of(THING_TYPE_FAN), SEARCH_TIME);
+    }
+
+    @Override
+    public void setThingHandler(ThingHandler handler) {
+        if (handler instanceof SmartCocoonBridgeHandler) {
+            this.handler = (SmartCocoonBridgeHandler) handler;
+        }
+    }
+
+    @Override
+    public @Nullable ThingHandler getThingHandler() {
+        return handler;
+    }
+
+    @Override
+    public void activate() {
+        super.activate(null);
+        SmartCocoonBridgeHandler handler = this.handler;
+        if (handler != null) {
+            handler.setDiscoveryService(this);
+            discover(handler.getFansSnapshot().getFans().keySet());
+        }
+    }
+
+    @Override
+    public void deactivate() {
+        SmartCocoonBridgeHandler handler = this.handler;
+        if (handler != null) {
+            handler.setDiscoveryService(null);
+        }
+        super.deactivate();
+    }
+
+    @Override
+    protected void startScan() {
+        // The bridge polls the account anyway, a scan reports the fans of its last poll again
+        SmartCocoonBridgeHandler handler = this.handler;
+        if (handler != null) {
+            synchronized (this) {
+                discoveredFans.clear();
+            }
+            discover(handler.getFansSnapshot().getFans().keySet());
+        }
+    }
+
+    /**
+     * Reports the fans added to and removed from the account by a poll.
+     */
+    public void fansChanged(SmartCocoonFansSnapshot snapshot) {
+        discover(snapshot.getChangedFans());
+        for (String fanId : snapshot.getRemovedFans()) {
+            removed(fanId);
+        }
+    }
+
+    private synchronized void discover(Collection<String> fanIds) {
+        SmartCocoonBridgeHandler handler = this.handler;
+        if (handler == null) {
+            return;
+        }
+        ThingUID bridgeUID = handler.getThing().getUID();
+        for (String fanId : fanIds) {
+            if (!discoveredFans.add(fanId)) {
+                continue;
+            }
+            logger.debug("Discovered fan {}", fanId);
+            DiscoveryResult discoveryResult = DiscoveryResultBuilder.create(getThingUID(bridgeUID, fanId))
+                    .withThingType(THING_TYPE_FAN).withBridge(bridgeUID).withLabel("SmartCocoon Fan " + fanId)
+                    .withProperty(CONFIG_PROPERTY_DEVICE_ID, fanId)
+                    .withRepresentationProperty(CONFIG_PROPERTY_DEVICE_ID).build();
+            thingDiscovered(discoveryResult);
+        }
+    }
+
+    private synchronized void removed(String fanId) {
+        SmartCocoonBridgeHandler handler = this.handler;
+        if (handler != null && discoveredFans.remove(fanId)) {
+            logger.debug("Fan {} was removed from the account", fanId);
+            thingRemoved(getThingUID(handler.getThing().getUID(), fanId));
+        }
+    }
+
+    private static ThingUID getThingUID(ThingUID bridgeUID, String fanId) {
+        // Thing ids are limited to letters, digits, underscores and hyphens
+        return new ThingUID(THING_TYPE_FAN, bridgeUID, fanId.replaceAll("[^\\w-]", "_"));
+    }
+}
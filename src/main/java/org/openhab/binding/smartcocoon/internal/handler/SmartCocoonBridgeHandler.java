@@ -14,20 +14,43 @@ package org.openhab.binding.smartcocoon.internal.handler;
 
 import static org.openhab.binding.smartcocoon.internal.SmartCocoonBindingConstants.*;
 
+import java.time.Duration;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
 
 import org.eclipse.jdt.annotation.NonNullByDefault;
 import org.eclipse.jdt.annotation.Nullable;
-import org.eclipse.jetty.client.HttpClient;
 import org.openhab.binding.smartcocoon.internal.SmartCocoonBridgeConfiguration;
+import org.openhab.binding.smartcocoon.internal.SmartCocoonException;
+import org.openhab.binding.smartcocoon.internal.action.SmartCocoonBridgeActions;
 import org.openhab.binding.smartcocoon.internal.api.SmartCocoonAPI;
-// import org.openhab.binding.smartcocoon.internal.discovery.SmartCocoonDiscoveryService;
+import org.openhab.binding.smartcocoon.internal.api.SmartCocoonFanTarget;
+import org.openhab.binding.smartcocoon.internal.api.SmartCocoonFansSnapshot;
+import org.openhab.binding.smartcocoon.internal.api.SmartCocoonLongPollTransport;
+import org.openhab.binding.smartcocoon.internal.api.SmartCocoonMetrics;
+import org.openhab.binding.smartcocoon.internal.api.SmartCocoonRequestLimiter;
+import org.openhab.binding.smartcocoon.internal.api.SmartCocoonSnapshotStore;
+import org.openhab.binding.smartcocoon.internal.api.SmartCocoonTokenStore;
+import org.openhab.binding.smartcocoon.internal.api.SmartCocoonTransport;
+import org.openhab.binding.smartcocoon.internal.api.SmartCocoonWorkExecutor;
+import org.openhab.binding.smartcocoon.internal.discovery.SmartCocoonDiscoveryService;
 import org.openhab.binding.smartcocoon.internal.dto.FanInfoResultDTO; // TODO - SmartCocoonFansInfo
+import org.openhab.core.library.types.DecimalType;
+import org.openhab.core.library.types.QuantityType;
+import org.openhab.core.library.unit.MetricPrefix;
+import org.openhab.core.library.unit.Units;
+import org.openhab.core.storage.Storage;
+import org.openhab.core.storage.StorageService;
 import org.openhab.core.thing.Bridge;
 import org.openhab.core.thing.ChannelUID;
 import org.openhab.core.thing.ThingStatus;
@@ -37,6 +60,8 @@ import org.openhab.core.thing.binding.BaseBridgeHandler;
 import org.openhab.core.thing.binding.ThingHandlerService;
 import org.openhab.core.types.Command;
 import org.openhab.core.types.RefreshType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import com.google.gson.Gson;
 
@@ -49,21 +74,61 @@ import com.google.gson.Gson;
 @NonNullByDefault
 public class SmartCocoonBridgeHandler extends BaseBridgeHandler {
 
+    private final Logger logger = LoggerFactory.getLogger(SmartCocoonBridgeHandler.class);
 
     // public static final Set<ThingTypeUID> SUPPORTED_THING_TYPES = Set.of(THING_TYPE_BRIDGE);
 
     private int refreshInterval = 300;
 
     private final Gson gson;
-    private final HttpClient httpClient;
-    private final Map<String, FanInfoResultDTO> smartCocoonThings = new ConcurrentHashMap<>();
+    private final SmartCocoonPollCoordinator pollCoordinator;
+    private final Storage<String> tokenStorage;
+    private final Storage<String> snapshotStorage;
+    private @Nullable SmartCocoonSnapshotStore snapshotStore;
+    // Saving writes all fans, changes in quick succession are saved at most once per interval, guarded by
+    // snapshotSaveLock
+    private static final long SNAPSHOT_SAVE_INTERVAL_SEC = 10;
+    private final Object snapshotSaveLock = new Object();
+    private long nextSnapshotSaveNanos;
+    private @Nullable ScheduledFuture<?> snapshotSaveJob;
+    private long initializedNanos;
+    private boolean firstPollDone;
+    // Fans of the last poll, replaced as a whole so readers never see a partially applied poll
+    private final AtomicReference<SmartCocoonFansSnapshot> fansSnapshot = new AtomicReference<>(
+            SmartCocoonFansSnapshot.EMPTY);
+    // Initialized fan handlers by device id, so a poll only dispatches to the fans that changed
+    private final Map<String, SmartCocoonHandler> fanHandlers = new ConcurrentHashMap<>();
+    // Initialized zone handlers by the device ids of their members, so a poll only updates the zones that changed
+    private final Map<String, Set<SmartCocoonZoneHandler>> zoneHandlers = new ConcurrentHashMap<>();
+    private volatile @Nullable SmartCocoonDiscoveryService discoveryService;
+    // Runs the work of the account and its fans if configured to use virtual threads
+    private volatile @Nullable SmartCocoonWorkExecutor workExecutor;
+
+    // Commands of bulk operations running in parallel
+    private static final int MAX_CONCURRENT_COMMANDS = 4;
+    private final SmartCocoonRequestLimiter commandLimiter = new SmartCocoonRequestLimiter(MAX_CONCURRENT_COMMANDS);
 
     @Nullable SmartCocoonAPI api;
-    private @Nullable ScheduledFuture<?> refreshJob;
+    // Always polls, at least to check the pushed changes are consistent
+    private @Nullable SmartCocoonPollTransport pollTransport;
+    private @Nullable SmartCocoonTransport pushTransport;
+
+    // Fan refreshes waiting to be sent, by device id, guarded by fanRefreshes
+    private static final long FAN_REFRESH_WINDOW_MS = 500;
+    private static final int FAN_REFRESH_PROMOTION_THRESHOLD = 3;
+    private final Map<String, SmartCocoonHandler> fanRefreshes = new HashMap<>();
+    private @Nullable ScheduledFuture<?> fanRefreshJob;
 
-    public SmartCocoonBridgeHandler(Bridge bridge, HttpClient httpClient, Gson gson) {
+    // Runtimes and duty cycles change with time, not with polls, a minute is their resolution in the UI
+    private static final long HISTORY_PUBLISH_INTERVAL_SEC = 60;
+    private @Nullable ScheduledFuture<?> historyJob;
+
+    public SmartCocoonBridgeHandler(Bridge bridge, SmartCocoonPollCoordinator pollCoordinator,
+            StorageService storageService, Gson gson) {
         super(bridge);
-        this.httpClient = httpClient;
+        this.pollCoordinator = pollCoordinator;
+        this.tokenStorage = storageService.getStorage(BINDING_ID + ".credentials");
+        this.snapshotStorage = storageService.getStorage(BINDING_ID + ".fans");
         this.gson = gson;
     }
 
@@ -76,82 +141,562 @@ public class SmartCocoonBridgeHandler extends BaseBridgeHandler {
         if (config.username == null || config.password == null) {
             updateStatus(ThingStatus.OFFLINE, ThingStatusDetail.CONFIGURATION_ERROR,
                     "Configuration of username, password is mandatory");
-        } else if (this.refreshInterval < 0) {
+        } else if (this.refreshInterval <= 0) {
+            updateStatus(ThingStatus.OFFLINE, ThingStatusDetail.CONFIGURATION_ERROR,
+                    "Refresh time must be positive!");
+        } else if (config.minRefreshInterval <= 0 || config.maxRefreshInterval <= 0) {
             updateStatus(ThingStatus.OFFLINE, ThingStatusDetail.CONFIGURATION_ERROR,
-                    "Refresh time cannot be negative!");
+                    "Minimum and maximum refresh time must be positive!");
+        } else if (config.minRefreshInterval > config.maxRefreshInterval) {
+            updateStatus(ThingStatus.OFFLINE, ThingStatusDetail.CONFIGURATION_ERROR,
+                    "Minimum refresh time cannot be longer than the maximum refresh time!");
         } else {
             try {
-                this.api = new SmartCocoonAPI(config, httpClient, gson);
-                scheduler.execute(() -> {
+                // The bounds are widened to include the refresh interval itself
+                SmartCocoonPollingInterval pollingInterval = new SmartCocoonPollingInterval(
+                        Duration.ofSeconds(Math.min(config.minRefreshInterval, this.refreshInterval)),
+                        Duration.ofSeconds(this.refreshInterval),
+                        Duration.ofSeconds(Math.max(config.maxRefreshInterval, this.refreshInterval)));
+                this.initializedNanos = System.nanoTime();
+                this.firstPollDone = false;
+                // Start from the fans of the last run, the things show them until the first poll
+                SmartCocoonSnapshotStore snapshotStore = new SmartCocoonSnapshotStore(snapshotStorage,
+                        getThing().getUID().getAsString(), gson);
+                SmartCocoonFansSnapshot restored = snapshotStore.load();
+                this.fansSnapshot.set(restored != null ? restored : SmartCocoonFansSnapshot.EMPTY);
+                this.snapshotStore = snapshotStore;
+                synchronized (this.snapshotSaveLock) {
+                    this.nextSnapshotSaveNanos = System.nanoTime();
+                }
+                SmartCocoonWorkExecutor workExecutor = config.virtualThreads ? pollCoordinator.getWorkExecutor()
+                        : null;
+                this.workExecutor = workExecutor;
+                // Without an own executor responses are processed on the HTTP client's thread, as received
+                SmartCocoonAPI api = new SmartCocoonAPI(config, pollCoordinator.getHttpClient(),
+                        pollCoordinator.getLongPollHttpClient(), gson, scheduler,
+                        pollCoordinator.getLoginLimiter(), new SmartCocoonTokenStore(tokenStorage,
+                                getThing().getUID().getAsString(), config.username, config.password),
+                        workExecutor != null ? workExecutor : Runnable::run);
+                this.api = api;
+                // Spread the first polls of all accounts instead of starting them all at once
+                SmartCocoonPollTransport pollTransport = new SmartCocoonPollTransport(api, pollCoordinator, scheduler,
+                        pollingInterval, pollCoordinator.getInitialDelay(getThing().getUID(),
+                                Duration.ofSeconds(this.refreshInterval)),
+                        this::isPushing);
+                // Each long polling account holds a connection of its own
+                boolean longPolling = config.longPolling && pollCoordinator.acquireLongPolling();
+                if (config.longPolling && !longPolling) {
+                    logger.warn("Too many accounts are long polling, {} only polls at the refresh interval",
+                            getThing().getUID());
+                }
+                SmartCocoonTransport pushTransport = longPolling ? new SmartCocoonLongPollTransport(api, scheduler)
+                        : null;
+                this.pollTransport = pollTransport;
+                this.pushTransport = pushTransport;
+                getExecutor().execute(() -> {
                     this.updateStatus(ThingStatus.UNKNOWN);
-                    this.startAutomaticRefresh();
+                    pollTransport.start(new TransportListener(true));
+                    if (pushTransport != null) {
+                        pushTransport.start(new TransportListener(false));
+                    }
                 });
+                this.historyJob = scheduler.scheduleWithFixedDelay(
+                        () -> getExecutor().execute(this::publishHistory), HISTORY_PUBLISH_INTERVAL_SEC,
+                        HISTORY_PUBLISH_INTERVAL_SEC, TimeUnit.SECONDS);
             } catch (RuntimeException e) {
                 this.updateStatus(ThingStatus.OFFLINE, ThingStatusDetail.COMMUNICATION_ERROR, e.getMessage());
             }
         }
     }
 
-    public Map<String, FanInfoResultDTO> getSmartCocoonThings() {
-        return this.smartCocoonThings;
+    /**
+     * @return executor for the work of the account and its fans, timers still run on the scheduler
+     */
+    public Executor getExecutor() {
+        SmartCocoonWorkExecutor workExecutor = this.workExecutor;
+        return workExecutor != null ? workExecutor : scheduler;
+    }
+
+    public SmartCocoonFansSnapshot getFansSnapshot() {
+        return this.fansSnapshot.get();
+    }
+
+    /**
+     * Registers the handler of a fan for the updates of its device id. Handlers register themselves when they are
+     * initialized, so they are found under the device id of their current configuration.
+     */
+    void registerFanHandler(SmartCocoonHandler handler) {
+        this.fanHandlers.put(handler.getDeviceId(), handler);
+    }
+
+    void unregisterFanHandler(String deviceId, SmartCocoonHandler handler) {
+        this.fanHandlers.remove(deviceId, handler);
+    }
+
+    /**
+     * Registers the handler of a zone for the updates of its member fans, like {@link #registerFanHandler}.
+     */
+    void registerZoneHandler(SmartCocoonZoneHandler handler) {
+        for (String deviceId : handler.getDeviceIds()) {
+            this.zoneHandlers.computeIfAbsent(deviceId, id -> ConcurrentHashMap.newKeySet()).add(handler);
+        }
+    }
+
+    void unregisterZoneHandler(Set<String> deviceIds, SmartCocoonZoneHandler handler) {
+        for (String deviceId : deviceIds) {
+            this.zoneHandlers.computeIfPresent(deviceId, (id, zones) -> {
+                zones.remove(handler);
+                return zones.isEmpty() ? null : zones;
+            });
+        }
     }
 
-    /*
     @Override
-    // TODO - create SmartCocoonDiscoveryService
     public Collection<Class<? extends ThingHandlerService>> getServices() {
-        return Set.of(SmartCocoonDiscoveryService.class);
+        return Set.of(SmartCocoonDiscoveryService.class, SmartCocoonBridgeActions.class);
+    }
+
+    public void setDiscoveryService(@Nullable SmartCocoonDiscoveryService discoveryService) {
+        this.discoveryService = discoveryService;
     }
-    */
 
     @Override
     public void dispose() {
-        this.stopAutomaticRefresh();
+        ScheduledFuture<?> historyJob = this.historyJob;
+        if (historyJob != null) {
+            historyJob.cancel(false);
+            this.historyJob = null;
+        }
+        SmartCocoonTransport pushTransport = this.pushTransport;
+        if (pushTransport != null) {
+            pushTransport.stop();
+            this.pushTransport = null;
+            pollCoordinator.releaseLongPolling();
+        }
+        SmartCocoonPollTransport pollTransport = this.pollTransport;
+        if (pollTransport != null) {
+            pollTransport.stop();
+            this.pollTransport = null;
+        }
+        synchronized (this.fanRefreshes) {
+            ScheduledFuture<?> fanRefreshJob = this.fanRefreshJob;
+            if (fanRefreshJob != null) {
+                fanRefreshJob.cancel(false);
+                this.fanRefreshJob = null;
+            }
+            this.fanRefreshes.clear();
+        }
+        SmartCocoonAPI api = this.api;
+        if (api != null) {
+            api.dispose();
+            this.api = null;
+        }
+        synchronized (this.snapshotSaveLock) {
+            ScheduledFuture<?> snapshotSaveJob = this.snapshotSaveJob;
+            if (snapshotSaveJob != null) {
+                snapshotSaveJob.cancel(false);
+                this.snapshotSaveJob = null;
+            }
+        }
+        SmartCocoonSnapshotStore snapshotStore = this.snapshotStore;
+        if (snapshotStore != null) {
+            snapshotStore.save(this.fansSnapshot.get());
+        }
+    }
+
+    @Override
+    public void handleRemoval() {
+        // Do not keep the credentials and fans of a removed account
+        this.tokenStorage.remove(getThing().getUID().getAsString());
+        SmartCocoonSnapshotStore snapshotStore = this.snapshotStore;
+        this.snapshotStore = null;
+        if (snapshotStore != null) {
+            snapshotStore.clear();
+        } else {
+            this.snapshotStorage.remove(getThing().getUID().getAsString());
+        }
+        super.handleRemoval();
     }
 
     public @Nullable SmartCocoonAPI getSmartCocoonAPI() {
         return this.api;
     }
 
-    // TODO - make explicit Runnable
-    private boolean refreshAndUpdateStatus() {
+    private boolean isPushing() {
+        SmartCocoonTransport pushTransport = this.pushTransport;
+        return pushTransport != null && pushTransport.isPushing();
+    }
+
+    /**
+     * Applies the fans received by a transport and dispatches their changes.
+     */
+    private void applyFans(SmartCocoonFansSnapshot previous, SmartCocoonFansSnapshot received) {
+        SmartCocoonAPI api = this.api;
+        if (api == null) {
+            return;
+        }
+        SmartCocoonFansSnapshot current;
+        SmartCocoonFansSnapshot snapshot;
+        do {
+            current = this.fansSnapshot.get();
+            snapshot = received.rebase(previous, current);
+        } while (!this.fansSnapshot.compareAndSet(current, snapshot));
+        if (snapshot != current) {
+            if (snapshot.hasChanges()) {
+                saveSnapshot();
+            }
+            long dispatchStart = System.nanoTime();
+            updateChildren(snapshot);
+            api.getMetrics().getPollDispatch().record(System.nanoTime() - dispatchStart);
+            SmartCocoonDiscoveryService discoveryService = this.discoveryService;
+            if (discoveryService != null && snapshot.hasChanges()) {
+                discoveryService.fansChanged(snapshot);
+            }
+        }
+        updateMetricChannels(api);
+        if (!this.firstPollDone) {
+            this.firstPollDone = true;
+            logger.debug("Online {} ms after initialization",
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - this.initializedNanos));
+        }
+        this.updateStatus(ThingStatus.ONLINE);
+    }
+
+    private void pollFailed(SmartCocoonException exception) {
+        logger.warn("Failed to refresh! {}", exception.getMessage());
+        SmartCocoonAPI api = this.api;
         if (api != null) {
-            if (api.refresh(this.smartCocoonThings)) {
-                this.getThing().getThings().stream().forEach(thing -> {
-                    SmartCocoonHandler handler = (SmartCocoonHandler) thing.getHandler();
-                    if (handler != null) {
-                        handler.update();
-                    }
-                });
-                this.updateStatus(ThingStatus.ONLINE);
-                return true;
-            } else {
-                this.updateStatus(ThingStatus.OFFLINE, ThingStatusDetail.COMMUNICATION_ERROR);
+            updateMetricChannels(api);
+        }
+        this.updateStatus(ThingStatus.OFFLINE, ThingStatusDetail.COMMUNICATION_ERROR, exception.getMessage());
+    }
+
+    private void pushFailed(SmartCocoonException exception) {
+        // The polls keep the fans up to date, and tell whether the account is online
+        logger.debug("Changes of the fans are not pushed: {}", exception.getMessage());
+        SmartCocoonPollTransport pollTransport = this.pollTransport;
+        if (pollTransport != null) {
+            pollTransport.pushStopped();
+            updatePollingIntervalChannel(pollTransport);
+        }
+    }
+
+    private void updatePollingIntervalChannel(SmartCocoonPollTransport pollTransport) {
+        updateState(CHANNEL_POLLING_INTERVAL,
+                new QuantityType<>(pollTransport.getScheduledDelay().toMillis() / 1000.0, Units.SECOND));
+    }
+
+    /**
+     * Publishes the runtime and duty cycle channels of all fans, which also change while the fans do not.
+     */
+    private void publishHistory() {
+        for (SmartCocoonHandler handler : this.fanHandlers.values()) {
+            handler.publishHistory();
+        }
+    }
+
+    private void updateMetricChannels(SmartCocoonAPI api) {
+        SmartCocoonMetrics metrics = api.getMetrics();
+        updateTimeChannel(CHANNEL_POLL_FETCH_TIME, metrics.getPollFetch());
+        updateTimeChannel(CHANNEL_POLL_PARSE_TIME, metrics.getPollParse());
+        updateTimeChannel(CHANNEL_POLL_DISPATCH_TIME, metrics.getPollDispatch());
+        updateCountChannel(CHANNEL_API_REQUESTS, metrics.getRequests());
+        updateCountChannel(CHANNEL_API_ERRORS, metrics.getErrorStatuses());
+        updateCountChannel(CHANNEL_API_RETRIES, metrics.getRetries());
+        updateCountChannel(CHANNEL_LOGINS, metrics.getLogins());
+        updateCountChannel(CHANNEL_TOKEN_EXPIRIES, metrics.getTokenExpiries());
+        updateCountChannel(CHANNEL_POLLS, metrics.getPolls());
+        updateCountChannel(CHANNEL_UNCHANGED_POLLS, metrics.getUnchangedPolls());
+        updateCountChannel(CHANNEL_QUEUED_REQUESTS, api.getRequestScheduler().getWaiting());
+        updateTimeChannel(CHANNEL_QUEUE_WAIT_TIME, metrics.getQueueWait());
+        for (SmartCocoonMetrics.Endpoint endpoint : SmartCocoonMetrics.Endpoint.values()) {
+            SmartCocoonMetrics.Timer timer = metrics.getRequestTimer(endpoint);
+            updatePercentileChannel(endpoint.getTag() + CHANNEL_SUFFIX_LATENCY_P50, timer, 0.5);
+            updatePercentileChannel(endpoint.getTag() + CHANNEL_SUFFIX_LATENCY_P95, timer, 0.95);
+        }
+        SmartCocoonWorkExecutor workExecutor = this.workExecutor;
+        if (workExecutor != null) {
+            updateCountChannel(CHANNEL_QUEUED_TASKS, workExecutor.getWaiting());
+            updateCountChannel(CHANNEL_RUNNING_TASKS, workExecutor.getRunning());
+        }
+        if (isLinked(CHANNEL_BYTES_RECEIVED)) {
+            updateState(CHANNEL_BYTES_RECEIVED, new QuantityType<>(metrics.getBytesReceived(), Units.BYTE));
+        }
+    }
+
+    private void updateTimeChannel(String channelId, SmartCocoonMetrics.Timer timer) {
+        if (isLinked(channelId)) {
+            updateState(channelId,
+                    new QuantityType<>(timer.last(TimeUnit.MICROSECONDS) / 1000.0, MetricPrefix.MILLI(Units.SECOND)));
+        }
+    }
+
+    private void updatePercentileChannel(String channelId, SmartCocoonMetrics.Timer timer, double percentile) {
+        if (isLinked(channelId)) {
+            updateState(channelId,
+                    new QuantityType<>(timer.percentileMillis(percentile), MetricPrefix.MILLI(Units.SECOND)));
+        }
+    }
+
+    private void updateCountChannel(String channelId, long count) {
+        if (isLinked(channelId)) {
+            updateState(channelId, new DecimalType(count));
+        }
+    }
+
+    /**
+     * Dispatches the changed and removed fans to their handlers and zones. Handlers of unchanged fans are only updated while
+     * their thing is not online, e.g. because the device id is not known yet or a command failed, or shows the
+     * restored state of the last run.
+     */
+    private void updateChildren(SmartCocoonFansSnapshot snapshot) {
+        Set<String> changedFans = snapshot.getChangedFans();
+        Set<String> removedFans = snapshot.getRemovedFans();
+        for (String deviceId : changedFans) {
+            SmartCocoonHandler handler = this.fanHandlers.get(deviceId);
+            if (handler != null) {
+                handler.update(snapshot);
+            }
+            updateZones(deviceId, snapshot);
+        }
+        for (String deviceId : removedFans) {
+            SmartCocoonHandler handler = this.fanHandlers.get(deviceId);
+            if (handler != null) {
+                handler.update(snapshot);
+            }
+            updateZones(deviceId, snapshot);
+        }
+        for (SmartCocoonHandler handler : this.fanHandlers.values()) {
+            String deviceId = handler.getDeviceId();
+            if ((handler.getThing().getStatus() != ThingStatus.ONLINE || handler.isStale())
+                    && !changedFans.contains(deviceId) && !removedFans.contains(deviceId)) {
+                handler.update(snapshot);
+            }
+        }
+        if (logger.isDebugEnabled()) {
+            long published = 0;
+            long suppressed = 0;
+            for (SmartCocoonHandler handler : this.fanHandlers.values()) {
+                published += handler.getPublishedUpdates();
+                suppressed += handler.getSuppressedUpdates();
+            }
+            logger.debug("Dispatched generation {} with {} changed and {} removed fans, channel updates since start - "
+                    + "published: {}, suppressed as unchanged: {}", snapshot.getGeneration(), changedFans.size(),
+                    removedFans.size(), published, suppressed);
+        }
+    }
+
+    private void updateZones(String deviceId, SmartCocoonFansSnapshot snapshot) {
+        Set<SmartCocoonZoneHandler> zones = this.zoneHandlers.get(deviceId);
+        if (zones != null) {
+            FanInfoResultDTO fan = snapshot.get(deviceId);
+            for (SmartCocoonZoneHandler zone : zones) {
+                zone.fanChanged(deviceId, fan);
+            }
+        }
+    }
+
+    /**
+     * Saves the fans off the thread applying them. The first change is saved at once, later ones at most once per
+     * interval, each save writing the fans current by then.
+     */
+    private void saveSnapshot() {
+        synchronized (this.snapshotSaveLock) {
+            if (this.snapshotStore == null || this.snapshotSaveJob != null) {
+                // A pending save writes these fans as well
+                return;
+            }
+            long delayNanos = Math.max(0, this.nextSnapshotSaveNanos - System.nanoTime());
+            this.snapshotSaveJob = scheduler.schedule(() -> getExecutor().execute(this::writeSnapshot), delayNanos,
+                    TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private void writeSnapshot() {
+        synchronized (this.snapshotSaveLock) {
+            this.snapshotSaveJob = null;
+            this.nextSnapshotSaveNanos = System.nanoTime() + TimeUnit.SECONDS.toNanos(SNAPSHOT_SAVE_INTERVAL_SEC);
+        }
+        SmartCocoonSnapshotStore snapshotStore = this.snapshotStore;
+        if (snapshotStore != null) {
+            snapshotStore.save(this.fansSnapshot.get());
+        }
+    }
+
+    /**
+     * Refreshes a single fan. Requests arriving within a short window are batched, duplicates dropped, and many
+     * of them promoted to a single refresh of the whole account.
+     */
+    public void refreshFan(String deviceId, SmartCocoonHandler handler) {
+        synchronized (this.fanRefreshes) {
+            this.fanRefreshes.put(deviceId, handler);
+            if (this.fanRefreshJob == null) {
+                this.fanRefreshJob = scheduler.schedule(this::refreshPendingFans, FAN_REFRESH_WINDOW_MS,
+                        TimeUnit.MILLISECONDS);
             }
         }
-        return false;
     }
 
-    private void startAutomaticRefresh() {
-        ScheduledFuture<?> refreshJob = this.refreshJob;
-        if (refreshJob == null || refreshJob.isCancelled()) {
-            refreshJob = scheduler.scheduleWithFixedDelay(this::refreshAndUpdateStatus, 0, this.refreshInterval,
-                    TimeUnit.SECONDS);
+    private void refreshPendingFans() {
+        Map<String, SmartCocoonHandler> fanRefreshes;
+        synchronized (this.fanRefreshes) {
+            fanRefreshes = new HashMap<>(this.fanRefreshes);
+            this.fanRefreshes.clear();
+            this.fanRefreshJob = null;
+        }
+        SmartCocoonAPI api = this.api;
+        if (api == null || fanRefreshes.isEmpty()) {
+            return;
         }
+        SmartCocoonPollTransport pollTransport = this.pollTransport;
+        if (pollTransport == null) {
+            return;
+        }
+        if (pollTransport.isRefreshing()) {
+            logger.debug("Refresh of all fans in progress, dropping {} fan refreshes", fanRefreshes.size());
+            return;
+        }
+        // Fans not polled yet have no API id, and beyond a few fans one request for all of them is cheaper
+        if (fanRefreshes.size() >= FAN_REFRESH_PROMOTION_THRESHOLD
+                || !fanRefreshes.keySet().stream().allMatch(this::hasApiId)) {
+            logger.debug("Promoting {} fan refreshes to a refresh of all fans", fanRefreshes.size());
+            pollTransport.refresh();
+            return;
+        }
+        SmartCocoonFansSnapshot snapshot = this.fansSnapshot.get();
+        fanRefreshes.forEach((deviceId, handler) -> {
+            FanInfoResultDTO dto = snapshot.get(deviceId);
+            String fanId = dto != null ? dto.id : null;
+            if (fanId == null) {
+                return;
+            }
+            api.getFanAsync(fanId).whenComplete((actual, exception) -> {
+                if (exception != null) {
+                    logger.debug("Failed to refresh fan {}: {}", deviceId,
+                            SmartCocoonException.of(exception).getMessage());
+                    return;
+                }
+                SmartCocoonFansSnapshot current;
+                SmartCocoonFansSnapshot updated;
+                do {
+                    current = this.fansSnapshot.get();
+                    updated = current.withFan(actual);
+                } while (updated != current && !this.fansSnapshot.compareAndSet(current, updated));
+                handler.update(updated);
+                // A fan found as it was leaves the stored fans and the zones as they are
+                if (updated != current) {
+                    saveSnapshot();
+                    updateZones(deviceId, updated);
+                }
+            });
+        });
+    }
+
+    private boolean hasApiId(String deviceId) {
+        FanInfoResultDTO dto = this.fansSnapshot.get().get(deviceId);
+        return dto != null && dto.id != null;
+    }
+
+    /**
+     * Commands many fans at once. Fans already in their target state are skipped, the others are commanded in
+     * parallel, but never more than {@link #MAX_CONCURRENT_COMMANDS} at a time.
+     *
+     * @param targets target states by device id
+     * @return future completing with the result by device id once all fans were commanded
+     */
+    public CompletableFuture<Map<String, SmartCocoonFanTarget.Result>> setFans(
+            Map<String, SmartCocoonFanTarget> targets) {
+        SmartCocoonAPI api = this.api;
+        if (api == null) {
+            return CompletableFuture.failedFuture(new SmartCocoonException("Bridge is not initialized"));
+        }
+        SmartCocoonFansSnapshot snapshot = this.fansSnapshot.get();
+        Map<String, SmartCocoonFanTarget.Result> results = new ConcurrentHashMap<>();
+        List<CompletableFuture<?>> commands = new ArrayList<>();
+        targets.forEach((deviceId, target) -> {
+            FanInfoResultDTO dto = snapshot.get(deviceId);
+            String fanId = dto != null ? dto.id : null;
+            if (dto == null || fanId == null) {
+                results.put(deviceId, SmartCocoonFanTarget.Result.UNKNOWN_FAN);
+            } else if (target.isReachedBy(dto)) {
+                results.put(deviceId, SmartCocoonFanTarget.Result.UNCHANGED);
+            } else {
+                commands.add(this.commandLimiter
+                        .submit(() -> api.setFanStateAsync(fanId, target.getMode(), target.getSpeed()))
+                        .handle((result, exception) -> {
+                            if (exception != null) {
+                                logger.debug("Failed to set fan {} to {}: {}", deviceId, target,
+                                        SmartCocoonException.of(exception).getMessage());
+                                return results.put(deviceId, SmartCocoonFanTarget.Result.FAILED);
+                            }
+                            return results.put(deviceId, SmartCocoonFanTarget.Result.SET);
+                        }));
+            }
+        });
+        return CompletableFuture.allOf(commands.toArray(CompletableFuture[]::new)).thenApply(done -> {
+            if (results.containsValue(SmartCocoonFanTarget.Result.SET)) {
+                commandSent();
+            }
+            return Map.copyOf(results);
+        });
     }
 
-    private void stopAutomaticRefresh() {
-        ScheduledFuture<?> refreshJob = this.refreshJob;
-        if (refreshJob != null) {
-            refreshJob.cancel(true);
-            this.refreshJob = null;
+    /**
+     * Called by the fan handlers after a command was accepted, polls quickly until the new state is seen.
+     */
+    public void commandSent() {
+        SmartCocoonPollTransport pollTransport = this.pollTransport;
+        if (pollTransport != null) {
+            pollTransport.commandSent();
+            updatePollingIntervalChannel(pollTransport);
         }
     }
 
     @Override
     public void handleCommand(ChannelUID channelUID, Command command) {
-        if (command instanceof RefreshType) {
-            scheduler.schedule(this::refreshAndUpdateStatus, 0, TimeUnit.SECONDS); // TODO - wait 1 sec?
+        SmartCocoonPollTransport pollTransport = this.pollTransport;
+        if (command instanceof RefreshType && pollTransport != null) {
+            pollTransport.refresh();
+        }
+    }
+
+    /**
+     * Receives the fans of a transport. Only polls tell whether the account is online, the pushed changes may just
+     * be unavailable.
+     */
+    private class TransportListener implements SmartCocoonTransport.Listener {
+
+        private final boolean polling;
+
+        TransportListener(boolean polling) {
+            this.polling = polling;
+        }
+
+        @Override
+        public SmartCocoonFansSnapshot getFansSnapshot() {
+            return fansSnapshot.get();
+        }
+
+        @Override
+        public void onFans(SmartCocoonFansSnapshot previous, SmartCocoonFansSnapshot received) {
+            applyFans(previous, received);
+            SmartCocoonPollTransport pollTransport = SmartCocoonBridgeHandler.this.pollTransport;
+            if (pollTransport != null) {
+                updatePollingIntervalChannel(pollTransport);
+            }
+        }
+
+        @Override
+        public void onFailure(SmartCocoonException exception) {
+            if (polling) {
+                pollFailed(exception);
+                SmartCocoonPollTransport pollTransport = SmartCocoonBridgeHandler.this.pollTransport;
+                if (pollTransport != null) {
+                    updatePollingIntervalChannel(pollTransport);
+                }
+            } else {
+                pushFailed(exception);
+            }
         }
     }
 }
@@ -0,0 +1,195 @@
+/**
+ * Copyright (c) 2010-2023 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.binding.smartcocoon.internal.handler;
+
+import java.time.Instant;
+import java.time.ZoneId;
+import java.util.function.Supplier;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+
+/**
+ * The {@link SmartCocoonFanHistory} keeps the recent history of a fan, to tell how long and how fast it ran.
+ *
+ * Only changes of the fan's state are recorded, into a ring buffer of primitive arrays with room for
+ * {@link #CAPACITY} changes. Each entry holds the running time and the speed integral accumulated up to it, so the
+ * runtime today, the duty cycle and the average speed over the window are differences of two entries. Recording a
+ * state and reading the values take constant time and do not allocate, the pointer to the first entry of the
+ * window only moves forward.
+ *
+ * An instance takes about 1.2 KB of heap with compressed references: 17 bytes per entry plus the headers of the four
+ * arrays and the instance, i.e. about 12 MB for 10,000 fans. If the window holds more than {@link #CAPACITY} changes, the duty cycle and
+ * the average speed cover the last {@link #CAPACITY} changes only.
+ *
+ * @author Mike Fedotov - Initial contribution
+ */
+@NonNullByDefault
+public class SmartCocoonFanHistory {
+
+    public static final int CAPACITY = 64;
+    private static final byte STOPPED = -1;
+
+    private final long windowSeconds;
+    private final Supplier<ZoneId> zone;
+    // Times are stored as seconds since the history was created
+    private final long baseSecond;
+
+    // Per entry: time of the change, running seconds and speed seconds before it, speed from then on or STOPPED
+    private final int[] times = new int[CAPACITY];
+    private final int[] runningBefore = new int[CAPACITY];
+    private final long[] speedBefore = new long[CAPACITY];
+    private final byte[] speeds = new byte[CAPACITY];
+    private int head = CAPACITY - 1;
+    private int size;
+    // Entry the window starts in
+    private int windowEntry;
+
+    // Start of the next day, and running seconds before the start of today
+    private int nextDayStart = Integer.MIN_VALUE;
+    private int runningBeforeToday;
+
+    /**
+     * @param windowSeconds length of the window of the duty cycle and average speed
+     * @param zone time zone days start in
+     */
+    public SmartCocoonFanHistory(long windowSeconds, Supplier<ZoneId> zone) {
+        this.windowSeconds = windowSeconds;
+        this.zone = zone;
+        this.baseSecond = Instant.now().getEpochSecond();
+    }
+
+    /**
+     * Records the state of the fan seen at the given time, if it changed.
+     *
+     * @param epochSecond time the state was seen, not before the time of the last recorded state
+     * @param running whether the fan runs
+     * @param speed speed of the fan from 0 to 100
+     */
+    public synchronized void record(long epochSecond, boolean running, int speed) {
+        int time = toTime(epochSecond);
+        rollDay(time);
+        byte state = running ? (byte) Math.max(0, Math.min(100, speed)) : STOPPED;
+        if (size > 0 && speeds[head] == state) {
+            return;
+        }
+        int runningSeconds = 0;
+        long speedSeconds = 0;
+        if (size > 0) {
+            time = Math.max(time, times[head]);
+            runningSeconds = runningAt(head, time);
+            speedSeconds = speedAt(head, time);
+        }
+        head = (head + 1) % CAPACITY;
+        if (size == CAPACITY) {
+            // Overwriting the oldest entry
+            if (windowEntry == head) {
+                windowEntry = (head + 1) % CAPACITY;
+            }
+        } else {
+            size++;
+        }
+        times[head] = time;
+        runningBefore[head] = runningSeconds;
+        speedBefore[head] = speedSeconds;
+        speeds[head] = state;
+        if (size == 1) {
+            windowEntry = head;
+        }
+    }
+
+    /**
+     * @return seconds the fan ran since the start of the day
+     */
+    public synchronized long getRuntimeToday(long epochSecond) {
+        if (size == 0) {
+            return 0;
+        }
+        int time = Math.max(toTime(epochSecond), times[head]);
+        rollDay(time);
+        return runningAt(head, time) - runningBeforeToday;
+    }
+
+    /**
+     * @return share of the window the fan ran, from 0 to 1, or 0 if nothing was recorded yet
+     */
+    public synchronized double getDutyCycle(long epochSecond) {
+        if (size == 0) {
+            return 0;
+        }
+        int time = Math.max(toTime(epochSecond), times[head]);
+        int windowStart = advanceWindow(time);
+        int elapsed = time - windowStart;
+        if (elapsed <= 0) {
+            return speeds[head] == STOPPED ? 0 : 1;
+        }
+        return (double) (runningAt(head, time) - runningAt(windowEntry, windowStart)) / elapsed;
+    }
+
+    /**
+     * @return average speed from 0 to 100 while the fan ran in the window, or 0 if it did not run
+     */
+    public synchronized double getAverageSpeed(long epochSecond) {
+        if (size == 0) {
+            return 0;
+        }
+        int time = Math.max(toTime(epochSecond), times[head]);
+        int windowStart = advanceWindow(time);
+        int running = runningAt(head, time) - runningAt(windowEntry, windowStart);
+        if (running <= 0) {
+            return speeds[head] == STOPPED ? 0 : speeds[head];
+        }
+        return (double) (speedAt(head, time) - speedAt(windowEntry, windowStart)) / running;
+    }
+
+    /**
+     * Moves the first entry of the window forward to the given time's window.
+     *
+     * @return start of the window, no earlier than the oldest entry
+     */
+    private int advanceWindow(int time) {
+        long windowStart = time - windowSeconds;
+        int next = (windowEntry + 1) % CAPACITY;
+        while (windowEntry != head && times[next] <= windowStart) {
+            windowEntry = next;
+            next = (windowEntry + 1) % CAPACITY;
+        }
+        return (int) Math.max(windowStart, times[windowEntry]);
+    }
+
+    /**
+     * Remembers the running time before the start of the day, once a day started.
+     */
+    private void rollDay(int time) {
+        if (time < nextDayStart) {
+            return;
+        }
+        ZoneId zone = this.zone.get();
+        Instant dayStart = Instant.ofEpochSecond(baseSecond + time).atZone(zone).toLocalDate().atStartOfDay(zone)
+                .toInstant();
+        int todayStart = toTime(dayStart.getEpochSecond());
+        nextDayStart = toTime(dayStart.atZone(zone).toLocalDate().plusDays(1).atStartOfDay(zone).toEpochSecond());
+        runningBeforeToday = size == 0 ? 0 : runningAt(head, Math.max(todayStart, times[head]));
+    }
+
+    private int runningAt(int entry, int time) {
+        return runningBefore[entry] + (speeds[entry] == STOPPED ? 0 : time - times[entry]);
+    }
+
+    private long speedAt(int entry, int time) {
+        return speedBefore[entry] + (speeds[entry] == STOPPED ? 0 : (long) speeds[entry] * (time - times[entry]));
+    }
+
+    private int toTime(long epochSecond) {
+        return (int) (epochSecond - baseSecond);
+    }
+}
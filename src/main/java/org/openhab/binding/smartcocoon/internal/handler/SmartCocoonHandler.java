@@ -15,13 +15,13 @@ package org.openhab.binding.smartcocoon.internal.handler;
 import static org.openhab.binding.smartcocoon.internal.SmartCocoonBindingConstants.*;
 
 import java.lang.String;
+import java.util.List;
 import java.util.Map;
-import java.util.Set;
-import java.util.HashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.ScheduledFuture;
-
-import javax.measure.quantity.Dimensionless;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.eclipse.jdt.annotation.NonNullByDefault;
 import org.eclipse.jdt.annotation.Nullable;
@@ -29,6 +29,7 @@ import org.eclipse.jdt.annotation.Nullable;
 import org.openhab.binding.smartcocoon.internal.SmartCocoonConfiguration;
 import org.openhab.binding.smartcocoon.internal.dto.FanInfoResultDTO;
 import org.openhab.binding.smartcocoon.internal.api.SmartCocoonAPI;
+import org.openhab.binding.smartcocoon.internal.api.SmartCocoonFansSnapshot;
 import org.openhab.binding.smartcocoon.internal.SmartCocoonException;
 
 import org.openhab.core.thing.Channel;
@@ -36,21 +37,19 @@ import org.openhab.core.thing.ChannelUID;
 import org.openhab.core.thing.Bridge;
 import org.openhab.core.thing.Thing;
 import org.openhab.core.thing.ThingStatusDetail;
-import org.openhab.core.thing.ThingStatusDetail.OfflineStatus;
 import org.openhab.core.thing.ThingStatus;
 import org.openhab.core.thing.binding.BaseThingHandler;
-import org.openhab.core.thing.binding.BridgeHandler;
 import org.openhab.core.types.Command;
 import org.openhab.core.types.RefreshType;
 import org.openhab.core.types.State;
+import org.openhab.core.i18n.TimeZoneProvider;
 import org.openhab.core.library.types.OnOffType;
+import org.openhab.core.library.types.QuantityType;
 import org.openhab.core.library.types.StringType;
+import org.openhab.core.library.unit.Units;
 import org.openhab.core.types.UnDefType;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import com.google.gson.Gson;
-import org.eclipse.jetty.client.HttpClient;
-
 
 /**
  * The {@link SmartCocoonHandler} is responsible for handling commands, which are
@@ -65,28 +64,65 @@ public class SmartCocoonHandler extends BaseThingHandler {
 
     private SmartCocoonConfiguration config = new SmartCocoonConfiguration();
 
+    // Last known state of the fan, dispatched by the bridge, and its API id resolved from it once
+    private volatile @Nullable FanInfoResultDTO fan;
+    private volatile @Nullable String fanId;
+    private volatile long generation;
+    // Whether the thing shows the restored state of the last run, not confirmed by a poll yet
+    private volatile boolean stale;
+
+    // Last state published per channel id, so a poll only publishes the channels that actually changed
+    private final Map<String, State> lastPublishedStates = new ConcurrentHashMap<>();
+    private final AtomicLong publishedUpdates = new AtomicLong();
+    private final AtomicLong suppressedUpdates = new AtomicLong();
+
+    // Commands waiting for the coalescing window to pass, guarded by commandLock
+    private final Object commandLock = new Object();
+    private @Nullable String pendingMode;
+    private @Nullable Integer pendingSpeed;
+    private int pendingCommands;
+    private @Nullable ScheduledFuture<?> commandJob;
+    private final AtomicLong collapsedCommands = new AtomicLong();
 
-    private @Nullable ScheduledFuture<?> pollingJob;
-    private final Gson gson = new Gson();
-    private final HttpClient httpClient;
+    // Time until poll results are not published, because the state of a command is being read back
+    private static final long CONFIRMATION_TIMEOUT_MS = 30000;
+    private volatile long confirmationPendingUntil;
+    private @Nullable ScheduledFuture<?> confirmationJob;
 
-    public SmartCocoonHandler(Thing thing, HttpClient httpClient, Gson gson) {
+    private final TimeZoneProvider timeZoneProvider;
+
+    // Changes of the fan seen since initialization, for the runtime and duty cycle channels
+    private static final List<String> HISTORY_CHANNELS = List.of(CHANNEL_RUNTIME_TODAY, CHANNEL_DUTY_CYCLE,
+            CHANNEL_AVERAGE_SPEED);
+    private SmartCocoonFanHistory history;
+
+    public SmartCocoonHandler(Thing thing, TimeZoneProvider timeZoneProvider) {
         super(thing);
-        this.httpClient = httpClient;
+        this.timeZoneProvider = timeZoneProvider;
+        this.history = new SmartCocoonFanHistory(TimeUnit.MINUTES.toSeconds(this.config.dutyCycleWindow),
+                timeZoneProvider::getTimeZone);
     }
 
     @Override
     public void initialize() {
         this.config = getConfigAs(SmartCocoonConfiguration.class);
+        this.fan = null;
+        this.fanId = null;
+        this.generation = 0;
+        this.stale = false;
+        this.history = new SmartCocoonFanHistory(TimeUnit.MINUTES.toSeconds(this.config.dutyCycleWindow),
+                timeZoneProvider::getTimeZone);
+        this.lastPublishedStates.clear();
 	updateStatus(ThingStatus.UNKNOWN);
 
-	scheduler.execute(() -> {
+        SmartCocoonBridgeHandler bridgeHandler = this.getBridgeHandler();
+        if (bridgeHandler != null) {
+            // Register under the device id of the current configuration, which may have been edited
+            bridgeHandler.registerFanHandler(this);
+        }
+        Executor executor = bridgeHandler != null ? bridgeHandler.getExecutor() : scheduler;
+        executor.execute(() -> {
             update();
-	    /*
-	     * TODO - update properties
-            Map<String, String> properties = refreshProperties();
-            updateProperties(properties);
-	    */
         });
     }
 
@@ -95,86 +131,286 @@ public class SmartCocoonHandler extends BaseThingHandler {
         this.logger.debug("Command received: {}", command);
 
         if (command instanceof RefreshType) {
-                Bridge bridge = this.getBridge();
-                if (bridge != null) {
-                    BridgeHandler bridgeHandler = bridge.getHandler();
-                    if (bridgeHandler != null) {
-                        bridgeHandler.handleCommand(channelUID, command);
-                    }
+                // Make sure the refreshed value gets published even if it did not change
+                this.lastPublishedStates.remove(channelUID.getId());
+                republish(channelUID);
+                SmartCocoonBridgeHandler bridgeHandler = this.getBridgeHandler();
+                if (bridgeHandler != null) {
+                    bridgeHandler.refreshFan(this.config.deviceId, this);
                 }
             } 
         else {
-            String deviceId = this.config.deviceId;
-            // TODO - do we need to check?
-            if(deviceId == null){
-                return;
+            if (CHANNEL_FAN_SWITCH.equals(channelUID.getId())){
+               if (command == OnOffType.ON) {
+                 queueCommand("always_on", null);
+                }
+               else if (command == OnOffType.OFF) {
+                  queueCommand("always_off", null);
+                }
+               else{
+                    logger.error("Error issuing command {} to fan {}", command, channelUID.getId());
+                }
             }
-            SmartCocoonAPI api = this.getSmartCocoonAPI();
-            if (api == null) {
-		logger.error("api is null");
-		return;
+            else if (CHANNEL_FAN_SPEED.equals(channelUID.getId())){
+                queueCommand(null, Integer.parseInt(command.toString()));
             }
+        }
 
-	    //TODO - cache? 
-	    FanInfoResultDTO dto = this.getFanInfoResultDTO();
-		    if (dto == null){
-		logger.error("dto is null");
-		return;
-	    }
-
-	    String fanId = dto.id;
-	    if (fanId == null){
-		logger.error("id is null");
-		return;
-	    }
-
-            try{
-                if (CHANNEL_FAN_SWITCH.equals(channelUID.getId())){
-                   if (command == OnOffType.ON) {
-                     api.setFanMode(fanId, "always_on");
-                    } 
-                   else if (command == OnOffType.OFF) {
-                      api.setFanMode(fanId, "always_off");
-                    }
-                   else{
-                        logger.error("Error issuing command {} to fan {}", command, channelUID.getId());
-                    }
+    }
+
+    @Override
+    public void dispose() {
+        SmartCocoonBridgeHandler bridgeHandler = this.getBridgeHandler();
+        if (bridgeHandler != null) {
+            bridgeHandler.unregisterFanHandler(this.config.deviceId, this);
+        }
+        ScheduledFuture<?> commandJob;
+        synchronized (this.commandLock) {
+            commandJob = this.commandJob;
+        }
+        // Do not lose commands which are still buffered
+        if (commandJob != null && commandJob.cancel(false)) {
+            sendPendingCommands();
+        }
+        ScheduledFuture<?> confirmationJob = this.confirmationJob;
+        if (confirmationJob != null) {
+            confirmationJob.cancel(false);
+            this.confirmationJob = null;
+        }
+    }
+
+    /**
+     * Buffers a mode and/or speed change. All changes received within the coalescing window are merged, the latest
+     * value winning, and sent to the fan as a single request.
+     */
+    private void queueCommand(@Nullable String mode, @Nullable Integer speed) {
+        synchronized (this.commandLock) {
+            if (mode != null) {
+                this.pendingMode = mode;
+            }
+            if (speed != null) {
+                this.pendingSpeed = speed;
+            }
+            this.pendingCommands++;
+            if (this.commandJob == null) {
+                this.commandJob = scheduler.schedule(this::sendPendingCommands,
+                        Math.max(0, this.config.commandCoalescingWindow), TimeUnit.MILLISECONDS);
+            }
+        }
+    }
+
+    private void sendPendingCommands() {
+        String mode;
+        Integer speed;
+        int commands;
+        synchronized (this.commandLock) {
+            mode = this.pendingMode;
+            speed = this.pendingSpeed;
+            commands = this.pendingCommands;
+            this.pendingMode = null;
+            this.pendingSpeed = null;
+            this.pendingCommands = 0;
+            this.commandJob = null;
+        }
+        if (commands == 0) {
+            return;
+        }
+        if (commands > 1) {
+            this.collapsedCommands.addAndGet(commands - 1);
+            logger.debug("Collapsed {} commands for fan {} into one request", commands, this.config.deviceId);
+        }
+
+        SmartCocoonAPI api = this.getSmartCocoonAPI();
+        if (api == null) {
+            logger.error("api is null");
+            return;
+        }
+
+        FanInfoResultDTO dto = this.fan;
+        if (dto == null) {
+            logger.error("dto is null");
+            return;
+        }
+
+        String fanId = this.fanId;
+        if (fanId == null) {
+            logger.error("id is null");
+            return;
+        }
+
+        // Show the commanded state right away, the fan is read back once the command was accepted
+        FanInfoResultDTO expected = expectedState(dto, mode, speed);
+        long pendingUntil = System.currentTimeMillis() + CONFIRMATION_TIMEOUT_MS;
+        this.confirmationPendingUntil = pendingUntil;
+        ScheduledFuture<?> confirmationJob = this.confirmationJob;
+        if (confirmationJob != null) {
+            confirmationJob.cancel(false);
+        }
+        this.confirmationJob = scheduler.schedule(() -> confirmationTimedOut(pendingUntil), CONFIRMATION_TIMEOUT_MS,
+                TimeUnit.MILLISECONDS);
+        publishChannels(expected);
+
+        api.setFanStateAsync(fanId, mode, speed).whenComplete((result, exception) -> {
+            if (exception != null) {
+                this.confirmationPendingUntil = 0;
+                this.logger.error("error issuing command to fan {}", this.config.deviceId);
+                this.updateStatus(ThingStatus.OFFLINE, ThingStatusDetail.COMMUNICATION_ERROR,
+                        SmartCocoonException.of(exception).getMessage());
+                // Back to the last known state
+                publishChannels(dto);
+                return;
+            }
+            SmartCocoonBridgeHandler bridgeHandler = this.getBridgeHandler();
+            if (bridgeHandler != null) {
+                bridgeHandler.commandSent();
+            }
+            api.getFanAsync(fanId).whenComplete((actual, confirmException) -> {
+                this.confirmationPendingUntil = 0;
+                if (confirmException != null) {
+                    logger.debug("Could not read back fan {}, showing its last polled state: {}",
+                            this.config.deviceId, SmartCocoonException.of(confirmException).getMessage());
+                    // Polls skipped while the confirmation was pending are not dispatched again
+                    publishLastKnownState();
+                    return;
                 }
-                else if (CHANNEL_FAN_SPEED.equals(channelUID.getId())){
-                    api.setFanSpeed(fanId, Integer.parseInt(command.toString()));
+                if (!isApplied(expected, actual, mode, speed)) {
+                    logger.warn("Fan {} did not apply the command, expected mode {} and speed level {}, got {} and {}",
+                            this.config.deviceId, expected.mode, expected.speed_level, actual.mode,
+                            actual.speed_level);
                 }
+                // The fan's own state wins, reverting the commanded state if it was not applied
+                update(actual);
+            });
+        });
+    }
+
+    private void confirmationTimedOut(long pendingUntil) {
+        if (this.confirmationPendingUntil != pendingUntil) {
+            // Confirmed meanwhile, or replaced by a later command
+            return;
+        }
+        this.confirmationPendingUntil = 0;
+        logger.debug("Fan {} was not read back in time, showing its last polled state", this.config.deviceId);
+        publishLastKnownState();
+    }
+
+    /**
+     * Publishes the last state of the fan received from the cloud, which polls keep current while a confirmation
+     * is pending.
+     */
+    private void publishLastKnownState() {
+        FanInfoResultDTO dto = this.fan;
+        if (dto != null) {
+            publishChannels(dto);
+        }
+    }
+
+    private static FanInfoResultDTO expectedState(FanInfoResultDTO current, @Nullable String mode,
+            @Nullable Integer speed) {
+        FanInfoResultDTO expected = new FanInfoResultDTO();
+        expected.id = current.id;
+        expected.fan_id = current.fan_id;
+        expected.mode = current.mode;
+        expected.speed_level = current.speed_level;
+        expected.fan_on = current.fan_on;
+        if (mode != null) {
+            expected.mode = mode;
+            // In auto and eco mode the fan keeps running or not until the cloud decides otherwise
+            if ("always_on".equals(mode) || "always_off".equals(mode)) {
+                expected.fan_on = "always_on".equals(mode);
             }
-            catch(SmartCocoonException ex){
-                this.logger.error("error issuing command {} to fan {}", command, channelUID.getId());
-                this.updateStatus(ThingStatus.OFFLINE, ThingStatusDetail.COMMUNICATION_ERROR, ex.getMessage());
-            }
         }
+        if (speed != null) {
+            expected.speed_level = SmartCocoonAPI.toSpeedLevel(speed);
+        }
+        return expected;
+    }
+
+    private static boolean isApplied(FanInfoResultDTO expected, FanInfoResultDTO actual, @Nullable String mode,
+            @Nullable Integer speed) {
+        return (mode == null || mode.equals(actual.mode)) && (speed == null || expected.speed_level == actual.speed_level);
+    }
+
+    /**
+     * @return number of commands which were merged into another command's request instead of being sent
+     */
+    public long getCollapsedCommands() {
+        return this.collapsedCommands.get();
+    }
+
+    /**
+     * @return the device id, the fan_id the fan is listed under by the API
+     */
+    public String getDeviceId() {
+        return this.config.deviceId;
+    }
 
+    /**
+     * @return generation of the bridge's snapshot of fans the state of the thing was last updated from
+     */
+    public long getGeneration() {
+        return this.generation;
     }
 
+    /**
+     * @return whether the thing shows the restored state of the last run, not confirmed by a poll yet
+     */
+    public boolean isStale() {
+        return this.stale;
+    }
 
+    /**
+     * Looks up the fan in the last poll of the bridge and updates the thing from it.
+     */
     public void update() {
-        FanInfoResultDTO dto = this.getFanInfoResultDTO();
-        if (dto != null) {
+        SmartCocoonBridgeHandler bridgeHandler = this.getBridgeHandler();
+        if (bridgeHandler != null) {
+            this.update(bridgeHandler.getFansSnapshot());
+        }
+    }
+
+    /**
+     * Updates the thing from the given snapshot of the bridge's fans.
+     */
+    void update(SmartCocoonFansSnapshot snapshot) {
+        FanInfoResultDTO dto = snapshot.get(this.config.deviceId);
+        if (dto != null && snapshot.isStale()) {
+            this.generation = snapshot.getGeneration();
+            this.stale = true;
+            this.fan = dto;
+            if (this.fanId == null) {
+                this.fanId = dto.id;
+            }
+            publishChannels(dto);
+            updateStatus(ThingStatus.ONLINE, ThingStatusDetail.NONE, "Last known state, waiting for the first poll");
+        } else if (dto != null) {
+            this.generation = snapshot.getGeneration();
             this.update(dto);
+        } else if (snapshot.getGeneration() == 0 || snapshot.isStale()) {
+            // A fan missing from the restored fans may have been added since
+            logger.debug("list of fans not received yet");
+            this.updateStatus(ThingStatus.OFFLINE, ThingStatusDetail.NOT_YET_READY, "Did not get the list of fans from API");
         } else {
-            Map<String, FanInfoResultDTO> t = this.getSmartCocoonThings();
-            if (t != null) {
-               if (t.size() > 0) {
-                 this.updateStatus(ThingStatus.OFFLINE, ThingStatusDetail.CONFIGURATION_ERROR, "Invalid device ID " + this.config.deviceId + 
-                                  ". Valid device IDs: " + String.join(", ", t.keySet()) + ".");
-               } else {
-                 this.updateStatus(ThingStatus.OFFLINE, ThingStatusDetail.CONFIGURATION_ERROR, "Invalid device ID " + this.config.deviceId + 
-                                  ". No devices returned by API.");
-               }
-            }
-            else {
-              logger.warn("list of fans is null");
-              this.updateStatus(ThingStatus.OFFLINE, ThingStatusDetail.NOT_YET_READY, "Did not get the list of fans from API");
+            this.generation = snapshot.getGeneration();
+            Map<String, FanInfoResultDTO> t = snapshot.getFans();
+            if (t.size() > 0) {
+                this.updateStatus(ThingStatus.OFFLINE, ThingStatusDetail.CONFIGURATION_ERROR, "Invalid device ID " + this.config.deviceId +
+                                 ". Valid device IDs: " + String.join(", ", t.keySet()) + ".");
+            } else {
+                this.updateStatus(ThingStatus.OFFLINE, ThingStatusDetail.CONFIGURATION_ERROR, "Invalid device ID " + this.config.deviceId +
+                                 ". No devices returned by API.");
             }
         }
     }
 
+    private @Nullable SmartCocoonBridgeHandler getBridgeHandler() {
+        Bridge bridge = getBridge();
+        if (bridge != null) {
+            return (SmartCocoonBridgeHandler) bridge.getHandler();
+        }
+        return null;
+    }
+
     private @Nullable SmartCocoonAPI getSmartCocoonAPI() {
         Bridge bridge = getBridge();
         if (bridge != null) {
@@ -187,36 +423,92 @@ public class SmartCocoonHandler extends BaseThingHandler {
     }
 
 
-    private @Nullable Map<String, FanInfoResultDTO> getSmartCocoonThings() {
-        Bridge bridge = this.getBridge();
-        if (bridge != null) {
-            SmartCocoonBridgeHandler bridgeHandler = (SmartCocoonBridgeHandler) bridge.getHandler();
-            if (bridgeHandler != null) {
-               return bridgeHandler.getSmartCocoonThings();
+    /**
+     * Updates the thing from the given state of its fan.
+     */
+    void update(@Nullable FanInfoResultDTO dto) {
+        if (dto != null) {
+            this.fan = dto;
+            if (this.fanId == null) {
+                this.fanId = dto.id;
+            }
+            this.history.record(nowSeconds(), dto.fan_on,
+                    SmartCocoonAPI.toSpeed(dto.speed_level));
+            if (System.currentTimeMillis() < this.confirmationPendingUntil) {
+                // The poll may predate the command, the read back of the fan will publish its state
+                logger.trace("Fan {} awaits confirmation of a command, skipping update", this.config.deviceId);
+                return;
+            }
+            publishChannels(dto);
+            if (getThing().getStatus() != ThingStatus.ONLINE || this.stale) {
+                this.stale = false;
+                updateStatus(ThingStatus.ONLINE);
             }
         }
-        return null;
     }
 
-    private @Nullable FanInfoResultDTO getFanInfoResultDTO() {
-        var t = this.getSmartCocoonThings();
-        if (t != null) {
-           return t.get(this.config.deviceId);
+    private void publishChannels(FanInfoResultDTO dto) {
+        // Update all channels from the updated data
+        getThing().getChannels().stream().map(Channel::getUID).filter(channelUID -> isLinked(channelUID))
+                .forEach(channelUID -> publishState(channelUID, getValue(channelUID.getId(), dto)));
+    }
+
+    /**
+     * Publishes the channels computed from the history of the fan, which change while the fan runs although its
+     * state does not.
+     */
+    void publishHistory() {
+        FanInfoResultDTO dto = this.fan;
+        if (dto == null || getThing().getStatus() != ThingStatus.ONLINE || this.stale) {
+            return;
+        }
+        for (String channelId : HISTORY_CHANNELS) {
+            ChannelUID channelUID = new ChannelUID(getThing().getUID(), channelId);
+            if (isLinked(channelUID)) {
+                publishState(channelUID, getValue(channelId, dto));
+            }
         }
-        return null;
     }
 
-    private void update(@Nullable FanInfoResultDTO dto) {
-        if (dto != null) {
-            // Update all channels from the updated data
-            getThing().getChannels().stream().map(Channel::getUID).filter(channelUID -> isLinked(channelUID))
-                    .forEach(channelUID -> {
-                        State state = getValue(channelUID.getId(), dto);
-                        this.logger.trace("Channel: {}, State: {}", channelUID, state);
-                        this.updateState(channelUID, state);
-                    });
-            updateStatus(ThingStatus.ONLINE);
+    /**
+     * Publishes the channel from the last known state of the fan, the refresh from the cloud may find it unchanged
+     * or not be sent at all.
+     */
+    private void republish(ChannelUID channelUID) {
+        FanInfoResultDTO dto = this.fan;
+        // A command being confirmed publishes its state once it is read back
+        if (dto == null || System.currentTimeMillis() < this.confirmationPendingUntil) {
+            return;
+        }
+        publishState(channelUID, getValue(channelUID.getId(), dto));
+    }
+
+    private void publishState(ChannelUID channelUID, State state) {
+        if (state.equals(this.lastPublishedStates.put(channelUID.getId(), state))) {
+            this.suppressedUpdates.incrementAndGet();
+            return;
         }
+        this.logger.trace("Channel: {}, State: {}", channelUID, state);
+        this.updateState(channelUID, state);
+        this.publishedUpdates.incrementAndGet();
+    }
+
+    /**
+     * @return number of channel states published to the event bus since the handler was created
+     */
+    public long getPublishedUpdates() {
+        return this.publishedUpdates.get();
+    }
+
+    /**
+     * @return number of channel states not published because they did not change since the last update
+     */
+    public long getSuppressedUpdates() {
+        return this.suppressedUpdates.get();
+    }
+
+    private static long nowSeconds() {
+        return TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis());
     }
 
     private State getValue(String channelId, FanInfoResultDTO dto) {
@@ -224,7 +516,13 @@ public class SmartCocoonHandler extends BaseThingHandler {
             case CHANNEL_FAN_SWITCH:
                 return OnOffType.from(dto.fan_on);
             case CHANNEL_FAN_SPEED:
-                return new StringType(Integer.toString(dto.speed_level*8 + dto.speed_level/3));
+                return new StringType(Integer.toString(SmartCocoonAPI.toSpeed(dto.speed_level)));
+            case CHANNEL_RUNTIME_TODAY:
+                return new QuantityType<>(this.history.getRuntimeToday(nowSeconds()), Units.SECOND);
+            case CHANNEL_DUTY_CYCLE:
+                return new QuantityType<>(this.history.getDutyCycle(nowSeconds()) * 100, Units.PERCENT);
+            case CHANNEL_AVERAGE_SPEED:
+                return new QuantityType<>(this.history.getAverageSpeed(nowSeconds()), Units.PERCENT);
         }
         return UnDefType.UNDEF;
     }
@@ -25,14 +25,16 @@ import org.openhab.core.thing.ThingTypeUID;
 import org.openhab.core.thing.binding.BaseThingHandlerFactory;
 import org.openhab.core.thing.binding.ThingHandler;
 import org.openhab.core.thing.binding.ThingHandlerFactory;
+import org.openhab.core.i18n.TimeZoneProvider;
 import org.openhab.core.io.net.http.HttpClientFactory;
+import org.openhab.core.storage.StorageService;
 
 import org.osgi.service.component.annotations.Component;
 import org.osgi.service.component.annotations.Activate;
+import org.osgi.service.component.annotations.Deactivate;
 import org.osgi.service.component.annotations.Reference;
 
 import com.google.gson.Gson;
-import org.eclipse.jetty.client.HttpClient;
 
 /**
  * The {@link SmartCocoonHandlerFactory} is responsible for creating things and thing
@@ -45,17 +47,27 @@ import org.eclipse.jetty.client.HttpClient;
 public class SmartCocoonHandlerFactory extends BaseThingHandlerFactory {
 
     private static final Set<ThingTypeUID> SUPPORTED_THING_TYPES_UIDS = Set.of(THING_TYPE_FAN,
-            THING_TYPE_BRIDGE);
+            THING_TYPE_BRIDGE, THING_TYPE_ZONE);
 
     private final Gson gson;
-    private final HttpClient httpClient;
+    private final SmartCocoonPollCoordinator pollCoordinator;
+    private final StorageService storageService;
+    private final TimeZoneProvider timeZoneProvider;
 
     @Activate
-    public SmartCocoonHandlerFactory(@Reference HttpClientFactory httpClientFactory) {
-        this.httpClient = httpClientFactory.getCommonHttpClient();
+    public SmartCocoonHandlerFactory(@Reference HttpClientFactory httpClientFactory,
+            @Reference StorageService storageService, @Reference TimeZoneProvider timeZoneProvider) {
+        this.pollCoordinator = new SmartCocoonPollCoordinator(httpClientFactory);
+        this.storageService = storageService;
+        this.timeZoneProvider = timeZoneProvider;
         this.gson = new Gson();
     }
 
+    @Deactivate
+    public void deactivate() {
+        pollCoordinator.dispose();
+    }
+
 
     @Override
     public boolean supportsThingType(ThingTypeUID thingTypeUID) {
@@ -67,10 +79,12 @@ public class SmartCocoonHandlerFactory extends BaseThingHandlerFactory {
         ThingTypeUID thingTypeUID = thing.getThingTypeUID();
 
         if (THING_TYPE_FAN.equals(thingTypeUID)) {
-            return new SmartCocoonHandler(thing, httpClient, gson);
+            return new SmartCocoonHandler(thing, timeZoneProvider);
         } 
 	else if (THING_TYPE_BRIDGE.equals(thingTypeUID)) {
-            return new SmartCocoonBridgeHandler((Bridge) thing, httpClient, gson);
+            return new SmartCocoonBridgeHandler((Bridge) thing, pollCoordinator, storageService, gson);
+        } else if (THING_TYPE_ZONE.equals(thingTypeUID)) {
+            return new SmartCocoonZoneHandler(thing);
         }
         return null;
 
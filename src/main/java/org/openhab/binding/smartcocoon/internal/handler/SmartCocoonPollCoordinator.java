@@ -0,0 +1,193 @@
+/**
+ * Copyright (c) 2010-2023 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.binding.smartcocoon.internal.handler;
+
+import static org.openhab.binding.smartcocoon.internal.SmartCocoonBindingConstants.*;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.eclipse.jdt.annotation.Nullable;
+import org.eclipse.jetty.client.AbstractConnectionPool;
+import org.eclipse.jetty.client.ConnectionPool;
+import org.eclipse.jetty.client.HttpClient;
+import org.eclipse.jetty.client.HttpDestination;
+import org.eclipse.jetty.client.WWWAuthenticationProtocolHandler;
+import org.eclipse.jetty.client.api.Destination;
+import org.openhab.binding.smartcocoon.internal.api.SmartCocoonRequestLimiter;
+import org.openhab.binding.smartcocoon.internal.api.SmartCocoonWorkExecutor;
+import org.openhab.core.io.net.http.HttpClientFactory;
+import org.openhab.core.thing.ThingUID;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The {@link SmartCocoonPollCoordinator} is shared by all account bridges of the binding.
+ *
+ * It owns the HTTP clients, so all accounts share one connection pool, and limits how many logins and polls run
+ * at the same time. Long polls hold their connection for up to a minute, they use a second client with a pool of
+ * one connection per long polling account, so they never take the connections of polls, logins and commands. The
+ * number of long polling accounts is limited to {@link #MAX_LONG_POLLING_ACCOUNTS}. The first poll of each account is delayed by a jitter derived from its thing UID, so accounts
+ * starting together do not poll together. Accounts configured to use virtual threads share a
+ * {@link SmartCocoonWorkExecutor}, created on first use.
+ *
+ * @author Mike Fedotov - Initial contribution
+ */
+@NonNullByDefault
+public class SmartCocoonPollCoordinator {
+
+    private static final int MAX_CONNECTIONS = 8;
+    static final int MAX_LONG_POLLING_ACCOUNTS = 32;
+    private static final int MAX_CONCURRENT_POLLS = 4;
+    private static final int MAX_CONCURRENT_LOGINS = 2;
+    private static final int MAX_RUNNING_TASKS = 4;
+    private static final Duration MAX_STARTUP_SPREAD = Duration.ofSeconds(30);
+
+    private final Logger logger = LoggerFactory.getLogger(SmartCocoonPollCoordinator.class);
+    private final HttpClient httpClient;
+    private final HttpClient longPollHttpClient;
+    private int longPollingAccounts;
+    private final SmartCocoonRequestLimiter pollLimiter = new SmartCocoonRequestLimiter(MAX_CONCURRENT_POLLS);
+    private final SmartCocoonRequestLimiter loginLimiter = new SmartCocoonRequestLimiter(MAX_CONCURRENT_LOGINS);
+    private @Nullable SmartCocoonWorkExecutor workExecutor;
+
+    public SmartCocoonPollCoordinator(HttpClientFactory httpClientFactory) {
+        this.httpClient = startHttpClient(httpClientFactory, BINDING_ID, MAX_CONNECTIONS);
+        try {
+            this.longPollHttpClient = startHttpClient(httpClientFactory, BINDING_ID + "-watch",
+                    MAX_LONG_POLLING_ACCOUNTS);
+        } catch (IllegalStateException e) {
+            stop(httpClient);
+            throw e;
+        }
+    }
+
+    private static HttpClient startHttpClient(HttpClientFactory httpClientFactory, String consumerName,
+            int maxConnections) {
+        HttpClient httpClient = httpClientFactory.createHttpClient(consumerName);
+        httpClient.setMaxConnectionsPerDestination(maxConnections);
+        try {
+            httpClient.start();
+        } catch (Exception e) {
+            throw new IllegalStateException("Could not start HttpClient.", e);
+        }
+        // The cloud rejects expired tokens with a 401 without challenge, which must reach the authenticator. The
+        // handler is added on start.
+        httpClient.getProtocolHandlers().remove(WWWAuthenticationProtocolHandler.NAME);
+        return httpClient;
+    }
+
+    public void dispose() {
+        synchronized (this) {
+            SmartCocoonWorkExecutor workExecutor = this.workExecutor;
+            if (workExecutor != null) {
+                workExecutor.dispose();
+                this.workExecutor = null;
+            }
+        }
+        stop(httpClient);
+        stop(longPollHttpClient);
+    }
+
+    private void stop(HttpClient httpClient) {
+        try {
+            httpClient.stop();
+        } catch (Exception e) {
+            logger.debug("Failed to stop HttpClient: {}", e.getMessage());
+        }
+    }
+
+    public HttpClient getHttpClient() {
+        return httpClient;
+    }
+
+    /**
+     * @return client for long polls only, with a connection for each account allowed to long poll
+     */
+    public HttpClient getLongPollHttpClient() {
+        return longPollHttpClient;
+    }
+
+    /**
+     * Reserves a long poll connection for an account.
+     *
+     * @return whether the account may long poll, if so it must call {@link #releaseLongPolling()} when it stops
+     */
+    public synchronized boolean acquireLongPolling() {
+        if (longPollingAccounts >= MAX_LONG_POLLING_ACCOUNTS) {
+            return false;
+        }
+        longPollingAccounts++;
+        return true;
+    }
+
+    public synchronized void releaseLongPolling() {
+        if (longPollingAccounts > 0) {
+            longPollingAccounts--;
+        }
+    }
+
+    public SmartCocoonRequestLimiter getLoginLimiter() {
+        return loginLimiter;
+    }
+
+    public synchronized SmartCocoonWorkExecutor getWorkExecutor() {
+        SmartCocoonWorkExecutor workExecutor = this.workExecutor;
+        if (workExecutor == null) {
+            workExecutor = new SmartCocoonWorkExecutor(BINDING_ID, MAX_RUNNING_TASKS);
+            this.workExecutor = workExecutor;
+        }
+        return workExecutor;
+    }
+
+    /**
+     * Runs a poll once fewer than the maximum number of polls are running.
+     */
+    public <T> CompletableFuture<T> poll(Supplier<CompletableFuture<T>> poll) {
+        return pollLimiter.submit(poll).whenComplete((result, exception) -> logStatistics());
+    }
+
+    /**
+     * Returns the delay of the first poll of an account, spread over the refresh interval but never longer than
+     * {@link #MAX_STARTUP_SPREAD}. The same account always gets the same delay.
+     */
+    public Duration getInitialDelay(ThingUID bridgeUID, Duration refreshInterval) {
+        Duration spread = refreshInterval.compareTo(MAX_STARTUP_SPREAD) < 0 ? refreshInterval : MAX_STARTUP_SPREAD;
+        if (spread.isZero() || spread.isNegative()) {
+            return Duration.ZERO;
+        }
+        return Duration.ofMillis(Math.floorMod(bridgeUID.getAsString().hashCode(), spread.toMillis()));
+    }
+
+    private void logStatistics() {
+        if (!logger.isDebugEnabled()) {
+            return;
+        }
+        int activeConnections = 0;
+        int idleConnections = 0;
+        for (Destination destination : httpClient.getDestinations()) {
+            if (destination instanceof HttpDestination) {
+                ConnectionPool connectionPool = ((HttpDestination) destination).getConnectionPool();
+                if (connectionPool instanceof AbstractConnectionPool) {
+                    activeConnections += ((AbstractConnectionPool) connectionPool).getActiveConnectionCount();
+                    idleConnections += ((AbstractConnectionPool) connectionPool).getIdleConnectionCount();
+                }
+            }
+        }
+        logger.debug("Polls running: {}, waiting: {}; logins running: {}, waiting: {}; connections active: {}, idle: {}",
+                pollLimiter.getRunning(), pollLimiter.getWaiting(), loginLimiter.getRunning(),
+                loginLimiter.getWaiting(), activeConnections, idleConnections);
+    }
+}
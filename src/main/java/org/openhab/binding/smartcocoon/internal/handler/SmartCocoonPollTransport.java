@@ -0,0 +1,191 @@
+/**
+ * Copyright (c) 2010-2023 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.binding.smartcocoon.internal.handler;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BooleanSupplier;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.eclipse.jdt.annotation.Nullable;
+import org.openhab.binding.smartcocoon.internal.SmartCocoonException;
+import org.openhab.binding.smartcocoon.internal.api.SmartCocoonAPI;
+import org.openhab.binding.smartcocoon.internal.api.SmartCocoonFansSnapshot;
+import org.openhab.binding.smartcocoon.internal.api.SmartCocoonTransport;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The {@link SmartCocoonPollTransport} polls the fans of an account at the intervals of its
+ * {@link SmartCocoonPollingInterval}.
+ *
+ * While another transport pushes the changes of the fans, they are only polled at the maximum interval, to check
+ * nothing was missed.
+ *
+ * @author Mike Fedotov - Initial contribution
+ */
+@NonNullByDefault
+public class SmartCocoonPollTransport implements SmartCocoonTransport {
+
+    private final Logger logger = LoggerFactory.getLogger(SmartCocoonPollTransport.class);
+    private final SmartCocoonAPI api;
+    private final SmartCocoonPollCoordinator pollCoordinator;
+    private final ScheduledExecutorService scheduler;
+    private final SmartCocoonPollingInterval pollingInterval;
+    private final Duration initialDelay;
+    private final BooleanSupplier pushing;
+
+    private @Nullable Listener listener;
+    private @Nullable ScheduledFuture<?> refreshJob;
+    // Guarded by this, read without lock to tell whether a poll is running
+    private volatile @Nullable CompletableFuture<?> pendingRefresh;
+    private Duration scheduledDelay;
+
+    /**
+     * @param initialDelay delay of the first poll
+     * @param pushing tells whether the changes of the fans are currently pushed by another transport
+     */
+    public SmartCocoonPollTransport(SmartCocoonAPI api, SmartCocoonPollCoordinator pollCoordinator,
+            ScheduledExecutorService scheduler, SmartCocoonPollingInterval pollingInterval, Duration initialDelay,
+            BooleanSupplier pushing) {
+        this.api = api;
+        this.pollCoordinator = pollCoordinator;
+        this.scheduler = scheduler;
+        this.pollingInterval = pollingInterval;
+        this.initialDelay = initialDelay;
+        this.pushing = pushing;
+        this.scheduledDelay = pollingInterval.getCurrent();
+    }
+
+    @Override
+    public synchronized void start(Listener listener) {
+        this.listener = listener;
+        scheduleRefresh(this.initialDelay);
+    }
+
+    @Override
+    public synchronized void stop() {
+        this.listener = null;
+        ScheduledFuture<?> refreshJob = this.refreshJob;
+        if (refreshJob != null) {
+            refreshJob.cancel(true);
+            this.refreshJob = null;
+        }
+    }
+
+    @Override
+    public boolean isPushing() {
+        return false;
+    }
+
+    /**
+     * Polls the fans now, unless a poll is already running.
+     */
+    public void refresh() {
+        Listener listener;
+        // Completes once the poll was handled, claimed before the poll starts so concurrent calls skip
+        CompletableFuture<@Nullable Void> handled = new CompletableFuture<>();
+        synchronized (this) {
+            listener = this.listener;
+            if (listener == null) {
+                return;
+            }
+            CompletableFuture<?> pendingRefresh = this.pendingRefresh;
+            if (pendingRefresh != null && !pendingRefresh.isDone()) {
+                logger.debug("Previous refresh still in progress, skipping");
+                return;
+            }
+            this.pendingRefresh = handled;
+        }
+        // The poll completes on the HTTP client's callback, the calling thread is not blocked
+        AtomicReference<SmartCocoonFansSnapshot> previous = new AtomicReference<>(SmartCocoonFansSnapshot.EMPTY);
+        CompletableFuture<SmartCocoonFansSnapshot> refresh = pollCoordinator.poll(() -> {
+            // Compare to the fans applied last once the poll actually starts
+            previous.set(listener.getFansSnapshot());
+            return api.refreshAsync(previous.get());
+        });
+        refresh.whenComplete((snapshot, exception) -> {
+            try {
+                if (exception == null) {
+                    Duration delay = this.pollingInterval.onSuccess(snapshot.hasChanges());
+                    scheduleRefresh(this.pushing.getAsBoolean() ? this.pollingInterval.getMax() : delay);
+                    listener.onFans(previous.get(), snapshot);
+                } else {
+                    scheduleRefresh(this.pollingInterval.onError());
+                    listener.onFailure(SmartCocoonException.of(exception));
+                }
+            } finally {
+                handled.complete(null);
+            }
+        });
+    }
+
+    /**
+     * @return whether a poll is running
+     */
+    public boolean isRefreshing() {
+        CompletableFuture<?> pendingRefresh = this.pendingRefresh;
+        return pendingRefresh != null && !pendingRefresh.isDone();
+    }
+
+    /**
+     * A command was accepted, polls quickly until the new state is seen, unless the new state will be pushed.
+     */
+    public void commandSent() {
+        if (this.pushing.getAsBoolean()) {
+            return;
+        }
+        Duration delay = this.pollingInterval.onCommand();
+        if (!isRefreshing()) {
+            // Otherwise the running poll schedules the next one from the command burst
+            scheduleRefresh(delay);
+        }
+    }
+
+    /**
+     * Changes of the fans are no longer pushed, polls at the configured interval again.
+     */
+    public void pushStopped() {
+        Duration delay = this.pollingInterval.reset();
+        if (!isRefreshing() && delay.compareTo(getScheduledDelay()) < 0) {
+            scheduleRefresh(delay);
+        }
+    }
+
+    /**
+     * @return the delay of the poll scheduled last
+     */
+    public synchronized Duration getScheduledDelay() {
+        return this.scheduledDelay;
+    }
+
+    /**
+     * Replaces the scheduled poll by one after the given delay.
+     */
+    private synchronized void scheduleRefresh(Duration delay) {
+        if (this.listener == null) {
+            return;
+        }
+        ScheduledFuture<?> refreshJob = this.refreshJob;
+        if (refreshJob != null) {
+            refreshJob.cancel(false);
+        }
+        this.refreshJob = scheduler.schedule(this::refresh, delay.toMillis(), TimeUnit.MILLISECONDS);
+        this.scheduledDelay = delay;
+        logger.trace("Next refresh in {} ms", delay.toMillis());
+    }
+}
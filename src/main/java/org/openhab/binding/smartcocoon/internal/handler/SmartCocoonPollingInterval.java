@@ -0,0 +1,138 @@
+/**
+ * Copyright (c) 2010-2023 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.binding.smartcocoon.internal.handler;
+
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+
+/**
+ * The {@link SmartCocoonPollingInterval} computes the delay until the next poll of an account.
+ *
+ * After a command the account is polled at the minimum interval until a change is seen or the burst is used up.
+ * Polls without changes stretch the interval step by step up to the maximum, a change resets it to the configured
+ * refresh interval. Communication errors back off exponentially with jitter.
+ *
+ * @author Mike Fedotov - Initial contribution
+ */
+@NonNullByDefault
+public class SmartCocoonPollingInterval {
+
+    private static final int BURST_POLLS = 6;
+    private static final double IDLE_BACKOFF_FACTOR = 1.5;
+
+    private final Duration min;
+    private final Duration base;
+    private final Duration max;
+
+    // Interval outside of command bursts, and the delay last handed out
+    private Duration current;
+    private Duration effective;
+    private int burstPollsLeft;
+    private int failures;
+
+    public SmartCocoonPollingInterval(Duration min, Duration base, Duration max) {
+        this.min = min;
+        this.base = base;
+        this.max = max;
+        this.current = base;
+        this.effective = base;
+    }
+
+    /**
+     * A command was sent, poll quickly until its effect is seen.
+     *
+     * @return delay until the next poll
+     */
+    public synchronized Duration onCommand() {
+        burstPollsLeft = BURST_POLLS;
+        effective = min;
+        return effective;
+    }
+
+    /**
+     * @param changed whether the poll saw any fan change
+     * @return delay until the next poll
+     */
+    public synchronized Duration onSuccess(boolean changed) {
+        if (failures > 0) {
+            // Recovered, start over from the configured interval
+            failures = 0;
+            current = base;
+        }
+        if (burstPollsLeft > 0) {
+            if (!changed) {
+                burstPollsLeft--;
+                effective = min;
+                return effective;
+            }
+            burstPollsLeft = 0;
+        }
+        if (changed) {
+            current = base;
+        } else {
+            current = clamp(Duration.ofMillis((long) (current.toMillis() * IDLE_BACKOFF_FACTOR)));
+        }
+        effective = current;
+        return effective;
+    }
+
+    /**
+     * @return delay until the next poll
+     */
+    public synchronized Duration onError() {
+        failures++;
+        // base * 2^(failures - 1), the shift is capped to stay far from overflowing
+        Duration backoff = clamp(base.multipliedBy(1L << Math.min(failures - 1, 20)));
+        // Jitter over the upper half, so accounts failing together do not retry together
+        long halfMillis = backoff.toMillis() / 2;
+        current = clamp(Duration.ofMillis(halfMillis + ThreadLocalRandom.current().nextLong(halfMillis + 1)));
+        effective = current;
+        return effective;
+    }
+
+    /**
+     * Starts over from the configured interval, e.g. once changes are no longer pushed by the cloud.
+     *
+     * @return delay until the next poll
+     */
+    public synchronized Duration reset() {
+        burstPollsLeft = 0;
+        failures = 0;
+        current = base;
+        effective = base;
+        return effective;
+    }
+
+    /**
+     * @return the longest delay between polls
+     */
+    public Duration getMax() {
+        return max;
+    }
+
+    /**
+     * @return the delay handed out for the last scheduled poll
+     */
+    public synchronized Duration getCurrent() {
+        return effective;
+    }
+
+    private Duration clamp(Duration interval) {
+        if (interval.compareTo(min) < 0) {
+            return min;
+        }
+        return interval.compareTo(max) > 0 ? max : interval;
+    }
+}
@@ -0,0 +1,253 @@
+/**
+ * Copyright (c) 2010-2023 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.binding.smartcocoon.internal.handler;
+
+import static org.openhab.binding.smartcocoon.internal.SmartCocoonBindingConstants.*;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.eclipse.jdt.annotation.Nullable;
+import org.openhab.binding.smartcocoon.internal.SmartCocoonException;
+import org.openhab.binding.smartcocoon.internal.SmartCocoonZoneConfiguration;
+import org.openhab.binding.smartcocoon.internal.api.SmartCocoonAPI;
+import org.openhab.binding.smartcocoon.internal.api.SmartCocoonFanTarget;
+import org.openhab.binding.smartcocoon.internal.api.SmartCocoonFansSnapshot;
+import org.openhab.binding.smartcocoon.internal.dto.FanInfoResultDTO;
+import org.openhab.core.library.types.DecimalType;
+import org.openhab.core.library.types.OnOffType;
+import org.openhab.core.library.types.QuantityType;
+import org.openhab.core.library.unit.Units;
+import org.openhab.core.thing.Bridge;
+import org.openhab.core.thing.ChannelUID;
+import org.openhab.core.thing.Thing;
+import org.openhab.core.thing.ThingStatus;
+import org.openhab.core.thing.ThingStatusDetail;
+import org.openhab.core.thing.binding.BaseThingHandler;
+import org.openhab.core.types.Command;
+import org.openhab.core.types.RefreshType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The {@link SmartCocoonZoneHandler} controls a group of fans of an account as one.
+ *
+ * Commands are sent to all member fans at once, skipping the fans already in the commanded state. The aggregated
+ * state of the members is kept up to date as single members change: the bridge reports each changed fan, and only
+ * its contribution is replaced.
+ *
+ * @author Mike Fedotov - Initial contribution
+ */
+@NonNullByDefault
+public class SmartCocoonZoneHandler extends BaseThingHandler {
+
+    private final Logger logger = LoggerFactory.getLogger(SmartCocoonZoneHandler.class);
+
+    private SmartCocoonZoneConfiguration config = new SmartCocoonZoneConfiguration();
+    private volatile Set<String> deviceIds = Set.of();
+
+    // Last known state of the members on the account, and their aggregate, guarded by this
+    private final Map<String, FanInfoResultDTO> members = new HashMap<>();
+    private int fansOn;
+    private long speedOfFansOn;
+
+    public SmartCocoonZoneHandler(Thing thing) {
+        super(thing);
+    }
+
+    @Override
+    public void initialize() {
+        this.config = getConfigAs(SmartCocoonZoneConfiguration.class);
+        Set<String> deviceIds = new LinkedHashSet<>();
+        for (String deviceId : this.config.deviceIds.split(",")) {
+            if (!deviceId.isBlank()) {
+                deviceIds.add(deviceId.strip());
+            }
+        }
+        this.deviceIds = Collections.unmodifiableSet(deviceIds);
+        if (deviceIds.isEmpty()) {
+            updateStatus(ThingStatus.OFFLINE, ThingStatusDetail.CONFIGURATION_ERROR,
+                    "At least one device ID is required");
+            return;
+        }
+        updateStatus(ThingStatus.UNKNOWN);
+
+        SmartCocoonBridgeHandler bridgeHandler = this.getBridgeHandler();
+        if (bridgeHandler != null) {
+            // Registered first, so no change is missed between the aggregation and the registration
+            bridgeHandler.registerZoneHandler(this);
+            bridgeHandler.getExecutor().execute(() -> update(bridgeHandler.getFansSnapshot()));
+        }
+    }
+
+    @Override
+    public void dispose() {
+        SmartCocoonBridgeHandler bridgeHandler = this.getBridgeHandler();
+        if (bridgeHandler != null) {
+            bridgeHandler.unregisterZoneHandler(this.deviceIds, this);
+        }
+    }
+
+    /**
+     * @return device ids of the member fans
+     */
+    public Set<String> getDeviceIds() {
+        return this.deviceIds;
+    }
+
+    /**
+     * Aggregates all members from the fans of the account.
+     */
+    void update(SmartCocoonFansSnapshot snapshot) {
+        synchronized (this) {
+            this.members.clear();
+            this.fansOn = 0;
+            this.speedOfFansOn = 0;
+            for (String deviceId : this.deviceIds) {
+                FanInfoResultDTO fan = snapshot.get(deviceId);
+                if (fan != null) {
+                    this.members.put(deviceId, fan);
+                    add(fan, 1);
+                }
+            }
+        }
+        if (!isEmpty()) {
+            publishAggregate();
+            updateStatus(ThingStatus.ONLINE);
+        } else if (snapshot.getGeneration() == 0 || snapshot.isStale()) {
+            updateStatus(ThingStatus.OFFLINE, ThingStatusDetail.NOT_YET_READY, "Did not get the list of fans from API");
+        } else {
+            updateStatus(ThingStatus.OFFLINE, ThingStatusDetail.CONFIGURATION_ERROR,
+                    "None of the device IDs " + String.join(", ", this.deviceIds) + " is on the account");
+        }
+    }
+
+    /**
+     * Replaces the contribution of a single member.
+     *
+     * @param fan the new state of the member, or null if it is no longer on the account
+     */
+    void fanChanged(String deviceId, @Nullable FanInfoResultDTO fan) {
+        if (!this.deviceIds.contains(deviceId)) {
+            // Not a member, e.g. no longer after the configuration was edited
+            return;
+        }
+        boolean empty;
+        synchronized (this) {
+            FanInfoResultDTO previous = fan != null ? this.members.put(deviceId, fan) : this.members.remove(deviceId);
+            if (previous != null) {
+                add(previous, -1);
+            }
+            if (fan != null) {
+                add(fan, 1);
+            }
+            empty = this.members.isEmpty();
+        }
+        if (empty) {
+            updateStatus(ThingStatus.OFFLINE, ThingStatusDetail.CONFIGURATION_ERROR,
+                    "None of the device IDs " + String.join(", ", this.deviceIds) + " is on the account");
+            return;
+        }
+        publishAggregate();
+        if (getThing().getStatus() != ThingStatus.ONLINE) {
+            updateStatus(ThingStatus.ONLINE);
+        }
+    }
+
+    private void add(FanInfoResultDTO fan, int sign) {
+        if (fan.fan_on) {
+            this.fansOn += sign;
+            this.speedOfFansOn += sign * SmartCocoonAPI.toSpeed(fan.speed_level);
+        }
+    }
+
+    private synchronized boolean isEmpty() {
+        return this.members.isEmpty();
+    }
+
+    private void publishAggregate() {
+        int fansOn;
+        long speedOfFansOn;
+        synchronized (this) {
+            fansOn = this.fansOn;
+            speedOfFansOn = this.speedOfFansOn;
+        }
+        updateState(CHANNEL_FAN_SWITCH, OnOffType.from(fansOn > 0));
+        updateState(CHANNEL_ANY_ON, OnOffType.from(fansOn > 0));
+        updateState(CHANNEL_FANS_ON, new DecimalType(fansOn));
+        updateState(CHANNEL_AVERAGE_SPEED,
+                new QuantityType<>(fansOn > 0 ? (double) speedOfFansOn / fansOn : 0, Units.PERCENT));
+    }
+
+    @Override
+    public void handleCommand(ChannelUID channelUID, Command command) {
+        if (command instanceof RefreshType) {
+            if (!isEmpty()) {
+                publishAggregate();
+            }
+        } else if (CHANNEL_FAN_SWITCH.equals(channelUID.getId())) {
+            if (command == OnOffType.ON) {
+                setMembers("always_on", null);
+            } else if (command == OnOffType.OFF) {
+                setMembers("always_off", null);
+            }
+        } else if (CHANNEL_FAN_SPEED.equals(channelUID.getId())) {
+            try {
+                setMembers(null, Integer.parseInt(command.toString()));
+            } catch (NumberFormatException e) {
+                logger.warn("Invalid speed {} for zone {}", command, getThing().getUID());
+            }
+        }
+    }
+
+    /**
+     * Sends the mode and/or speed to all members at once.
+     */
+    private void setMembers(@Nullable String mode, @Nullable Integer speed) {
+        SmartCocoonBridgeHandler bridgeHandler = this.getBridgeHandler();
+        if (bridgeHandler == null) {
+            return;
+        }
+        SmartCocoonFanTarget target = new SmartCocoonFanTarget(mode, speed);
+        Map<String, SmartCocoonFanTarget> targets = new HashMap<>();
+        for (String deviceId : this.deviceIds) {
+            targets.put(deviceId, target);
+        }
+        long start = System.nanoTime();
+        bridgeHandler.setFans(targets).whenComplete((results, exception) -> {
+            if (exception != null) {
+                logger.warn("Failed to set zone {} to {}: {}", getThing().getUID(), target,
+                        SmartCocoonException.of(exception).getMessage());
+                return;
+            }
+            logger.debug("Set zone {} to {} in {} ms: {}", getThing().getUID(), target,
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start), results);
+            if (results.containsValue(SmartCocoonFanTarget.Result.FAILED)) {
+                logger.warn("Not all fans of zone {} were set to {}: {}", getThing().getUID(), target, results);
+            }
+        });
+    }
+
+    private @Nullable SmartCocoonBridgeHandler getBridgeHandler() {
+        Bridge bridge = getBridge();
+        if (bridge != null) {
+            return (SmartCocoonBridgeHandler) bridge.getHandler();
+        }
+        return null;
+    }
+}
@@ -0,0 +1,72 @@
+/**
+ * Copyright (c) 2010-2023 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.binding.smartcocoon.internal.api;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.eclipse.jdt.annotation.Nullable;
+import org.openhab.core.storage.Storage;
+
+/**
+ * The {@link MemoryStorage} is a {@link Storage} keeping its entries in memory only.
+ *
+ * @author Mike Fedotov - Initial contribution
+ */
+@NonNullByDefault
+public class MemoryStorage implements Storage<String> {
+
+    private final Map<String, String> entries = new ConcurrentHashMap<>();
+    private final AtomicLong puts = new AtomicLong();
+
+    @Override
+    public @Nullable String put(String key, @Nullable String value) {
+        puts.incrementAndGet();
+        return value != null ? entries.put(key, value) : entries.remove(key);
+    }
+
+    @Override
+    public @Nullable String remove(String key) {
+        return entries.remove(key);
+    }
+
+    @Override
+    public boolean containsKey(String key) {
+        return entries.containsKey(key);
+    }
+
+    @Override
+    public @Nullable String get(String key) {
+        return entries.get(key);
+    }
+
+    @Override
+    public Collection<String> getKeys() {
+        return entries.keySet();
+    }
+
+    @Override
+    public Collection<@Nullable String> getValues() {
+        return entries.values();
+    }
+
+    /**
+     * @return number of entries written or removed through {@link #put}
+     */
+    public long getPuts() {
+        return puts.get();
+    }
+}
@@ -0,0 +1,320 @@
+/**
+ * Copyright (c) 2010-2023 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.binding.smartcocoon.internal.api;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.eclipse.jdt.annotation.Nullable;
+import org.eclipse.jetty.client.HttpClient;
+import org.eclipse.jetty.client.WWWAuthenticationProtocolHandler;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.openhab.binding.smartcocoon.internal.SmartCocoonBridgeConfiguration;
+import org.openhab.binding.smartcocoon.internal.dto.FanInfoResultDTO;
+import org.openhab.binding.smartcocoon.internal.simulator.SmartCocoonCloudSimulator;
+
+import com.google.gson.Gson;
+
+/**
+ * Tests for {@link SmartCocoonAPI} against the {@link SmartCocoonCloudSimulator}.
+ *
+ * @author Mike Fedotov - Initial contribution
+ */
+@NonNullByDefault
+public class SmartCocoonAPITest {
+
+    private static final String USERNAME = "user@example.com";
+
+    private final SmartCocoonCloudSimulator.Settings settings = new SmartCocoonCloudSimulator.Settings();
+    private @NonNullByDefault({}) SmartCocoonCloudSimulator simulator;
+    private @NonNullByDefault({}) HttpClient httpClient;
+    private @NonNullByDefault({}) ScheduledExecutorService scheduler;
+    private @NonNullByDefault({}) SmartCocoonAPI api;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        settings.fansPerAccount = 3;
+        simulator = new SmartCocoonCloudSimulator(settings);
+        httpClient = new HttpClient();
+        httpClient.start();
+        // As configured by the binding, see SmartCocoonPollCoordinator
+        httpClient.getProtocolHandlers().remove(WWWAuthenticationProtocolHandler.NAME);
+        scheduler = Executors.newSingleThreadScheduledExecutor();
+        api = createAPI(null);
+    }
+
+    private SmartCocoonAPI createAPI(@Nullable SmartCocoonTokenStore tokenStore) {
+        SmartCocoonBridgeConfiguration configuration = new SmartCocoonBridgeConfiguration();
+        configuration.username = USERNAME;
+        configuration.password = "password";
+        configuration.apiUrl = simulator.getBaseUrl();
+        return new SmartCocoonAPI(configuration, httpClient, new Gson(), scheduler, new SmartCocoonRequestLimiter(1),
+                tokenStore, Runnable::run);
+    }
+
+    @AfterEach
+    public void tearDown() throws Exception {
+        api.dispose();
+        scheduler.shutdownNow();
+        httpClient.stop();
+        simulator.close();
+    }
+
+    @Test
+    public void unchangedFansAreNotParsedAgain() throws Exception {
+        SmartCocoonFansSnapshot first = await(api.getFansAsync(SmartCocoonFansSnapshot.EMPTY));
+        assertEquals(1, first.getGeneration());
+        assertEquals(Set.copyOf(simulator.getDeviceIds(USERNAME)), first.getFans().keySet());
+        assertEquals(first.getFans().keySet(), first.getChangedFans());
+
+        SmartCocoonFansSnapshot second = await(api.getFansAsync(first));
+        assertEquals(1, second.getGeneration());
+        assertFalse(second.hasChanges());
+        assertSame(first.getFans(), second.getFans());
+        assertEquals(1, api.getMetrics().getUnchangedPolls());
+        assertEquals(1, simulator.getLogins());
+    }
+
+    @Test
+    public void largeAccountIsPolled() throws Exception {
+        settings.fansPerAccount = 10000;
+
+        SmartCocoonFansSnapshot first = await(api.getFansAsync(SmartCocoonFansSnapshot.EMPTY));
+        assertEquals(10000, first.getFans().size());
+        String deviceId = simulator.getDeviceIds(USERNAME).get(9999);
+        simulator.setFan(USERNAME, deviceId, "always_off", 0);
+
+        SmartCocoonFansSnapshot second = await(api.getFansAsync(first));
+        assertEquals(Set.of(deviceId), second.getChangedFans());
+        assertEquals(10000, second.getFans().size());
+    }
+
+    @Test
+    public void baseUrlWithTrailingSlashIsAccepted() throws Exception {
+        SmartCocoonBridgeConfiguration configuration = new SmartCocoonBridgeConfiguration();
+        configuration.username = USERNAME;
+        configuration.password = "password";
+        configuration.apiUrl = " " + simulator.getBaseUrl() + "/ ";
+        SmartCocoonAPI api = new SmartCocoonAPI(configuration, httpClient, new Gson(), scheduler,
+                new SmartCocoonRequestLimiter(1), null, Runnable::run);
+        try {
+            assertEquals(3, await(api.getFansAsync(SmartCocoonFansSnapshot.EMPTY)).getFans().size());
+        } finally {
+            api.dispose();
+        }
+    }
+
+    @Test
+    public void changedFanIsReported() throws Exception {
+        SmartCocoonFansSnapshot first = await(api.getFansAsync(SmartCocoonFansSnapshot.EMPTY));
+        String deviceId = simulator.getDeviceIds(USERNAME).get(1);
+        simulator.setFan(USERNAME, deviceId, "always_off", 0);
+
+        SmartCocoonFansSnapshot second = await(api.getFansAsync(first));
+
+        assertEquals(2, second.getGeneration());
+        assertEquals(Set.of(deviceId), second.getChangedFans());
+        FanInfoResultDTO fan = second.get(deviceId);
+        assertNotNull(fan);
+        assertEquals("always_off", fan.mode);
+        assertFalse(fan.fan_on);
+    }
+
+    @Test
+    public void commandIsApplied() throws Exception {
+        SmartCocoonFansSnapshot fans = await(api.getFansAsync(SmartCocoonFansSnapshot.EMPTY));
+        List<String> deviceIds = simulator.getDeviceIds(USERNAME);
+        FanInfoResultDTO fan = fans.get(deviceIds.get(1));
+        assertNotNull(fan);
+        String fanId = fan.id;
+        assertNotNull(fanId);
+
+        await(api.setFanStateAsync(fanId, "always_on", 50));
+        FanInfoResultDTO actual = await(api.getFanAsync(fanId));
+
+        assertEquals(deviceIds.get(1), actual.fan_id);
+        assertEquals("always_on", actual.mode);
+        assertEquals(SmartCocoonAPI.toSpeedLevel(50), actual.speed_level);
+        assertTrue(actual.fan_on);
+    }
+
+    @Test
+    public void automaticModeIsApplied() throws Exception {
+        SmartCocoonFansSnapshot fans = await(api.getFansAsync(SmartCocoonFansSnapshot.EMPTY));
+        FanInfoResultDTO fan = fans.get(simulator.getDeviceIds(USERNAME).get(2));
+        assertNotNull(fan);
+        String fanId = fan.id;
+        assertNotNull(fanId);
+
+        await(api.setFanModeAsync(fanId, "eco"));
+
+        assertEquals("eco", await(api.getFanAsync(fanId)).mode);
+    }
+
+    @Test
+    public void unknownModeIsNotSent() throws Exception {
+        long requests = simulator.getRequests();
+
+        assertTrue(api.setFanModeAsync("1", "turbo").isCompletedExceptionally());
+        assertEquals(requests, simulator.getRequests());
+    }
+
+    @Test
+    public void concurrentRequestsShareOneLogin() throws Exception {
+        List<CompletableFuture<SmartCocoonFansSnapshot>> polls = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            polls.add(api.getFansAsync(SmartCocoonFansSnapshot.EMPTY));
+        }
+
+        for (CompletableFuture<SmartCocoonFansSnapshot> poll : polls) {
+            assertEquals(3, await(poll).getFans().size());
+        }
+        assertEquals(1, simulator.getLogins());
+        assertEquals(1, api.getMetrics().getLogins());
+    }
+
+    @Test
+    public void rejectedTokenCausesOneLogin() throws Exception {
+        // Logins are spaced apart, a restarted account reuses the stored token instead
+        MemoryStorage storage = new MemoryStorage();
+        SmartCocoonAPI first = createAPI(new SmartCocoonTokenStore(storage, "account", USERNAME, "password"));
+        await(first.getFansAsync(SmartCocoonFansSnapshot.EMPTY));
+        first.dispose();
+        SmartCocoonAPI restarted = createAPI(new SmartCocoonTokenStore(storage, "account", USERNAME, "password"));
+        simulator.expireTokens();
+
+        List<CompletableFuture<SmartCocoonFansSnapshot>> polls = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            polls.add(restarted.getFansAsync(SmartCocoonFansSnapshot.EMPTY));
+        }
+
+        try {
+            for (CompletableFuture<SmartCocoonFansSnapshot> poll : polls) {
+                assertEquals(3, await(poll).getFans().size());
+            }
+        } finally {
+            restarted.dispose();
+        }
+        assertTrue(simulator.getUnauthorized() > 0);
+        assertEquals(2, simulator.getLogins());
+    }
+
+    @Test
+    public void concurrentCommandsAreQueued() throws Exception {
+        settings.fansPerAccount = 10;
+        SmartCocoonFansSnapshot fans = await(api.getFansAsync(SmartCocoonFansSnapshot.EMPTY));
+        List<String> fanIds = new ArrayList<>();
+        for (FanInfoResultDTO fan : fans.getFans().values()) {
+            fanIds.add(Objects.requireNonNull(fan.id));
+        }
+        settings.latency = Duration.ofMillis(200);
+
+        List<CompletableFuture<@Nullable Void>> commands = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            commands.add(api.setFanSpeedAsync(fanIds.get(i % fanIds.size()), i));
+        }
+        // The commands wait in the queue of the account, neither holding a thread nor a connection
+        assertTrue(api.getRequestScheduler().getWaiting() > 90);
+        assertTrue(api.getRequestScheduler().getInFlight() <= 4);
+        scheduler.submit(() -> null).get(1, TimeUnit.SECONDS);
+
+        CompletableFuture.allOf(commands.toArray(CompletableFuture[]::new)).get(60, TimeUnit.SECONDS);
+        assertEquals(100, simulator.getUpdates());
+        assertTrue(simulator.getMaxConcurrentRequests() <= 4);
+        assertEquals(0, simulator.getThrottled());
+        assertEquals(0, api.getRequestScheduler().getWaiting());
+        assertEquals(0, api.getRequestScheduler().getInFlight());
+    }
+
+    @Test
+    public void longRetryAfterIsNotWaitedFor() throws Exception {
+        await(api.getFansAsync(SmartCocoonFansSnapshot.EMPTY));
+        settings.maxRequestsPerSecond = 0.01;
+        settings.retryAfterSeconds = 60;
+
+        long start = System.nanoTime();
+        CompletableFuture<SmartCocoonFansSnapshot> fans = api.getFansAsync(SmartCocoonFansSnapshot.EMPTY);
+
+        assertThrows(ExecutionException.class, () -> fans.get(5, TimeUnit.SECONDS));
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(5));
+        assertEquals(1, simulator.getThrottled());
+        assertEquals(0, api.getMetrics().getRetries());
+    }
+
+    @Test
+    public void outageIsFailedFast() throws Exception {
+        SmartCocoonFansSnapshot first = await(api.getFansAsync(SmartCocoonFansSnapshot.EMPTY));
+        long requests = simulator.getRequests();
+        settings.errorRate = 1;
+
+        // Retries of the first polls fail until the circuit opens
+        long start = System.nanoTime();
+        for (int i = 0; i < 2; i++) {
+            assertThrows(ExecutionException.class, () -> api.getFansAsync(first).get(20, TimeUnit.SECONDS));
+        }
+        long outageRequests = simulator.getRequests() - requests;
+        assertEquals(SmartCocoonCircuitBreaker.State.OPEN, api.getCircuitBreaker().getState());
+        assertEquals(5, outageRequests);
+        assertEquals(outageRequests, simulator.getFailed());
+
+        // While open, polls and commands fail at once without reaching the cloud
+        String fanId = Objects.requireNonNull(first.get(simulator.getDeviceIds(USERNAME).get(0))).id;
+        long rejections = api.getMetrics().getCircuitRejections();
+        for (int i = 0; i < 10; i++) {
+            assertThrows(ExecutionException.class, () -> api.getFansAsync(first).get(1, TimeUnit.SECONDS));
+            assertThrows(ExecutionException.class,
+                    () -> api.setFanModeAsync(Objects.requireNonNull(fanId), "always_on").get(1, TimeUnit.SECONDS));
+        }
+        assertEquals(outageRequests, simulator.getRequests() - requests);
+        assertEquals(rejections + 20, api.getMetrics().getCircuitRejections());
+
+        // The cloud is probed again once the minimum open period of 30 s passed
+        Duration recovery = Duration.ofNanos(System.nanoTime() - start)
+                .plus(Duration.between(Instant.now(), api.getCircuitBreaker().getOpenUntil()));
+        assertTrue(recovery.compareTo(Duration.ofSeconds(45)) < 0, "recovery after " + recovery);
+    }
+
+    @Test
+    public void longPollReturnsOnChange() throws Exception {
+        SmartCocoonFansSnapshot first = await(api.getFansAsync(SmartCocoonFansSnapshot.EMPTY));
+        String deviceId = simulator.getDeviceIds(USERNAME).get(0);
+
+        long start = System.nanoTime();
+        CompletableFuture<SmartCocoonFansSnapshot> watch = api.watchFansAsync(first, Duration.ofSeconds(30));
+        Thread.sleep(200);
+        assertFalse(watch.isDone());
+        simulator.setFan(USERNAME, deviceId, "always_off", 3);
+
+        SmartCocoonFansSnapshot changed = await(watch);
+        assertEquals(Set.of(deviceId), changed.getChangedFans());
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(10));
+    }
+
+    private static <T> T await(CompletableFuture<T> future) throws Exception {
+        return future.get(10, TimeUnit.SECONDS);
+    }
+}
@@ -0,0 +1,153 @@
+/**
+ * Copyright (c) 2010-2023 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.binding.smartcocoon.internal.api;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.openhab.binding.smartcocoon.internal.SmartCocoonException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests for {@link SmartCocoonAuthenticator}.
+ *
+ * @author Mike Fedotov - Initial contribution
+ */
+@NonNullByDefault
+public class SmartCocoonAuthenticatorTest {
+
+    private static final int CALLERS = 16;
+
+    private final SmartCocoonCredentials stored = new SmartCocoonCredentials("client", "stored", "uid", 0);
+    private final SmartCocoonCredentials renewed = new SmartCocoonCredentials("client", "renewed", "uid", 0);
+
+    private final AtomicInteger logins = new AtomicInteger();
+    private final CompletableFuture<SmartCocoonCredentials> pendingLogin = new CompletableFuture<>();
+    private @NonNullByDefault({}) ScheduledExecutorService scheduler;
+    private @NonNullByDefault({}) ExecutorService callers;
+
+    @BeforeEach
+    public void setUp() {
+        scheduler = Executors.newSingleThreadScheduledExecutor();
+        callers = Executors.newFixedThreadPool(CALLERS);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        callers.shutdownNow();
+        scheduler.shutdownNow();
+    }
+
+    private CompletableFuture<SmartCocoonCredentials> login() {
+        logins.incrementAndGet();
+        return pendingLogin;
+    }
+
+    @Test
+    public void concurrentCallersShareOneLogin() throws Exception {
+        SmartCocoonAuthenticator authenticator = new SmartCocoonAuthenticator(this::login, scheduler, null);
+
+        List<CompletableFuture<SmartCocoonCredentials>> results = callConcurrently(authenticator::getCredentials);
+        pendingLogin.complete(renewed);
+
+        for (CompletableFuture<SmartCocoonCredentials> result : results) {
+            assertSame(renewed, result.get(5, TimeUnit.SECONDS));
+        }
+        assertEquals(1, logins.get());
+        assertEquals(1, authenticator.getLogins());
+        assertTrue(authenticator.hasCredentials());
+    }
+
+    @Test
+    public void rejectedCredentialsCauseOneLogin() throws Exception {
+        SmartCocoonTokenStore tokenStore = new SmartCocoonTokenStore(new MemoryStorage(), "account", "user",
+                "password");
+        tokenStore.save(stored);
+        SmartCocoonAuthenticator authenticator = new SmartCocoonAuthenticator(this::login, scheduler, tokenStore);
+        SmartCocoonCredentials restored = authenticator.getCredentials().get(5, TimeUnit.SECONDS);
+        assertEquals("stored", restored.getAccessToken());
+        assertEquals(0, logins.get());
+
+        // Every caller got a 401 for the restored credentials
+        List<CompletableFuture<SmartCocoonCredentials>> results = callConcurrently(() -> {
+            authenticator.invalidate(restored);
+            return authenticator.getCredentials();
+        });
+        pendingLogin.complete(renewed);
+
+        for (CompletableFuture<SmartCocoonCredentials> result : results) {
+            assertSame(renewed, result.get(5, TimeUnit.SECONDS));
+        }
+        assertEquals(1, logins.get());
+        SmartCocoonCredentials reloaded = tokenStore.load();
+        assertNotNull(reloaded);
+        assertEquals("renewed", reloaded.getAccessToken());
+    }
+
+    @Test
+    public void rejectionOfReplacedCredentialsKeepsNewerOnes() throws Exception {
+        SmartCocoonAuthenticator authenticator = new SmartCocoonAuthenticator(this::login, scheduler, null);
+        pendingLogin.complete(renewed);
+        assertSame(renewed, authenticator.getCredentials().get(5, TimeUnit.SECONDS));
+
+        authenticator.invalidate(stored);
+
+        assertTrue(authenticator.hasCredentials());
+        assertSame(renewed, authenticator.getCredentials().get(5, TimeUnit.SECONDS));
+        assertEquals(1, logins.get());
+    }
+
+    @Test
+    public void loginIsNotRepeatedRightAfterAFailure() {
+        SmartCocoonAuthenticator authenticator = new SmartCocoonAuthenticator(this::login, scheduler, null);
+        pendingLogin.completeExceptionally(new SmartCocoonException("Unauthorized"));
+
+        assertThrows(ExecutionException.class, () -> authenticator.getCredentials().get(5, TimeUnit.SECONDS));
+        assertThrows(ExecutionException.class, () -> authenticator.getCredentials().get(5, TimeUnit.SECONDS));
+        assertEquals(1, logins.get());
+        assertFalse(authenticator.hasCredentials());
+    }
+
+    private List<CompletableFuture<SmartCocoonCredentials>> callConcurrently(
+            Callable<CompletableFuture<SmartCocoonCredentials>> call) throws Exception {
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<CompletableFuture<SmartCocoonCredentials>>> calls = new ArrayList<>();
+        for (int i = 0; i < CALLERS; i++) {
+            calls.add(callers.submit(() -> {
+                start.await();
+                return call.call();
+            }));
+        }
+        start.countDown();
+        List<CompletableFuture<SmartCocoonCredentials>> results = new ArrayList<>();
+        for (Future<CompletableFuture<SmartCocoonCredentials>> future : calls) {
+            results.add(future.get(5, TimeUnit.SECONDS));
+        }
+        return results;
+    }
+}
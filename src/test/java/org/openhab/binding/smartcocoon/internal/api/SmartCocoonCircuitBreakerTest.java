@@ -0,0 +1,122 @@
+/**
+ * Copyright (c) 2010-2023 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.binding.smartcocoon.internal.api;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.time.Duration;
+import java.time.Instant;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.junit.jupiter.api.Test;
+import org.openhab.binding.smartcocoon.internal.api.SmartCocoonCircuitBreaker.State;
+
+/**
+ * Tests for {@link SmartCocoonCircuitBreaker}.
+ *
+ * @author Mike Fedotov - Initial contribution
+ */
+@NonNullByDefault
+public class SmartCocoonCircuitBreakerTest {
+
+    private static final Duration MIN_OPEN = Duration.ofMillis(100);
+    private static final Duration MAX_OPEN = Duration.ofMillis(300);
+
+    private final SmartCocoonCircuitBreaker circuitBreaker = new SmartCocoonCircuitBreaker(3, MIN_OPEN, MAX_OPEN);
+
+    @Test
+    public void opensAfterConsecutiveFailures() {
+        failRequests(2);
+        assertEquals(State.CLOSED, circuitBreaker.getState());
+        assertTrue(circuitBreaker.tryAcquire());
+
+        failRequests(1);
+
+        assertEquals(State.OPEN, circuitBreaker.getState());
+        assertFalse(circuitBreaker.tryAcquire());
+        assertTrue(circuitBreaker.getOpenUntil().isAfter(Instant.now()));
+    }
+
+    @Test
+    public void successResetsFailures() {
+        failRequests(2);
+        circuitBreaker.onSuccess();
+        failRequests(2);
+
+        assertEquals(State.CLOSED, circuitBreaker.getState());
+    }
+
+    @Test
+    public void singleProbeClosesCircuit() throws InterruptedException {
+        failRequests(3);
+        Thread.sleep(MIN_OPEN.toMillis() + 20);
+
+        assertTrue(circuitBreaker.tryAcquire());
+        assertEquals(State.HALF_OPEN, circuitBreaker.getState());
+        assertFalse(circuitBreaker.tryAcquire());
+
+        circuitBreaker.onSuccess();
+
+        assertEquals(State.CLOSED, circuitBreaker.getState());
+        assertTrue(circuitBreaker.tryAcquire());
+    }
+
+    @Test
+    public void failedProbeOpensLongerUpToMaximum() throws InterruptedException {
+        failRequests(3);
+        Thread.sleep(MIN_OPEN.toMillis() + 20);
+        assertTrue(circuitBreaker.tryAcquire());
+
+        circuitBreaker.onFailure();
+
+        assertEquals(State.OPEN, circuitBreaker.getState());
+        Duration openFor = Duration.between(Instant.now(), circuitBreaker.getOpenUntil());
+        assertTrue(openFor.compareTo(MIN_OPEN) > 0, "open for " + openFor);
+
+        Thread.sleep(openFor.toMillis() + 20);
+        assertTrue(circuitBreaker.tryAcquire());
+        circuitBreaker.onFailure();
+
+        openFor = Duration.between(Instant.now(), circuitBreaker.getOpenUntil());
+        assertTrue(openFor.compareTo(MAX_OPEN) <= 0, "open for " + openFor);
+        assertTrue(openFor.compareTo(MAX_OPEN.minusMillis(50)) > 0, "open for " + openFor);
+    }
+
+    @Test
+    public void neutralProbeAllowsAnotherProbe() throws InterruptedException {
+        failRequests(3);
+        Thread.sleep(MIN_OPEN.toMillis() + 20);
+        assertTrue(circuitBreaker.tryAcquire());
+
+        circuitBreaker.onNeutral();
+
+        assertEquals(State.HALF_OPEN, circuitBreaker.getState());
+        assertTrue(circuitBreaker.tryAcquire());
+        assertFalse(circuitBreaker.tryAcquire());
+    }
+
+    @Test
+    public void neutralOutcomeKeepsFailures() {
+        failRequests(2);
+        circuitBreaker.onNeutral();
+        failRequests(1);
+
+        assertEquals(State.OPEN, circuitBreaker.getState());
+    }
+
+    private void failRequests(int failures) {
+        for (int i = 0; i < failures; i++) {
+            circuitBreaker.onFailure();
+        }
+    }
+}
@@ -0,0 +1,116 @@
+/**
+ * Copyright (c) 2010-2023 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.binding.smartcocoon.internal.api;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.junit.jupiter.api.Test;
+import org.openhab.binding.smartcocoon.internal.dto.FanInfoResultDTO;
+
+/**
+ * Tests for {@link SmartCocoonFansSnapshot}.
+ *
+ * @author Mike Fedotov - Initial contribution
+ */
+@NonNullByDefault
+public class SmartCocoonFansSnapshotTest {
+
+    @Test
+    public void refreshedFanInSameStateKeepsGeneration() {
+        SmartCocoonFansSnapshot snapshot = snapshot(1, fan("a", "always_on", 50));
+
+        assertSame(snapshot, snapshot.withFan(fan("a", "always_on", 50)));
+    }
+
+    @Test
+    public void refreshedFanInOtherStateIsNextGeneration() {
+        SmartCocoonFansSnapshot snapshot = snapshot(1, fan("a", "always_on", 50), fan("b", "always_off", 0));
+
+        SmartCocoonFansSnapshot refreshed = snapshot.withFan(fan("a", "always_on", 75));
+
+        assertEquals(2, refreshed.getGeneration());
+        assertEquals(Set.of("a"), refreshed.getChangedFans());
+        assertEquals(75, Objects.requireNonNull(refreshed.get("a")).speed_level);
+        assertSame(snapshot.get("b"), refreshed.get("b"));
+    }
+
+    @Test
+    public void snapshotOfCurrentFansIsKept() {
+        SmartCocoonFansSnapshot current = snapshot(1, fan("a", "always_on", 50));
+        SmartCocoonFansSnapshot polled = snapshot(2, fan("a", "always_on", 75));
+
+        assertSame(polled, polled.rebase(current, current));
+    }
+
+    @Test
+    public void confirmationOfOutdatedFansIsDropped() {
+        SmartCocoonFansSnapshot outdated = snapshot(1, fan("a", "always_on", 50));
+        SmartCocoonFansSnapshot current = outdated.withFan(fan("a", "always_on", 75));
+
+        assertSame(current, outdated.unchanged(Instant.now()).rebase(outdated, current));
+    }
+
+    @Test
+    public void fansAreComparedToCurrentFans() {
+        SmartCocoonFansSnapshot outdated = snapshot(1, fan("a", "always_on", 50), fan("b", "always_off", 0),
+                fan("c", "always_on", 25));
+        // Applied by another transport meanwhile
+        SmartCocoonFansSnapshot current = outdated.withFan(fan("a", "always_on", 75));
+        SmartCocoonFansSnapshot polled = snapshot(2, fan("a", "always_on", 75), fan("b", "always_on", 0));
+
+        SmartCocoonFansSnapshot rebased = polled.rebase(outdated, current);
+
+        assertEquals(current.getGeneration() + 1, rebased.getGeneration());
+        assertEquals(Set.of("b"), rebased.getChangedFans());
+        assertEquals(Set.of("c"), rebased.getRemovedFans());
+        assertEquals(polled.getFans(), rebased.getFans());
+    }
+
+    @Test
+    public void fansEqualToCurrentFansAreUnchanged() {
+        SmartCocoonFansSnapshot outdated = snapshot(1, fan("a", "always_on", 50));
+        SmartCocoonFansSnapshot current = outdated.withFan(fan("a", "always_on", 75));
+        SmartCocoonFansSnapshot polled = snapshot(2, fan("a", "always_on", 75));
+
+        SmartCocoonFansSnapshot rebased = polled.rebase(outdated, current);
+
+        assertEquals(current.getGeneration(), rebased.getGeneration());
+        assertFalse(rebased.hasChanges());
+        assertEquals(polled.getFetchedAt(), rebased.getFetchedAt());
+    }
+
+    static SmartCocoonFansSnapshot snapshot(long generation, FanInfoResultDTO... fans) {
+        Map<String, FanInfoResultDTO> fansById = new HashMap<>();
+        for (FanInfoResultDTO fan : fans) {
+            fansById.put(Objects.requireNonNull(fan.fan_id), fan);
+        }
+        return new SmartCocoonFansSnapshot(generation, Instant.now(), fansById, fansById.keySet(), Set.of(), false);
+    }
+
+    static FanInfoResultDTO fan(String fanId, String mode, int speedLevel) {
+        FanInfoResultDTO fan = new FanInfoResultDTO();
+        fan.id = "id-" + fanId;
+        fan.fan_id = fanId;
+        fan.mode = mode;
+        fan.speed_level = speedLevel;
+        fan.fan_on = !"always_off".equals(mode);
+        return fan;
+    }
+}
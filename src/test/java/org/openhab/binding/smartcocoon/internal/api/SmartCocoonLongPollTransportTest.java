@@ -0,0 +1,188 @@
+/**
+ * Copyright (c) 2010-2023 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.binding.smartcocoon.internal.api;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.eclipse.jetty.client.HttpClient;
+import org.eclipse.jetty.client.WWWAuthenticationProtocolHandler;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.openhab.binding.smartcocoon.internal.SmartCocoonBridgeConfiguration;
+import org.openhab.binding.smartcocoon.internal.SmartCocoonException;
+import org.openhab.binding.smartcocoon.internal.handler.SmartCocoonTestAccount;
+import org.openhab.binding.smartcocoon.internal.simulator.SmartCocoonCloudSimulator;
+
+import com.google.gson.Gson;
+
+/**
+ * Tests for {@link SmartCocoonLongPollTransport} against the {@link SmartCocoonCloudSimulator}.
+ *
+ * @author Mike Fedotov - Initial contribution
+ */
+@NonNullByDefault
+public class SmartCocoonLongPollTransportTest {
+
+    private static final String USERNAME = "user@example.com";
+    private static final Duration TIMEOUT = Duration.ofSeconds(10);
+    private static final Duration MIN_HOLD_TIME = Duration.ofMillis(500);
+    private static final Duration MIN_RETRY_DELAY = Duration.ofMillis(40);
+
+    private final SmartCocoonCloudSimulator.Settings settings = new SmartCocoonCloudSimulator.Settings();
+    private final AtomicReference<SmartCocoonFansSnapshot> applied = new AtomicReference<>(
+            SmartCocoonFansSnapshot.EMPTY);
+    private final List<SmartCocoonFansSnapshot> received = new CopyOnWriteArrayList<>();
+    // Simulator requests counted at each failure
+    private final List<Long> failureRequests = new CopyOnWriteArrayList<>();
+    private final List<Long> failureNanos = new CopyOnWriteArrayList<>();
+    private final List<SmartCocoonException> failures = new CopyOnWriteArrayList<>();
+
+    private @NonNullByDefault({}) SmartCocoonCloudSimulator simulator;
+    private @NonNullByDefault({}) HttpClient httpClient;
+    private @NonNullByDefault({}) ScheduledExecutorService scheduler;
+    private @NonNullByDefault({}) SmartCocoonAPI api;
+    private @NonNullByDefault({}) SmartCocoonLongPollTransport transport;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        settings.fansPerAccount = 3;
+        simulator = new SmartCocoonCloudSimulator(settings);
+        httpClient = new HttpClient();
+        httpClient.start();
+        // As configured by the binding, see SmartCocoonPollCoordinator
+        httpClient.getProtocolHandlers().remove(WWWAuthenticationProtocolHandler.NAME);
+        scheduler = Executors.newSingleThreadScheduledExecutor();
+        SmartCocoonBridgeConfiguration configuration = new SmartCocoonBridgeConfiguration();
+        configuration.username = USERNAME;
+        configuration.password = "password";
+        configuration.apiUrl = simulator.getBaseUrl();
+        api = new SmartCocoonAPI(configuration, httpClient, new Gson(), scheduler, new SmartCocoonRequestLimiter(1),
+                null, Runnable::run);
+        transport = new SmartCocoonLongPollTransport(api, scheduler, MIN_HOLD_TIME, MIN_RETRY_DELAY,
+                Duration.ofSeconds(1));
+        // Long polls compare to the fans of a first poll
+        applied.set(api.getFansAsync(SmartCocoonFansSnapshot.EMPTY).get(10, TimeUnit.SECONDS));
+    }
+
+    @AfterEach
+    public void tearDown() throws Exception {
+        transport.stop();
+        api.dispose();
+        scheduler.shutdownNow();
+        httpClient.stop();
+        simulator.close();
+    }
+
+    @Test
+    public void changesArePushed() throws Exception {
+        transport.start(listener());
+        Thread.sleep(200);
+        String deviceId = simulator.getDeviceIds(USERNAME).get(0);
+
+        simulator.setFan(USERNAME, deviceId, "always_off", 2);
+
+        SmartCocoonTestAccount.await(() -> !received.isEmpty(), TIMEOUT);
+        assertEquals(Set.of(deviceId), received.get(0).getChangedFans());
+        assertTrue(transport.isPushing());
+        assertTrue(failures.isEmpty());
+    }
+
+    @Test
+    public void longPollIsSentWhileCircuitIsOpen() throws Exception {
+        for (int i = 0; i < 5; i++) {
+            api.getCircuitBreaker().onFailure();
+        }
+        assertEquals(SmartCocoonCircuitBreaker.State.OPEN, api.getCircuitBreaker().getState());
+
+        transport.start(listener());
+        Thread.sleep(200);
+        simulator.setFan(USERNAME, simulator.getDeviceIds(USERNAME).get(1), "always_off", 2);
+
+        SmartCocoonTestAccount.await(() -> !received.isEmpty(), TIMEOUT);
+        assertEquals(0, api.getMetrics().getCircuitRejections());
+        assertEquals(SmartCocoonCircuitBreaker.State.OPEN, api.getCircuitBreaker().getState());
+    }
+
+    @Test
+    public void unheldLongPollsFallBackToPolling() throws Exception {
+        settings.longPolling = false;
+        long requests = simulator.getRequests();
+
+        transport.start(listener());
+
+        SmartCocoonTestAccount.await(() -> !failures.isEmpty(), TIMEOUT);
+        assertTrue(failures.get(0).getMessage().contains("not supported"), failures.get(0).getMessage());
+        assertFalse(transport.isPushing());
+        // The unheld answers are passed on as polled fans
+        assertEquals(3, received.size());
+        Thread.sleep(MIN_HOLD_TIME.toMillis() * 2);
+        assertEquals(3, simulator.getRequests() - requests);
+        assertEquals(1, failures.size());
+    }
+
+    @Test
+    public void failedLongPollsBackOff() throws Exception {
+        settings.errorRate = 1;
+        long requests = simulator.getRequests();
+
+        transport.start(listener());
+
+        SmartCocoonTestAccount.await(() -> failures.size() >= 6, TIMEOUT);
+        transport.stop();
+        assertFalse(transport.isPushing());
+        for (int i = 1; i < 6; i++) {
+            // Jittered over the upper half of min * 2^(i - 1)
+            long gapMillis = TimeUnit.NANOSECONDS.toMillis(failureNanos.get(i) - failureNanos.get(i - 1));
+            long backoffMillis = MIN_RETRY_DELAY.toMillis() << (i - 1);
+            assertTrue(gapMillis >= backoffMillis / 2, "retry " + i + " after " + gapMillis + " ms");
+            // Each long poll is sent once, the API does not retry it
+            assertEquals(i + 1, failureRequests.get(i) - requests, "requests at failure " + i);
+        }
+        assertEquals(0, api.getMetrics().getRetries());
+        // Long polls do not count towards the circuit breaker
+        assertEquals(SmartCocoonCircuitBreaker.State.CLOSED, api.getCircuitBreaker().getState());
+    }
+
+    private SmartCocoonTransport.Listener listener() {
+        return new SmartCocoonTransport.Listener() {
+            @Override
+            public SmartCocoonFansSnapshot getFansSnapshot() {
+                return applied.get();
+            }
+
+            @Override
+            public void onFans(SmartCocoonFansSnapshot previous, SmartCocoonFansSnapshot fans) {
+                applied.set(fans);
+                received.add(fans);
+            }
+
+            @Override
+            public void onFailure(SmartCocoonException exception) {
+                failureNanos.add(System.nanoTime());
+                failureRequests.add(simulator.getRequests());
+                failures.add(exception);
+            }
+        };
+    }
+}
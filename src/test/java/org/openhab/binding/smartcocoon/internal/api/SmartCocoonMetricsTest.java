@@ -0,0 +1,68 @@
+/**
+ * Copyright (c) 2010-2023 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.binding.smartcocoon.internal.api;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.junit.jupiter.api.Test;
+import org.openhab.binding.smartcocoon.internal.api.SmartCocoonMetrics.Endpoint;
+
+/**
+ * Tests of the {@link SmartCocoonMetrics} meters.
+ *
+ * @author Mike Fedotov - Initial contribution
+ */
+@NonNullByDefault
+public class SmartCocoonMetricsTest {
+
+    @Test
+    public void timerReportsTotalMeanMaxAndBuckets() {
+        SmartCocoonMetrics.Timer timer = new SmartCocoonMetrics().getRequestTimer(Endpoint.GET);
+        for (int i = 1; i <= 100; i++) {
+            timer.record(TimeUnit.MILLISECONDS.toNanos(i));
+        }
+
+        assertEquals(100, timer.count());
+        assertEquals(5050, timer.totalTime(TimeUnit.MILLISECONDS), 0.001);
+        assertEquals(50.5, timer.mean(TimeUnit.MILLISECONDS), 0.001);
+        assertEquals(100, timer.max(TimeUnit.MILLISECONDS), 0.001);
+
+        long[] bounds = SmartCocoonMetrics.Timer.getBucketBoundsMillis();
+        long[] counts = timer.cumulativeBucketCounts();
+        assertEquals(bounds.length, counts.length);
+        for (int i = 0; i < bounds.length; i++) {
+            assertEquals(Math.min(bounds[i], 100), counts[i], "bucket " + bounds[i] + " ms");
+        }
+    }
+
+    @Test
+    public void percentilesAreBucketBounds() {
+        SmartCocoonMetrics metrics = new SmartCocoonMetrics();
+        SmartCocoonMetrics.Timer timer = metrics.getRequestTimer(Endpoint.PUT);
+        assertEquals(0, timer.percentileMillis(0.5));
+
+        for (int i = 0; i < 90; i++) {
+            timer.record(TimeUnit.MILLISECONDS.toNanos(15));
+        }
+        for (int i = 0; i < 10; i++) {
+            timer.record(TimeUnit.MILLISECONDS.toNanos(400));
+        }
+
+        assertEquals(20, timer.percentileMillis(0.5));
+        assertEquals(500, timer.percentileMillis(0.95));
+        assertEquals(0, metrics.getRequestTimer(Endpoint.AUTH).count());
+    }
+}
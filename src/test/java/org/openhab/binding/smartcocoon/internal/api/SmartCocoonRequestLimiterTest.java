@@ -0,0 +1,91 @@
+/**
+ * Copyright (c) 2010-2023 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.binding.smartcocoon.internal.api;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests for {@link SmartCocoonRequestLimiter}.
+ *
+ * @author Mike Fedotov - Initial contribution
+ */
+@NonNullByDefault
+public class SmartCocoonRequestLimiterTest {
+
+    private final SmartCocoonRequestLimiter limiter = new SmartCocoonRequestLimiter(2);
+
+    @Test
+    public void operationsOverTheLimitWaitInOrder() {
+        List<CompletableFuture<Integer>> operations = new ArrayList<>();
+        List<Integer> started = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            int operation = i;
+            CompletableFuture<Integer> future = new CompletableFuture<>();
+            operations.add(future);
+            limiter.submit(() -> {
+                started.add(operation);
+                return future;
+            });
+        }
+        assertEquals(List.of(0, 1), started);
+        assertEquals(2, limiter.getRunning());
+        assertEquals(3, limiter.getWaiting());
+
+        operations.get(1).complete(1);
+        assertEquals(List.of(0, 1, 2), started);
+
+        operations.forEach(future -> future.complete(0));
+        assertEquals(List.of(0, 1, 2, 3, 4), started);
+        assertEquals(0, limiter.getRunning());
+        assertEquals(0, limiter.getWaiting());
+    }
+
+    @Test
+    public void manyOperationsCompletingAtOnceDoNotOverflowTheStack() {
+        CompletableFuture<Integer> first = new CompletableFuture<>();
+        CompletableFuture<Integer> second = new CompletableFuture<>();
+        limiter.submit(() -> first);
+        limiter.submit(() -> second);
+        List<CompletableFuture<Integer>> results = new ArrayList<>();
+        for (int i = 0; i < 100000; i++) {
+            int operation = i;
+            results.add(limiter.submit(() -> CompletableFuture.completedFuture(operation)));
+        }
+
+        first.complete(-1);
+
+        for (int i = 0; i < results.size(); i++) {
+            assertEquals(i, results.get(i).getNow(null));
+        }
+        assertEquals(1, limiter.getRunning());
+        second.complete(-1);
+        assertEquals(0, limiter.getRunning());
+    }
+
+    @Test
+    public void failingOperationReleasesItsSlot() {
+        CompletableFuture<Integer> failed = limiter.submit(() -> {
+            throw new IllegalStateException("failed");
+        });
+
+        assertTrue(failed.isCompletedExceptionally());
+        assertEquals(0, limiter.getRunning());
+    }
+}
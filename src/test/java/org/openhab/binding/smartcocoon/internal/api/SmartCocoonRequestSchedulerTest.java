@@ -0,0 +1,156 @@
+/**
+ * Copyright (c) 2010-2023 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.binding.smartcocoon.internal.api;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.eclipse.jdt.annotation.Nullable;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.openhab.binding.smartcocoon.internal.SmartCocoonException;
+import org.openhab.binding.smartcocoon.internal.api.SmartCocoonRequestScheduler.Priority;
+
+/**
+ * Tests for {@link SmartCocoonRequestScheduler}.
+ *
+ * @author Mike Fedotov - Initial contribution
+ */
+@NonNullByDefault
+public class SmartCocoonRequestSchedulerTest {
+
+    private @NonNullByDefault({}) ScheduledThreadPoolExecutor scheduler;
+    private final List<String> started = new ArrayList<>();
+
+    @BeforeEach
+    public void setUp() {
+        scheduler = new ScheduledThreadPoolExecutor(1);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        scheduler.shutdownNow();
+    }
+
+    @Test
+    public void requestsInFlightAreLimited() {
+        SmartCocoonRequestScheduler requestScheduler = createScheduler(2, 1000, 10);
+        CompletableFuture<@Nullable Void> first = new CompletableFuture<>();
+
+        requestScheduler.submit(Priority.POLL, () -> start("first", first));
+        requestScheduler.submit(Priority.POLL, () -> start("second", new CompletableFuture<>()));
+        requestScheduler.submit(Priority.POLL, () -> start("third", new CompletableFuture<>()));
+
+        assertEquals(List.of("first", "second"), started());
+        assertEquals(1, requestScheduler.getWaiting());
+
+        first.complete(null);
+
+        assertEquals(List.of("first", "second", "third"), started());
+        assertEquals(0, requestScheduler.getWaiting());
+        assertEquals(2, requestScheduler.getInFlight());
+    }
+
+    @Test
+    public void mostImportantRequestIsStartedFirst() {
+        SmartCocoonRequestScheduler requestScheduler = createScheduler(1, 1000, 10);
+        CompletableFuture<@Nullable Void> blocker = new CompletableFuture<>();
+        requestScheduler.submit(Priority.POLL, () -> start("blocker", blocker));
+
+        requestScheduler.submit(Priority.POLL, () -> start("poll", new CompletableFuture<>()));
+        requestScheduler.submit(Priority.REFRESH, () -> start("refresh", new CompletableFuture<>()));
+        requestScheduler.submit(Priority.COMMAND, () -> start("command", new CompletableFuture<>()));
+        assertEquals(1, requestScheduler.getWaiting(Priority.COMMAND));
+
+        blocker.complete(null);
+
+        assertEquals(List.of("blocker", "command"), started());
+    }
+
+    @Test
+    public void startRateIsLimited() throws Exception {
+        SmartCocoonRequestScheduler requestScheduler = createScheduler(10, 20, 1);
+
+        long start = System.nanoTime();
+        List<CompletableFuture<@Nullable Void>> results = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            results.add(requestScheduler.submit(Priority.POLL, () -> CompletableFuture.completedFuture(null)));
+        }
+        assertTrue(results.get(0).isDone());
+        assertFalse(results.get(2).isDone());
+        CompletableFuture.allOf(results.toArray(CompletableFuture[]::new)).get(5, TimeUnit.SECONDS);
+
+        // One request at once, then one every 50 ms
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(90));
+    }
+
+    @Test
+    public void singleRefillJobIsPending() throws Exception {
+        SmartCocoonRequestScheduler requestScheduler = createScheduler(10, 5, 1);
+        List<CompletableFuture<@Nullable Void>> results = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            results.add(requestScheduler.submit(Priority.POLL, () -> CompletableFuture.completedFuture(null)));
+            assertTrue(scheduler.getQueue().size() <= 1, scheduler.getQueue().size() + " refill jobs pending");
+        }
+
+        CompletableFuture.allOf(results.toArray(CompletableFuture[]::new)).get(5, TimeUnit.SECONDS);
+        assertEquals(0, requestScheduler.getWaiting());
+        assertTrue(scheduler.getQueue().isEmpty());
+    }
+
+    @Test
+    public void disposeFailsWaitingRequests() {
+        SmartCocoonRequestScheduler requestScheduler = createScheduler(1, 1000, 10);
+        CompletableFuture<@Nullable Void> inFlight = new CompletableFuture<>();
+        CompletableFuture<@Nullable Void> running = requestScheduler.submit(Priority.POLL,
+                () -> start("running", inFlight));
+        CompletableFuture<@Nullable Void> waiting = requestScheduler.submit(Priority.POLL,
+                () -> start("waiting", new CompletableFuture<>()));
+
+        requestScheduler.dispose();
+
+        ExecutionException e = assertThrows(ExecutionException.class, () -> waiting.get(1, TimeUnit.SECONDS));
+        assertInstanceOf(SmartCocoonException.class, e.getCause());
+        assertTrue(requestScheduler.submit(Priority.COMMAND, () -> start("late", new CompletableFuture<>()))
+                .isCompletedExceptionally());
+        inFlight.complete(null);
+        assertTrue(running.isDone() && !running.isCompletedExceptionally());
+        assertEquals(List.of("running"), started());
+    }
+
+    private SmartCocoonRequestScheduler createScheduler(int maxInFlight, double ratePerSecond, int burst) {
+        return new SmartCocoonRequestScheduler(scheduler, maxInFlight, ratePerSecond, burst,
+                new SmartCocoonMetrics.Timer());
+    }
+
+    private CompletableFuture<@Nullable Void> start(String name, CompletableFuture<@Nullable Void> request) {
+        synchronized (started) {
+            started.add(name);
+        }
+        return request;
+    }
+
+    private List<String> started() {
+        synchronized (started) {
+            return new ArrayList<>(started);
+        }
+    }
+}
@@ -0,0 +1,87 @@
+/**
+ * Copyright (c) 2010-2023 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.binding.smartcocoon.internal.api;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.openhab.binding.smartcocoon.internal.api.SmartCocoonFansSnapshotTest.*;
+
+import java.util.Objects;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.junit.jupiter.api.Test;
+import org.openhab.binding.smartcocoon.internal.dto.FanInfoResultDTO;
+
+import com.google.gson.Gson;
+
+/**
+ * Tests for {@link SmartCocoonSnapshotStore}.
+ *
+ * @author Mike Fedotov - Initial contribution
+ */
+@NonNullByDefault
+public class SmartCocoonSnapshotStoreTest {
+
+    private static final String KEY = "smartcocoon:account:home";
+
+    private final MemoryStorage storage = new MemoryStorage();
+    private final SmartCocoonSnapshotStore store = new SmartCocoonSnapshotStore(storage, KEY, new Gson());
+
+    @Test
+    public void restoredSnapshotIsStale() {
+        SmartCocoonFansSnapshot saved = snapshot(3, fan("a", "always_on", 5), fan("b", "eco", 0));
+
+        store.save(saved);
+        SmartCocoonFansSnapshot restored = store.load();
+
+        assertNotNull(restored);
+        assertTrue(restored.isStale());
+        assertFalse(restored.hasChanges());
+        assertEquals(3, restored.getGeneration());
+        assertEquals(saved.getFetchedAt().toEpochMilli(), restored.getFetchedAt().toEpochMilli());
+        assertEquals(saved.getFans().keySet(), restored.getFans().keySet());
+        FanInfoResultDTO fan = Objects.requireNonNull(restored.get("a"));
+        assertEquals("id-a", fan.id);
+        assertEquals("always_on", fan.mode);
+        assertEquals(5, fan.speed_level);
+        assertTrue(fan.fan_on);
+    }
+
+    @Test
+    public void snapshotIsStoredUnderTheKey() {
+        store.save(snapshot(1, fan("a", "always_on", 5)));
+
+        assertEquals(1, storage.getKeys().size());
+        assertNotNull(storage.get(KEY));
+        assertNull(new SmartCocoonSnapshotStore(storage, "smartcocoon:account:other", new Gson()).load());
+    }
+
+    @Test
+    public void staleSnapshotIsNotSavedAgain() {
+        store.save(snapshot(1, fan("a", "always_on", 5)));
+        SmartCocoonFansSnapshot restored = Objects.requireNonNull(store.load());
+        long puts = storage.getPuts();
+
+        store.save(restored);
+        store.save(SmartCocoonFansSnapshot.EMPTY);
+
+        assertEquals(puts, storage.getPuts());
+    }
+
+    @Test
+    public void unreadableSnapshotIsDropped() {
+        storage.put(KEY, "{\"generation\":");
+
+        assertNull(store.load());
+        assertFalse(storage.containsKey(KEY));
+    }
+}
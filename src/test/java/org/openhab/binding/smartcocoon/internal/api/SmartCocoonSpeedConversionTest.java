@@ -0,0 +1,52 @@
+/**
+ * Copyright (c) 2010-2023 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.binding.smartcocoon.internal.api;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests for the conversion between the speed of the fanSpeed channel and the fan's speed level in
+ * {@link SmartCocoonAPI}.
+ *
+ * @author Mike Fedotov - Initial contribution
+ */
+@NonNullByDefault
+public class SmartCocoonSpeedConversionTest {
+
+    @Test
+    public void boundsAreMapped() {
+        assertEquals(0, SmartCocoonAPI.toSpeedLevel(0));
+        assertEquals(12, SmartCocoonAPI.toSpeedLevel(100));
+        assertEquals(0, SmartCocoonAPI.toSpeed(0));
+        assertEquals(100, SmartCocoonAPI.toSpeed(12));
+    }
+
+    @Test
+    public void everySpeedLevelSurvivesTheRoundTrip() {
+        for (int speedLevel = 0; speedLevel <= 12; speedLevel++) {
+            assertEquals(speedLevel, SmartCocoonAPI.toSpeedLevel(SmartCocoonAPI.toSpeed(speedLevel)));
+        }
+    }
+
+    @Test
+    public void higherSpeedNeverLowersTheSpeedLevel() {
+        for (int speed = 1; speed <= 100; speed++) {
+            int speedLevel = SmartCocoonAPI.toSpeedLevel(speed);
+            assertTrue(speedLevel >= SmartCocoonAPI.toSpeedLevel(speed - 1), "speed " + speed);
+            assertTrue(speedLevel <= 12, "speed " + speed);
+        }
+    }
+}
@@ -0,0 +1,91 @@
+/**
+ * Copyright (c) 2010-2023 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.binding.smartcocoon.internal.api;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.Objects;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests for {@link SmartCocoonTokenStore}.
+ *
+ * @author Mike Fedotov - Initial contribution
+ */
+@NonNullByDefault
+public class SmartCocoonTokenStoreTest {
+
+    private static final String KEY = "smartcocoon:account:test";
+
+    private final MemoryStorage storage = new MemoryStorage();
+    private final SmartCocoonCredentials credentials = new SmartCocoonCredentials("client", "secret-token",
+            "user@example.com", 1700000000L);
+
+    @Test
+    public void credentialsAreRestored() {
+        new SmartCocoonTokenStore(storage, KEY, "user@example.com", "password").save(credentials);
+
+        SmartCocoonCredentials restored = new SmartCocoonTokenStore(storage, KEY, "user@example.com", "password")
+                .load();
+
+        assertNotNull(restored);
+        assertEquals("client", restored.getClient());
+        assertEquals("secret-token", restored.getAccessToken());
+        assertEquals("user@example.com", restored.getUid());
+        assertEquals(1700000000L, restored.getExpiry());
+    }
+
+    @Test
+    public void tokenIsNotStoredInClear() {
+        new SmartCocoonTokenStore(storage, KEY, "user@example.com", "password").save(credentials);
+
+        String stored = Objects.requireNonNull(storage.get(KEY));
+        assertFalse(stored.contains("secret-token"));
+    }
+
+    @Test
+    public void credentialsOfOtherPasswordAreDropped() {
+        new SmartCocoonTokenStore(storage, KEY, "user@example.com", "password").save(credentials);
+
+        assertNull(new SmartCocoonTokenStore(storage, KEY, "user@example.com", "changed").load());
+        assertFalse(storage.containsKey(KEY));
+    }
+
+    @Test
+    public void credentialsOfOtherUsernameAreDropped() {
+        new SmartCocoonTokenStore(storage, KEY, "user@example.com", "password").save(credentials);
+
+        assertNull(new SmartCocoonTokenStore(storage, KEY, "other@example.com", "password").load());
+        assertFalse(storage.containsKey(KEY));
+    }
+
+    @Test
+    public void unreadableCredentialsAreDropped() {
+        storage.put(KEY, "not stored by the binding");
+
+        assertNull(new SmartCocoonTokenStore(storage, KEY, "user@example.com", "password").load());
+        assertFalse(storage.containsKey(KEY));
+    }
+
+    @Test
+    public void clearRemovesCredentials() {
+        SmartCocoonTokenStore tokenStore = new SmartCocoonTokenStore(storage, KEY, "user@example.com", "password");
+        tokenStore.save(credentials);
+
+        tokenStore.clear();
+
+        assertNull(tokenStore.load());
+    }
+}
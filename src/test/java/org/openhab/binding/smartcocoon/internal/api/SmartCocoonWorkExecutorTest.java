@@ -0,0 +1,167 @@
+/**
+ * Copyright (c) 2010-2023 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.binding.smartcocoon.internal.api;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.lang.reflect.Method;
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.eclipse.jdt.annotation.Nullable;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.openhab.binding.smartcocoon.internal.handler.SmartCocoonTestAccount;
+
+/**
+ * Tests for {@link SmartCocoonWorkExecutor}.
+ *
+ * @author Mike Fedotov - Initial contribution
+ */
+@NonNullByDefault
+public class SmartCocoonWorkExecutorTest {
+
+    private static final Duration TIMEOUT = Duration.ofSeconds(5);
+
+    private @Nullable SmartCocoonWorkExecutor workExecutor;
+
+    @AfterEach
+    public void tearDown() {
+        SmartCocoonWorkExecutor workExecutor = this.workExecutor;
+        if (workExecutor != null) {
+            workExecutor.dispose();
+        }
+    }
+
+    @Test
+    public void virtualThreadsAreLookedUpOnJava21() throws Exception {
+        boolean java21 = Runtime.version().feature() >= 21;
+        assertEquals(java21, SmartCocoonWorkExecutor.createVirtualThreadExecutor() != null);
+
+        SmartCocoonWorkExecutor workExecutor = create(new SmartCocoonWorkExecutor("smartcocoon-test", 4));
+
+        assertEquals(java21, workExecutor.isVirtualThreads());
+        Thread thread = runOn(workExecutor);
+        if (java21) {
+            Method isVirtual = Thread.class.getMethod("isVirtual");
+            assertEquals(Boolean.TRUE, isVirtual.invoke(thread));
+        }
+    }
+
+    @Test
+    public void givenVirtualThreadExecutorIsUsed() throws Exception {
+        ExecutorService virtualExecutor = Executors.newCachedThreadPool(task -> new Thread(task, "virtual"));
+        SmartCocoonWorkExecutor workExecutor = create(new SmartCocoonWorkExecutor("smartcocoon-test", 4,
+                virtualExecutor));
+
+        assertTrue(workExecutor.isVirtualThreads());
+        assertEquals("virtual", runOn(workExecutor).getName());
+        workExecutor.dispose();
+        assertTrue(virtualExecutor.isShutdown());
+    }
+
+    @Test
+    public void platformThreadPoolIsFallback() throws Exception {
+        SmartCocoonWorkExecutor workExecutor = create(new SmartCocoonWorkExecutor("smartcocoon-test", 4, null));
+
+        assertFalse(workExecutor.isVirtualThreads());
+        assertTrue(runOn(workExecutor).getName().contains("smartcocoon-test"));
+    }
+
+    @Test
+    public void runningTasksAreBoundedOnVirtualThreads() throws Exception {
+        assertRunningTasksBounded(create(new SmartCocoonWorkExecutor("smartcocoon-test", 4, threadPerTask())));
+    }
+
+    @Test
+    public void runningTasksAreBoundedOnFallbackPool() throws Exception {
+        assertRunningTasksBounded(create(new SmartCocoonWorkExecutor("smartcocoon-test", 4, null)));
+    }
+
+    @Test
+    public void failingTaskReleasesItsPermit() throws Exception {
+        SmartCocoonWorkExecutor workExecutor = create(new SmartCocoonWorkExecutor("smartcocoon-test", 1,
+                threadPerTask()));
+
+        workExecutor.execute(() -> {
+            throw new IllegalStateException("Failing task");
+        });
+
+        runOn(workExecutor);
+        // The permit is released after the task has counted down, so wait for it
+        SmartCocoonTestAccount.await(() -> workExecutor.getRunning() == 0, TIMEOUT);
+    }
+
+    private void assertRunningTasksBounded(SmartCocoonWorkExecutor workExecutor) throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(10);
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        for (int i = 0; i < 10; i++) {
+            workExecutor.execute(() -> {
+                maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    running.decrementAndGet();
+                    done.countDown();
+                }
+            });
+        }
+
+        SmartCocoonTestAccount.await(() -> workExecutor.getRunning() == 4 && workExecutor.getWaiting() == 6,
+                TIMEOUT);
+        Thread.sleep(100);
+        assertEquals(4, maxRunning.get());
+        release.countDown();
+
+        assertTrue(done.await(TIMEOUT.toMillis(), TimeUnit.MILLISECONDS));
+        assertEquals(4, maxRunning.get());
+        SmartCocoonTestAccount.await(() -> workExecutor.getRunning() == 0 && workExecutor.getWaiting() == 0,
+                TIMEOUT);
+    }
+
+    /**
+     * @return virtual thread executor, or a stand-in starting a platform thread per task before Java 21
+     */
+    private static ExecutorService threadPerTask() {
+        ExecutorService virtualExecutor = SmartCocoonWorkExecutor.createVirtualThreadExecutor();
+        return virtualExecutor != null ? virtualExecutor : Executors.newCachedThreadPool();
+    }
+
+    private SmartCocoonWorkExecutor create(SmartCocoonWorkExecutor workExecutor) {
+        this.workExecutor = workExecutor;
+        return workExecutor;
+    }
+
+    private static Thread runOn(SmartCocoonWorkExecutor workExecutor) throws Exception {
+        AtomicReference<@Nullable Thread> thread = new AtomicReference<>();
+        CountDownLatch done = new CountDownLatch(1);
+        workExecutor.execute(() -> {
+            thread.set(Thread.currentThread());
+            done.countDown();
+        });
+        assertTrue(done.await(TIMEOUT.toMillis(), TimeUnit.MILLISECONDS));
+        Thread result = thread.get();
+        assertNotNull(result);
+        return result;
+    }
+}
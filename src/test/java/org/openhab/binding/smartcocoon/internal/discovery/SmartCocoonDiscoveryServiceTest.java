@@ -0,0 +1,148 @@
+/**
+ * Copyright (c) 2010-2023 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.binding.smartcocoon.internal.discovery;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.openhab.binding.smartcocoon.internal.SmartCocoonBindingConstants.*;
+import static org.openhab.binding.smartcocoon.internal.handler.SmartCocoonTestAccount.USERNAME;
+
+import java.lang.reflect.Proxy;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.openhab.binding.smartcocoon.internal.handler.SmartCocoonBridgeHandler;
+import org.openhab.binding.smartcocoon.internal.handler.SmartCocoonTestAccount;
+import org.openhab.binding.smartcocoon.internal.simulator.SmartCocoonCloudSimulator;
+import org.openhab.core.config.discovery.DiscoveryListener;
+import org.openhab.core.config.discovery.DiscoveryResult;
+import org.openhab.core.thing.ThingUID;
+
+/**
+ * Tests for {@link SmartCocoonDiscoveryService} against the {@link SmartCocoonCloudSimulator}.
+ *
+ * @author Mike Fedotov - Initial contribution
+ */
+@NonNullByDefault
+public class SmartCocoonDiscoveryServiceTest {
+
+    // Polls only when asked to
+    private static final Map<String, Object> IDLE = Map.of("refreshInterval", 3600, "maxRefreshInterval", 3600);
+    private static final Duration TIMEOUT = Duration.ofSeconds(10);
+
+    private final List<DiscoveryResult> discovered = new CopyOnWriteArrayList<>();
+    private final List<ThingUID> removed = new CopyOnWriteArrayList<>();
+
+    private @NonNullByDefault({}) SmartCocoonTestAccount account;
+    private @NonNullByDefault({}) SmartCocoonBridgeHandler bridgeHandler;
+    private @NonNullByDefault({}) SmartCocoonDiscoveryService discoveryService;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        SmartCocoonCloudSimulator.Settings settings = new SmartCocoonCloudSimulator.Settings();
+        settings.fansPerAccount = 3;
+        account = new SmartCocoonTestAccount(settings);
+        bridgeHandler = account.startBridge(IDLE);
+        account.poll(bridgeHandler);
+
+        discoveryService = new SmartCocoonDiscoveryService();
+        discoveryService.setThingHandler(bridgeHandler);
+        discoveryService.addDiscoveryListener(listener());
+        discoveryService.activate();
+    }
+
+    @AfterEach
+    public void tearDown() {
+        discoveryService.deactivate();
+        account.close();
+    }
+
+    @Test
+    public void fansOfTheAccountAreReported() throws Exception {
+        List<String> deviceIds = account.getSimulator().getDeviceIds(USERNAME);
+        SmartCocoonTestAccount.await(() -> discovered.size() == deviceIds.size(), TIMEOUT);
+
+        for (String deviceId : deviceIds) {
+            DiscoveryResult result = getResult(deviceId);
+            assertEquals(new ThingUID(THING_TYPE_FAN, account.getBridgeUID(), deviceId), result.getThingUID());
+            assertEquals(THING_TYPE_FAN, result.getThingTypeUID());
+            assertEquals(account.getBridgeUID(), result.getBridgeUID());
+        }
+    }
+
+    @Test
+    public void deviceIdIsTheRepresentationProperty() throws Exception {
+        SmartCocoonTestAccount.await(() -> !discovered.isEmpty(), TIMEOUT);
+
+        for (DiscoveryResult result : discovered) {
+            assertEquals(CONFIG_PROPERTY_DEVICE_ID, result.getRepresentationProperty());
+            assertEquals(result.getThingUID().getId(), result.getProperties().get(CONFIG_PROPERTY_DEVICE_ID));
+        }
+    }
+
+    @Test
+    public void addedFanIsReported() throws Exception {
+        SmartCocoonTestAccount.await(() -> discovered.size() == 3, TIMEOUT);
+
+        String deviceId = account.getSimulator().addFan(USERNAME);
+        account.poll(bridgeHandler);
+
+        SmartCocoonTestAccount.await(() -> discovered.size() == 4, TIMEOUT);
+        assertEquals(deviceId, getResult(deviceId).getProperties().get(CONFIG_PROPERTY_DEVICE_ID));
+        assertTrue(removed.isEmpty());
+    }
+
+    @Test
+    public void removedFanIsWithdrawn() throws Exception {
+        SmartCocoonTestAccount.await(() -> discovered.size() == 3, TIMEOUT);
+        String deviceId = account.getSimulator().getDeviceIds(USERNAME).get(1);
+
+        account.getSimulator().removeFan(USERNAME, deviceId);
+        account.poll(bridgeHandler);
+
+        SmartCocoonTestAccount.await(() -> !removed.isEmpty(), TIMEOUT);
+        assertEquals(List.of(new ThingUID(THING_TYPE_FAN, account.getBridgeUID(), deviceId)), removed);
+        assertEquals(3, discovered.size());
+    }
+
+    private DiscoveryResult getResult(String deviceId) {
+        for (DiscoveryResult result : discovered) {
+            if (deviceId.equals(result.getProperties().get(CONFIG_PROPERTY_DEVICE_ID))) {
+                return result;
+            }
+        }
+        throw new AssertionError("Fan " + deviceId + " was not reported");
+    }
+
+    private DiscoveryListener listener() {
+        return (DiscoveryListener) Proxy.newProxyInstance(DiscoveryListener.class.getClassLoader(),
+                new Class<?>[] { DiscoveryListener.class }, (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "thingDiscovered":
+                            discovered.add((DiscoveryResult) args[1]);
+                            break;
+                        case "thingRemoved":
+                            removed.add((ThingUID) args[1]);
+                            break;
+                        default:
+                            break;
+                    }
+                    return null;
+                });
+    }
+}
@@ -0,0 +1,205 @@
+/**
+ * Copyright (c) 2010-2023 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.binding.smartcocoon.internal.handler;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.openhab.binding.smartcocoon.internal.SmartCocoonBindingConstants.*;
+import static org.openhab.binding.smartcocoon.internal.handler.SmartCocoonTestAccount.USERNAME;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.openhab.binding.smartcocoon.internal.api.MemoryStorage;
+import org.openhab.binding.smartcocoon.internal.api.SmartCocoonAPI;
+import org.openhab.binding.smartcocoon.internal.api.SmartCocoonFanTarget;
+import org.openhab.binding.smartcocoon.internal.api.SmartCocoonFansSnapshot;
+import org.openhab.binding.smartcocoon.internal.dto.FanInfoResultDTO;
+import org.openhab.binding.smartcocoon.internal.simulator.SmartCocoonCloudSimulator;
+import org.openhab.core.thing.ChannelUID;
+import org.openhab.core.thing.ThingStatus;
+import org.openhab.core.thing.ThingStatusDetail;
+import org.openhab.core.thing.ThingStatusInfo;
+import org.openhab.core.types.RefreshType;
+
+/**
+ * Tests for {@link SmartCocoonBridgeHandler} against the {@link SmartCocoonCloudSimulator}.
+ *
+ * @author Mike Fedotov - Initial contribution
+ */
+@NonNullByDefault
+public class SmartCocoonBridgeHandlerTest {
+
+    // Polls only when asked to
+    private static final Map<String, Object> IDLE = Map.of("refreshInterval", 3600, "maxRefreshInterval", 3600);
+
+    private @NonNullByDefault({}) SmartCocoonTestAccount account;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        SmartCocoonCloudSimulator.Settings settings = new SmartCocoonCloudSimulator.Settings();
+        settings.fansPerAccount = 3;
+        account = new SmartCocoonTestAccount(settings);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        account.close();
+    }
+
+    @Test
+    public void minimumRefreshIntervalAboveMaximumIsRejected() {
+        assertConfigurationError(Map.of("minRefreshInterval", 60, "maxRefreshInterval", 30));
+    }
+
+    @Test
+    public void nonPositiveRefreshIntervalsAreRejected() {
+        assertConfigurationError(Map.of("refreshInterval", 0));
+        assertConfigurationError(Map.of("minRefreshInterval", 0));
+        assertConfigurationError(Map.of("maxRefreshInterval", -1));
+    }
+
+    @Test
+    public void validRefreshIntervalsAreAccepted() throws Exception {
+        SmartCocoonBridgeHandler handler = account
+                .startBridge(Map.of("minRefreshInterval", 1, "refreshInterval", 1, "maxRefreshInterval", 1));
+
+        account.awaitOnline(handler.getThing());
+        assertNotNull(handler.getSmartCocoonAPI());
+    }
+
+    @Test
+    public void refreshOfUnchangedFanIsNotSaved() throws Exception {
+        String deviceId = simulator().getDeviceIds(USERNAME).get(0);
+        SmartCocoonBridgeHandler bridgeHandler = account.startBridge(IDLE);
+        SmartCocoonHandler handler = account.startFan(deviceId, Map.of());
+        account.poll(bridgeHandler);
+        account.awaitOnline(handler.getThing());
+        MemoryStorage storage = account.getStorage(BINDING_ID + ".fans");
+        long saves = storage.getPuts();
+        long requests = simulator().getRequests();
+
+        handler.handleCommand(new ChannelUID(handler.getThing().getUID(), CHANNEL_FAN_SWITCH), RefreshType.REFRESH);
+        SmartCocoonTestAccount.await(() -> simulator().getRequests() > requests, Duration.ofSeconds(5));
+        Thread.sleep(200);
+
+        assertEquals(saves, storage.getPuts());
+        long generation = bridgeHandler.getFansSnapshot().getGeneration();
+
+        simulator().setFan(USERNAME, deviceId, "always_off", 0);
+        simulator().setFan(USERNAME, deviceId, "always_on", 5);
+        handler.handleCommand(new ChannelUID(handler.getThing().getUID(), CHANNEL_FAN_SWITCH), RefreshType.REFRESH);
+
+        SmartCocoonTestAccount.await(() -> bridgeHandler.getFansSnapshot().getGeneration() > generation,
+                Duration.ofSeconds(5));
+        FanInfoResultDTO fan = bridgeHandler.getFansSnapshot().get(deviceId);
+        assertNotNull(fan);
+        assertEquals(5, fan.speed_level);
+    }
+
+    @Test
+    public void snapshotIsSavedRateLimitedAndRestoredStale() throws Exception {
+        String deviceId = simulator().getDeviceIds(USERNAME).get(0);
+        MemoryStorage storage = account.getStorage(BINDING_ID + ".fans");
+        String key = account.getBridgeUID().getAsString();
+        SmartCocoonBridgeHandler bridgeHandler = account.startBridge(IDLE);
+        account.poll(bridgeHandler);
+        SmartCocoonTestAccount.await(() -> storage.containsKey(key), Duration.ofSeconds(5));
+        assertEquals(1, storage.getPuts());
+
+        // Changes following the first save are saved once the interval passed, or on dispose
+        for (int speedLevel = 1; speedLevel <= 3; speedLevel++) {
+            simulator().setFan(USERNAME, deviceId, "always_on", speedLevel);
+            account.poll(bridgeHandler);
+        }
+        Thread.sleep(200);
+        assertEquals(1, storage.getPuts());
+        bridgeHandler.dispose();
+        assertEquals(2, storage.getPuts());
+
+        SmartCocoonBridgeHandler restarted = account.startBridge(IDLE);
+        SmartCocoonFansSnapshot restored = restarted.getFansSnapshot();
+        assertTrue(restored.isStale());
+        FanInfoResultDTO fan = restored.get(deviceId);
+        assertNotNull(fan);
+        assertEquals(3, fan.speed_level);
+    }
+
+    @Test
+    public void fansAreSetConcurrentlyWithinTheCommandLimit() throws Exception {
+        // Commands take longer than the scheduler needs to start five of them
+        SmartCocoonCloudSimulator.Settings settings = new SmartCocoonCloudSimulator.Settings();
+        settings.fansPerAccount = 12;
+        settings.latency = Duration.ofSeconds(1);
+        account.close();
+        account = new SmartCocoonTestAccount(settings);
+        SmartCocoonBridgeHandler bridgeHandler = account.startBridge(IDLE);
+        account.poll(bridgeHandler);
+        SmartCocoonFansSnapshot snapshot = bridgeHandler.getFansSnapshot();
+
+        SmartCocoonFanTarget target = new SmartCocoonFanTarget("always_on", 100);
+        Map<String, SmartCocoonFanTarget> targets = new HashMap<>();
+        for (String deviceId : simulator().getDeviceIds(USERNAME)) {
+            targets.put(deviceId, target);
+        }
+        targets.put("unknown", target);
+        SmartCocoonAPI api = bridgeHandler.getSmartCocoonAPI();
+        assertNotNull(api);
+        CompletableFuture<Map<String, SmartCocoonFanTarget.Result>> bulk = bridgeHandler.setFans(targets);
+        // The command limiter holds back commands before they reach the request scheduler of the account. A command
+        // completing releases the next one just before the scheduler frees its slot, so one may wait briefly.
+        int maxWaiting = 0;
+        while (!bulk.isDone()) {
+            maxWaiting = Math.max(maxWaiting, api.getRequestScheduler().getWaiting());
+            Thread.sleep(10);
+        }
+        Map<String, SmartCocoonFanTarget.Result> results = bulk.get(30, TimeUnit.SECONDS);
+
+        assertEquals(targets.keySet(), results.keySet());
+        assertEquals(SmartCocoonFanTarget.Result.UNKNOWN_FAN, results.get("unknown"));
+        int set = 0;
+        for (String deviceId : simulator().getDeviceIds(USERNAME)) {
+            FanInfoResultDTO fan = snapshot.get(deviceId);
+            assertNotNull(fan);
+            SmartCocoonFanTarget.Result expected = target.isReachedBy(fan) ? SmartCocoonFanTarget.Result.UNCHANGED
+                    : SmartCocoonFanTarget.Result.SET;
+            assertEquals(expected, results.get(deviceId), deviceId);
+            assertEquals("always_on/true", simulator().getFanState(USERNAME, deviceId));
+            assertEquals(SmartCocoonAPI.toSpeedLevel(100), simulator().getFanSpeedLevel(USERNAME, deviceId));
+            set += expected == SmartCocoonFanTarget.Result.SET ? 1 : 0;
+        }
+        assertTrue(set > 4, "Only " + set + " commands were sent");
+        assertTrue(maxWaiting <= 1, maxWaiting + " commands waited for the request scheduler");
+        assertEquals(4, simulator().getMaxConcurrentRequests());
+    }
+
+    private SmartCocoonCloudSimulator simulator() {
+        return account.getSimulator();
+    }
+
+    private void assertConfigurationError(Map<String, Object> configuration) {
+        SmartCocoonBridgeHandler handler = account.startBridge(configuration);
+
+        ThingStatusInfo status = handler.getThing().getStatusInfo();
+        assertEquals(ThingStatus.OFFLINE, status.getStatus(), configuration.toString());
+        assertEquals(ThingStatusDetail.CONFIGURATION_ERROR, status.getStatusDetail(), configuration.toString());
+        assertNull(handler.getSmartCocoonAPI());
+        handler.dispose();
+    }
+}
@@ -0,0 +1,124 @@
+/**
+ * Copyright (c) 2010-2023 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.binding.smartcocoon.internal.handler;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests for {@link SmartCocoonFanHistory}.
+ *
+ * @author Mike Fedotov - Initial contribution
+ */
+@NonNullByDefault
+public class SmartCocoonFanHistoryTest {
+
+    private static final double DELTA = 0.001;
+
+    private final long start = Instant.now().getEpochSecond();
+
+    @Test
+    public void emptyHistoryHasNoValues() {
+        SmartCocoonFanHistory history = createHistory(100);
+
+        assertEquals(0, history.getRuntimeToday(start));
+        assertEquals(0, history.getDutyCycle(start), DELTA);
+        assertEquals(0, history.getAverageSpeed(start), DELTA);
+    }
+
+    @Test
+    public void dutyCycleIsShareOfWindowTheFanRan() {
+        SmartCocoonFanHistory history = createHistory(100);
+
+        history.record(start, true, 50);
+        history.record(start + 50, false, 50);
+
+        assertEquals(0.5, history.getDutyCycle(start + 100), DELTA);
+        assertEquals(50, history.getAverageSpeed(start + 100), DELTA);
+    }
+
+    @Test
+    public void averageSpeedIsWeightedByTime() {
+        SmartCocoonFanHistory history = createHistory(100);
+
+        history.record(start, true, 40);
+        history.record(start + 10, true, 80);
+        history.record(start + 40, false, 80);
+
+        assertEquals(70, history.getAverageSpeed(start + 50), DELTA);
+        assertEquals(0.8, history.getDutyCycle(start + 50), DELTA);
+    }
+
+    @Test
+    public void windowMovesWithTime() {
+        SmartCocoonFanHistory history = createHistory(100);
+
+        history.record(start, true, 50);
+        history.record(start + 50, false, 50);
+        history.record(start + 150, true, 100);
+
+        assertEquals(0.25, history.getDutyCycle(start + 175), DELTA);
+        assertEquals(100, history.getAverageSpeed(start + 175), DELTA);
+        history.record(start + 175, false, 100);
+        assertEquals(0, history.getDutyCycle(start + 300), DELTA);
+    }
+
+    @Test
+    public void unchangedStateIsNotRecordedAgain() {
+        SmartCocoonFanHistory history = createHistory(1000);
+
+        history.record(start, true, 50);
+        for (int i = 1; i <= SmartCocoonFanHistory.CAPACITY * 2; i++) {
+            history.record(start + i, true, 50);
+        }
+
+        history.record(start + 200, false, 50);
+
+        // The first entry was not overwritten, the window still starts with it
+        assertEquals(0.2, history.getDutyCycle(start + 1000), DELTA);
+    }
+
+    @Test
+    public void windowCoversLastChangesOnly() {
+        SmartCocoonFanHistory history = createHistory(100000);
+
+        // Runs the first 1000 s, then alternates every second
+        history.record(start, true, 100);
+        for (int i = 0; i < SmartCocoonFanHistory.CAPACITY * 2; i++) {
+            history.record(start + 1000 + i, i % 2 == 1, 100);
+        }
+
+        assertEquals(0.5, history.getDutyCycle(start + 1000 + SmartCocoonFanHistory.CAPACITY * 2), 0.05);
+    }
+
+    @Test
+    public void runtimeTodayStartsAtMidnight() {
+        long midnight = LocalDate.now(ZoneOffset.UTC).plusDays(1).atStartOfDay(ZoneOffset.UTC).toEpochSecond();
+        SmartCocoonFanHistory history = createHistory(100);
+
+        history.record(midnight - 100, true, 50);
+
+        assertEquals(60, history.getRuntimeToday(midnight - 40));
+        assertEquals(50, history.getRuntimeToday(midnight + 50));
+    }
+
+    private SmartCocoonFanHistory createHistory(long windowSeconds) {
+        return new SmartCocoonFanHistory(windowSeconds, () -> ZoneOffset.UTC);
+    }
+}
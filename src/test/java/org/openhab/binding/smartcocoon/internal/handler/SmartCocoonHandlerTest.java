@@ -0,0 +1,110 @@
+/**
+ * Copyright (c) 2010-2023 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.binding.smartcocoon.internal.handler;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.openhab.binding.smartcocoon.internal.SmartCocoonBindingConstants.*;
+import static org.openhab.binding.smartcocoon.internal.handler.SmartCocoonTestAccount.USERNAME;
+
+import java.time.Duration;
+import java.util.Map;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.openhab.binding.smartcocoon.internal.api.SmartCocoonAPI;
+import org.openhab.binding.smartcocoon.internal.simulator.SmartCocoonCloudSimulator;
+import org.openhab.core.library.types.OnOffType;
+import org.openhab.core.library.types.StringType;
+import org.openhab.core.thing.ChannelUID;
+
+/**
+ * Tests for {@link SmartCocoonHandler} against the {@link SmartCocoonCloudSimulator}.
+ *
+ * @author Mike Fedotov - Initial contribution
+ */
+@NonNullByDefault
+public class SmartCocoonHandlerTest {
+
+    private static final int COALESCING_WINDOW_MS = 300;
+
+    private @NonNullByDefault({}) SmartCocoonTestAccount account;
+    private @NonNullByDefault({}) SmartCocoonCloudSimulator simulator;
+    private @NonNullByDefault({}) SmartCocoonHandler handler;
+    private @NonNullByDefault({}) String deviceId;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        SmartCocoonCloudSimulator.Settings settings = new SmartCocoonCloudSimulator.Settings();
+        settings.fansPerAccount = 2;
+        account = new SmartCocoonTestAccount(settings);
+        simulator = account.getSimulator();
+        deviceId = simulator.getDeviceIds(USERNAME).get(0);
+        simulator.setFan(USERNAME, deviceId, "always_off", 0);
+        account.startBridge(Map.of());
+        handler = account.startFan(deviceId, Map.of("commandCoalescingWindow", COALESCING_WINDOW_MS));
+        account.awaitOnline(handler.getThing());
+    }
+
+    @AfterEach
+    public void tearDown() {
+        account.close();
+    }
+
+    @Test
+    public void commandsWithinWindowAreMerged() throws Exception {
+        handler.handleCommand(channel(CHANNEL_FAN_SPEED), new StringType("30"));
+        handler.handleCommand(channel(CHANNEL_FAN_SWITCH), OnOffType.ON);
+        handler.handleCommand(channel(CHANNEL_FAN_SPEED), new StringType("60"));
+
+        SmartCocoonTestAccount.await(() -> simulator.getUpdates() > 0, Duration.ofSeconds(5));
+        // Give a second request the time to arrive
+        Thread.sleep(2 * COALESCING_WINDOW_MS);
+        assertEquals(1, simulator.getUpdates());
+        assertEquals(2, handler.getCollapsedCommands());
+        assertEquals("always_on/true", simulator.getFanState(USERNAME, deviceId));
+        // The latest speed wins
+        assertEquals(SmartCocoonAPI.toSpeedLevel(60), simulator.getFanSpeedLevel(USERNAME, deviceId));
+    }
+
+    @Test
+    public void latestModeWins() throws Exception {
+        handler.handleCommand(channel(CHANNEL_FAN_SWITCH), OnOffType.ON);
+        handler.handleCommand(channel(CHANNEL_FAN_SWITCH), OnOffType.OFF);
+        handler.handleCommand(channel(CHANNEL_FAN_SWITCH), OnOffType.ON);
+
+        SmartCocoonTestAccount.await(() -> simulator.getUpdates() > 0, Duration.ofSeconds(5));
+        Thread.sleep(2 * COALESCING_WINDOW_MS);
+        assertEquals(1, simulator.getUpdates());
+        assertEquals("always_on/true", simulator.getFanState(USERNAME, deviceId));
+        SmartCocoonTestAccount.await(() -> OnOffType.ON.equals(account.getState(channel(CHANNEL_FAN_SWITCH))),
+                Duration.ofSeconds(5));
+    }
+
+    @Test
+    public void commandsAfterWindowAreSentSeparately() throws Exception {
+        handler.handleCommand(channel(CHANNEL_FAN_SPEED), new StringType("30"));
+        SmartCocoonTestAccount.await(() -> simulator.getUpdates() == 1, Duration.ofSeconds(5));
+
+        handler.handleCommand(channel(CHANNEL_FAN_SPEED), new StringType("60"));
+        SmartCocoonTestAccount.await(() -> simulator.getUpdates() == 2, Duration.ofSeconds(5));
+
+        assertEquals(0, handler.getCollapsedCommands());
+        assertEquals(SmartCocoonAPI.toSpeedLevel(60), simulator.getFanSpeedLevel(USERNAME, deviceId));
+    }
+
+    private ChannelUID channel(String channelId) {
+        return new ChannelUID(handler.getThing().getUID(), channelId);
+    }
+}
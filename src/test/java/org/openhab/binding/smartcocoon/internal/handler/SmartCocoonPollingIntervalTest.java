@@ -0,0 +1,100 @@
+/**
+ * Copyright (c) 2010-2023 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.binding.smartcocoon.internal.handler;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.time.Duration;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests for {@link SmartCocoonPollingInterval}.
+ *
+ * @author Mike Fedotov - Initial contribution
+ */
+@NonNullByDefault
+public class SmartCocoonPollingIntervalTest {
+
+    private static final Duration MIN = Duration.ofSeconds(5);
+    private static final Duration BASE = Duration.ofSeconds(60);
+    private static final Duration MAX = Duration.ofSeconds(300);
+
+    private final SmartCocoonPollingInterval interval = new SmartCocoonPollingInterval(MIN, BASE, MAX);
+
+    @Test
+    public void unchangedPollsStretchTheIntervalUpToTheMaximum() {
+        assertEquals(Duration.ofSeconds(90), interval.onSuccess(false));
+        assertEquals(Duration.ofSeconds(135), interval.onSuccess(false));
+        for (int i = 0; i < 10; i++) {
+            interval.onSuccess(false);
+        }
+        assertEquals(MAX, interval.getCurrent());
+    }
+
+    @Test
+    public void changeResetsTheInterval() {
+        interval.onSuccess(false);
+        interval.onSuccess(false);
+        assertEquals(BASE, interval.onSuccess(true));
+    }
+
+    @Test
+    public void commandPollsQuicklyUntilAChangeIsSeen() {
+        interval.onSuccess(false);
+        assertEquals(MIN, interval.onCommand());
+        assertEquals(MIN, interval.onSuccess(false));
+        assertEquals(MIN, interval.onSuccess(false));
+        assertEquals(BASE, interval.onSuccess(true));
+    }
+
+    @Test
+    public void commandBurstEnds() {
+        interval.onCommand();
+        Duration delay = MIN;
+        int quickPolls = 0;
+        while (delay.equals(MIN) && quickPolls < 100) {
+            delay = interval.onSuccess(false);
+            quickPolls++;
+        }
+        assertTrue(quickPolls > 1 && quickPolls < 100);
+        assertTrue(delay.compareTo(BASE) > 0);
+    }
+
+    @Test
+    public void errorsBackOffWithJitterWithinTheBounds() {
+        for (int failures = 1; failures <= 10; failures++) {
+            Duration delay = interval.onError();
+            Duration backoff = BASE.multipliedBy(1L << Math.min(failures - 1, 20));
+            Duration upper = backoff.compareTo(MAX) > 0 ? MAX : backoff;
+            assertTrue(delay.compareTo(upper.dividedBy(2)) >= 0, "delay " + delay + " below half of " + upper);
+            assertTrue(delay.compareTo(upper) <= 0, "delay " + delay + " above " + upper);
+        }
+    }
+
+    @Test
+    public void successAfterErrorsStartsOverFromTheRefreshInterval() {
+        interval.onError();
+        interval.onError();
+        assertEquals(BASE, interval.onSuccess(true));
+        assertEquals(Duration.ofSeconds(90), interval.onSuccess(false));
+    }
+
+    @Test
+    public void resetEndsBurstAndBackoff() {
+        interval.onCommand();
+        assertEquals(BASE, interval.reset());
+        assertEquals(Duration.ofSeconds(90), interval.onSuccess(false));
+    }
+}
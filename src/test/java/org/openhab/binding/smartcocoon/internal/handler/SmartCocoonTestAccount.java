@@ -0,0 +1,280 @@
+/**
+ * Copyright (c) 2010-2023 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.binding.smartcocoon.internal.handler;
+
+import static org.openhab.binding.smartcocoon.internal.SmartCocoonBindingConstants.*;
+
+import java.io.IOException;
+import java.lang.reflect.Proxy;
+import java.time.Duration;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BooleanSupplier;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.eclipse.jdt.annotation.Nullable;
+import org.eclipse.jetty.client.HttpClient;
+import org.openhab.binding.smartcocoon.internal.api.MemoryStorage;
+import org.openhab.binding.smartcocoon.internal.api.SmartCocoonAPI;
+import org.openhab.binding.smartcocoon.internal.simulator.SmartCocoonCloudSimulator;
+import org.openhab.core.config.core.Configuration;
+import org.openhab.core.io.net.http.HttpClientFactory;
+import org.openhab.core.storage.StorageService;
+import org.openhab.core.thing.Bridge;
+import org.openhab.core.thing.ChannelUID;
+import org.openhab.core.thing.Thing;
+import org.openhab.core.thing.ThingStatus;
+import org.openhab.core.thing.ThingStatusInfo;
+import org.openhab.core.thing.ThingTypeUID;
+import org.openhab.core.thing.ThingUID;
+import org.openhab.core.thing.binding.ThingHandler;
+import org.openhab.core.thing.binding.ThingHandlerCallback;
+import org.openhab.core.thing.binding.builder.BridgeBuilder;
+import org.openhab.core.thing.binding.builder.ChannelBuilder;
+import org.openhab.core.thing.binding.builder.ThingBuilder;
+import org.openhab.core.types.RefreshType;
+import org.openhab.core.types.State;
+
+import com.google.gson.Gson;
+
+/**
+ * The {@link SmartCocoonTestAccount} runs an account bridge and its things against the
+ * {@link SmartCocoonCloudSimulator}, for tests of the handlers.
+ *
+ * The callback does what the framework does for the handlers: it tracks the thing status, resolves the bridge and
+ * records the published states, with all channels linked.
+ *
+ * @author Mike Fedotov - Initial contribution
+ */
+@NonNullByDefault
+public class SmartCocoonTestAccount implements AutoCloseable {
+
+    public static final String USERNAME = "user@example.com";
+
+    private final Gson gson = new Gson();
+    private final SmartCocoonCloudSimulator simulator;
+    private final SmartCocoonPollCoordinator pollCoordinator;
+    private final Map<String, MemoryStorage> storages = new ConcurrentHashMap<>();
+    private final ThingUID bridgeUID = new ThingUID(THING_TYPE_BRIDGE, "account");
+    private final Map<ThingUID, Bridge> bridges = new ConcurrentHashMap<>();
+    private final Map<ChannelUID, List<State>> states = new ConcurrentHashMap<>();
+    private final List<ThingHandler> handlers = Collections.synchronizedList(new ArrayList<>());
+
+    public SmartCocoonTestAccount(SmartCocoonCloudSimulator.Settings settings) throws IOException {
+        this.simulator = new SmartCocoonCloudSimulator(settings);
+        this.pollCoordinator = new SmartCocoonPollCoordinator(httpClientFactory());
+    }
+
+    @Override
+    public void close() {
+        List<ThingHandler> handlers;
+        synchronized (this.handlers) {
+            handlers = new ArrayList<>(this.handlers);
+            this.handlers.clear();
+        }
+        // Things before their bridge
+        Collections.reverse(handlers);
+        handlers.forEach(ThingHandler::dispose);
+        pollCoordinator.dispose();
+        simulator.close();
+    }
+
+    public SmartCocoonCloudSimulator getSimulator() {
+        return simulator;
+    }
+
+    /**
+     * @return storage of the given name, kept across restarts of the bridge
+     */
+    public MemoryStorage getStorage(String name) {
+        return storages.computeIfAbsent(name, n -> new MemoryStorage());
+    }
+
+    public ThingUID getBridgeUID() {
+        return bridgeUID;
+    }
+
+    /**
+     * Initializes the account bridge, polling every second unless configured otherwise.
+     *
+     * @param configuration overrides of the default configuration
+     */
+    public SmartCocoonBridgeHandler startBridge(Map<String, Object> configuration) {
+        Map<String, Object> properties = new HashMap<>();
+        properties.put("username", USERNAME);
+        properties.put("password", "password");
+        properties.put("apiUrl", simulator.getBaseUrl());
+        properties.put("refreshInterval", 1);
+        properties.put("minRefreshInterval", 1);
+        properties.putAll(configuration);
+        Bridge bridge = BridgeBuilder.create(THING_TYPE_BRIDGE, bridgeUID)
+                .withConfiguration(new Configuration(properties)).build();
+        bridges.put(bridgeUID, bridge);
+        SmartCocoonBridgeHandler handler = new SmartCocoonBridgeHandler(bridge, pollCoordinator, storageService(),
+                gson);
+        bridge.setHandler(handler);
+        handler.setCallback(callback());
+        handlers.add(handler);
+        handler.initialize();
+        return handler;
+    }
+
+    /**
+     * Polls the account now, e.g. for a bridge with a long refresh interval, and waits for the bridge to be online.
+     */
+    public void poll(SmartCocoonBridgeHandler bridgeHandler) throws InterruptedException {
+        SmartCocoonAPI api = bridgeHandler.getSmartCocoonAPI();
+        if (api == null) {
+            throw new AssertionError("Bridge is not initialized");
+        }
+        long polls = api.getMetrics().getPolls();
+        ChannelUID channelUID = new ChannelUID(bridgeUID, CHANNEL_POLLS);
+        // The bridge starts the polling asynchronously, a refresh before is ignored
+        await(() -> {
+            bridgeHandler.handleCommand(channelUID, RefreshType.REFRESH);
+            return api.getMetrics().getPolls() > polls;
+        }, Duration.ofSeconds(10));
+        awaitOnline(bridgeHandler.getThing());
+    }
+
+    /**
+     * Initializes the thing of a fan of the account, with its power and speed channels.
+     *
+     * @param configuration overrides of the default configuration
+     */
+    public SmartCocoonHandler startFan(String deviceId, Map<String, Object> configuration) {
+        Map<String, Object> properties = new HashMap<>();
+        properties.put("deviceId", deviceId);
+        properties.putAll(configuration);
+        Thing thing = buildThing(THING_TYPE_FAN, deviceId, properties);
+        SmartCocoonHandler handler = new SmartCocoonHandler(thing, ZoneId::systemDefault);
+        thing.setHandler(handler);
+        handler.setCallback(callback());
+        handlers.add(handler);
+        handler.initialize();
+        return handler;
+    }
+
+    /**
+     * Initializes the thing of a zone of the given fans of the account.
+     */
+    public SmartCocoonZoneHandler startZone(String id, List<String> deviceIds) {
+        Thing thing = buildThing(THING_TYPE_ZONE, id, Map.of("deviceIds", String.join(",", deviceIds)));
+        SmartCocoonZoneHandler handler = new SmartCocoonZoneHandler(thing);
+        thing.setHandler(handler);
+        handler.setCallback(callback());
+        handlers.add(handler);
+        handler.initialize();
+        return handler;
+    }
+
+    private Thing buildThing(ThingTypeUID thingTypeUID, String id, Map<String, Object> configuration) {
+        ThingUID thingUID = new ThingUID(thingTypeUID, bridgeUID, id);
+        ThingBuilder thingBuilder = ThingBuilder.create(thingTypeUID, thingUID).withBridge(bridgeUID)
+                .withConfiguration(new Configuration(configuration));
+        for (String channelId : List.of(CHANNEL_FAN_SWITCH, CHANNEL_FAN_SPEED, CHANNEL_ANY_ON, CHANNEL_FANS_ON,
+                CHANNEL_AVERAGE_SPEED)) {
+            thingBuilder.withChannel(ChannelBuilder.create(new ChannelUID(thingUID, channelId), null).build());
+        }
+        return thingBuilder.build();
+    }
+
+    /**
+     * @return the states published on the channel, oldest first
+     */
+    public List<State> getStates(ChannelUID channelUID) {
+        List<State> states = this.states.get(channelUID);
+        if (states == null) {
+            return List.of();
+        }
+        synchronized (states) {
+            return new ArrayList<>(states);
+        }
+    }
+
+    /**
+     * @return the state last published on the channel, or null if none was
+     */
+    public @Nullable State getState(ChannelUID channelUID) {
+        List<State> states = getStates(channelUID);
+        return states.isEmpty() ? null : states.get(states.size() - 1);
+    }
+
+    public void awaitOnline(Thing thing) throws InterruptedException {
+        await(() -> thing.getStatus() == ThingStatus.ONLINE, Duration.ofSeconds(10));
+    }
+
+    /**
+     * Waits until the condition is met.
+     *
+     * @throws AssertionError if it is not met in time
+     */
+    public static void await(BooleanSupplier condition, Duration timeout) throws InterruptedException {
+        long deadline = System.nanoTime() + timeout.toNanos();
+        while (!condition.getAsBoolean()) {
+            if (System.nanoTime() > deadline) {
+                throw new AssertionError("Condition not met within " + timeout);
+            }
+            Thread.sleep(20);
+        }
+    }
+
+    private static HttpClientFactory httpClientFactory() {
+        return (HttpClientFactory) Proxy.newProxyInstance(HttpClientFactory.class.getClassLoader(),
+                new Class<?>[] { HttpClientFactory.class }, (proxy, method, args) -> {
+                    if ("createHttpClient".equals(method.getName())) {
+                        return new HttpClient();
+                    }
+                    throw new UnsupportedOperationException(method.getName());
+                });
+    }
+
+    private StorageService storageService() {
+        return (StorageService) Proxy.newProxyInstance(StorageService.class.getClassLoader(),
+                new Class<?>[] { StorageService.class }, (proxy, method, args) -> {
+                    if ("getStorage".equals(method.getName())) {
+                        return getStorage((String) args[0]);
+                    }
+                    throw new UnsupportedOperationException(method.getName());
+                });
+    }
+
+    private ThingHandlerCallback callback() {
+        return (ThingHandlerCallback) Proxy.newProxyInstance(ThingHandlerCallback.class.getClassLoader(),
+                new Class<?>[] { ThingHandlerCallback.class }, (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "isChannelLinked":
+                            return Boolean.TRUE;
+                        case "statusUpdated":
+                            ((Thing) args[0]).setStatusInfo((ThingStatusInfo) args[1]);
+                            return null;
+                        case "stateUpdated":
+                            List<State> channelStates = states.computeIfAbsent((ChannelUID) args[0],
+                                    channelUID -> new ArrayList<>());
+                            synchronized (channelStates) {
+                                channelStates.add((State) args[1]);
+                            }
+                            return null;
+                        case "getBridge":
+                            return bridges.get((ThingUID) args[0]);
+                        default:
+                            return null;
+                    }
+                });
+    }
+}
@@ -0,0 +1,168 @@
+/**
+ * Copyright (c) 2010-2023 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.binding.smartcocoon.internal.handler;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.openhab.binding.smartcocoon.internal.SmartCocoonBindingConstants.*;
+
+import java.lang.reflect.Proxy;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.openhab.binding.smartcocoon.internal.api.SmartCocoonAPI;
+import org.openhab.binding.smartcocoon.internal.api.SmartCocoonFansSnapshot;
+import org.openhab.binding.smartcocoon.internal.dto.FanInfoResultDTO;
+import org.openhab.core.config.core.Configuration;
+import org.openhab.core.library.types.DecimalType;
+import org.openhab.core.library.types.OnOffType;
+import org.openhab.core.library.types.QuantityType;
+import org.openhab.core.library.unit.Units;
+import org.openhab.core.thing.ChannelUID;
+import org.openhab.core.thing.Thing;
+import org.openhab.core.thing.ThingStatus;
+import org.openhab.core.thing.ThingStatusDetail;
+import org.openhab.core.thing.ThingStatusInfo;
+import org.openhab.core.thing.ThingUID;
+import org.openhab.core.thing.binding.ThingHandlerCallback;
+import org.openhab.core.thing.binding.builder.ChannelBuilder;
+import org.openhab.core.thing.binding.builder.ThingBuilder;
+import org.openhab.core.types.State;
+
+/**
+ * Tests for the incrementally aggregated state of {@link SmartCocoonZoneHandler}.
+ *
+ * @author Mike Fedotov - Initial contribution
+ */
+@NonNullByDefault
+public class SmartCocoonZoneHandlerTest {
+
+    private static final List<String> CHANNELS = List.of(CHANNEL_FAN_SWITCH, CHANNEL_FAN_SPEED, CHANNEL_ANY_ON,
+            CHANNEL_FANS_ON, CHANNEL_AVERAGE_SPEED);
+
+    private final Map<String, State> states = new ConcurrentHashMap<>();
+    private final AtomicInteger stateUpdates = new AtomicInteger();
+    private @NonNullByDefault({}) Thing thing;
+    private @NonNullByDefault({}) SmartCocoonZoneHandler handler;
+
+    @BeforeEach
+    public void setUp() {
+        ThingUID thingUID = new ThingUID(THING_TYPE_ZONE, "living");
+        ThingBuilder thingBuilder = ThingBuilder.create(THING_TYPE_ZONE, thingUID)
+                .withConfiguration(new Configuration(Map.of("deviceIds", "a, b, c")));
+        for (String channelId : CHANNELS) {
+            thingBuilder.withChannel(ChannelBuilder.create(new ChannelUID(thingUID, channelId), null).build());
+        }
+        thing = thingBuilder.build();
+        handler = new SmartCocoonZoneHandler(thing);
+        handler.setCallback(callback());
+        // Without a bridge the zone is only aggregated by the test
+        handler.initialize();
+
+        SmartCocoonFansSnapshot snapshot = SmartCocoonFansSnapshot.EMPTY.withFan(fan("a", "always_on", 6))
+                .withFan(fan("b", "always_off", 0)).withFan(fan("c", "always_on", 12))
+                .withFan(fan("x", "always_on", 3));
+        handler.update(snapshot);
+    }
+
+    @Test
+    public void membersAreAggregated() {
+        assertEquals(ThingStatus.ONLINE, thing.getStatus());
+        assertAggregate(2, (SmartCocoonAPI.toSpeed(6) + SmartCocoonAPI.toSpeed(12)) / 2.0);
+    }
+
+    @Test
+    public void memberChangeReplacesItsContribution() {
+        handler.fanChanged("b", fan("b", "always_on", 3));
+        assertAggregate(3, (SmartCocoonAPI.toSpeed(6) + SmartCocoonAPI.toSpeed(3) + SmartCocoonAPI.toSpeed(12)) / 3.0);
+
+        handler.fanChanged("a", fan("a", "always_off", 6));
+        assertAggregate(2, (SmartCocoonAPI.toSpeed(3) + SmartCocoonAPI.toSpeed(12)) / 2.0);
+
+        handler.fanChanged("c", fan("c", "always_on", 9));
+        assertAggregate(2, (SmartCocoonAPI.toSpeed(3) + SmartCocoonAPI.toSpeed(9)) / 2.0);
+    }
+
+    @Test
+    public void nonMemberIsIgnored() {
+        int updates = stateUpdates.get();
+
+        handler.fanChanged("x", fan("x", "always_off", 0));
+        handler.fanChanged("y", fan("y", "always_on", 12));
+
+        assertEquals(updates, stateUpdates.get());
+        assertAggregate(2, (SmartCocoonAPI.toSpeed(6) + SmartCocoonAPI.toSpeed(12)) / 2.0);
+    }
+
+    @Test
+    public void removedMemberIsNoLongerCounted() {
+        handler.fanChanged("c", null);
+        assertAggregate(1, SmartCocoonAPI.toSpeed(6));
+
+        handler.fanChanged("a", null);
+        assertAggregate(0, 0);
+        assertEquals(ThingStatus.ONLINE, thing.getStatus());
+
+        handler.fanChanged("b", null);
+        assertEquals(ThingStatus.OFFLINE, thing.getStatus());
+        assertEquals(ThingStatusDetail.CONFIGURATION_ERROR, thing.getStatusInfo().getStatusDetail());
+
+        handler.fanChanged("b", fan("b", "eco", 4));
+        assertEquals(ThingStatus.ONLINE, thing.getStatus());
+        assertAggregate(1, SmartCocoonAPI.toSpeed(4));
+    }
+
+    private void assertAggregate(int fansOn, double averageSpeed) {
+        assertEquals(OnOffType.from(fansOn > 0), states.get(CHANNEL_ANY_ON));
+        assertEquals(OnOffType.from(fansOn > 0), states.get(CHANNEL_FAN_SWITCH));
+        assertEquals(new DecimalType(fansOn), states.get(CHANNEL_FANS_ON));
+        State average = states.get(CHANNEL_AVERAGE_SPEED);
+        assertInstanceOf(QuantityType.class, average);
+        QuantityType<?> quantity = (QuantityType<?>) average;
+        assertEquals(Units.PERCENT, quantity.getUnit());
+        assertEquals(averageSpeed, quantity.doubleValue(), 0.001);
+    }
+
+    private ThingHandlerCallback callback() {
+        return (ThingHandlerCallback) Proxy.newProxyInstance(ThingHandlerCallback.class.getClassLoader(),
+                new Class<?>[] { ThingHandlerCallback.class }, (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "isChannelLinked":
+                            return Boolean.TRUE;
+                        case "statusUpdated":
+                            ((Thing) args[0]).setStatusInfo((ThingStatusInfo) args[1]);
+                            return null;
+                        case "stateUpdated":
+                            stateUpdates.incrementAndGet();
+                            states.put(((ChannelUID) args[0]).getId(), (State) args[1]);
+                            return null;
+                        default:
+                            return null;
+                    }
+                });
+    }
+
+    private static FanInfoResultDTO fan(String deviceId, String mode, int speedLevel) {
+        FanInfoResultDTO fan = new FanInfoResultDTO();
+        fan.id = "id-" + deviceId;
+        fan.fan_id = deviceId;
+        fan.mode = mode;
+        fan.speed_level = speedLevel;
+        fan.fan_on = !"always_off".equals(mode);
+        return fan;
+    }
+}
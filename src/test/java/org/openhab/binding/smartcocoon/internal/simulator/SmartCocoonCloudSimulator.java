@@ -0,0 +1,576 @@
+/**
+ * Copyright (c) 2010-2023 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.binding.smartcocoon.internal.simulator;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.eclipse.jdt.annotation.Nullable;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * The {@link SmartCocoonCloudSimulator} is a local stand-in for the SmartCocoon cloud, for tests and load tests.
+ *
+ * It serves sign in, the fans list, single fans and fan updates as the binding uses them, with configurable latency,
+ * error rate, token lifetime and rate limit. Every account signing in gets its own fans, created on first use.
+ * The fans list supports entity tags and long polling through the wait parameter.
+ *
+ * @author Mike Fedotov - Initial contribution
+ */
+@NonNullByDefault
+public class SmartCocoonCloudSimulator implements AutoCloseable {
+
+    /**
+     * Behaviour of the simulated cloud.
+     */
+    public static class Settings {
+        public int fansPerAccount = 10;
+        // Added to every answer, plus a random jitter up to latencyJitter
+        public Duration latency = Duration.ZERO;
+        public Duration latencyJitter = Duration.ZERO;
+        // Fraction of requests answered with 503
+        public double errorRate = 0;
+        public Duration tokenLifetime = Duration.ofHours(1);
+        // Requests answered per second before answering 429, 0 for no limit
+        public double maxRequestsPerSecond = 0;
+        public int retryAfterSeconds = 1;
+        // Whether long polls are held until the fans change, otherwise they are answered at once
+        public boolean longPolling = true;
+    }
+
+    private static final String API_PATH = "/api";
+    private static final String AUTH_PATH = API_PATH + "/auth/sign_in";
+    private static final String FANS_PATH = API_PATH + "/fans";
+    private static final String[] MODES = { "always_on", "always_off", "auto", "eco" };
+
+    private final Settings settings;
+    private final Gson gson = new Gson();
+    private final HttpServer server;
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+    private final Map<String, Account> accounts = new ConcurrentHashMap<>();
+    private final Map<String, Token> tokens = new ConcurrentHashMap<>();
+    private final List<Consumer<String>> listeners = new CopyOnWriteArrayList<>();
+
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder logins = new LongAdder();
+    private final LongAdder throttled = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder unauthorized = new LongAdder();
+    private final LongAdder updates = new LongAdder();
+    private final AtomicInteger concurrentRequests = new AtomicInteger();
+    private final AtomicInteger maxConcurrentRequests = new AtomicInteger();
+
+    // Token bucket of the rate limit, guarded by this
+    private double permits;
+    private long lastRefillNanos = System.nanoTime();
+
+    public SmartCocoonCloudSimulator(Settings settings) throws IOException {
+        this.settings = settings;
+        this.permits = settings.maxRequestsPerSecond;
+        this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        this.server.setExecutor(executor);
+        this.server.createContext(AUTH_PATH, exchange -> handle(exchange, this::signIn));
+        this.server.createContext(FANS_PATH, exchange -> handle(exchange, this::fans));
+        this.server.start();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    /**
+     * @return base URL to configure as apiUrl of the account
+     */
+    public String getBaseUrl() {
+        return "http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort() + API_PATH;
+    }
+
+    /**
+     * Creates the account of the given user, if it does not exist yet.
+     *
+     * @return the device ids of the fans of the account
+     */
+    public List<String> getDeviceIds(String username) {
+        Account account = getAccount(username);
+        synchronized (account) {
+            List<String> deviceIds = new ArrayList<>();
+            for (Fan fan : account.fans.values()) {
+                deviceIds.add(fan.fanId);
+            }
+            return deviceIds;
+        }
+    }
+
+    /**
+     * Changes a fan as if it was changed through the app.
+     */
+    public void setFan(String username, String deviceId, String mode, int speedLevel) {
+        Account account = getAccount(username);
+        synchronized (account) {
+            for (Fan fan : account.fans.values()) {
+                if (fan.fanId.equals(deviceId)) {
+                    fan.set(mode, speedLevel);
+                    account.changed();
+                }
+            }
+        }
+        listeners.forEach(listener -> listener.accept(deviceId));
+    }
+
+    /**
+     * Adds a fan to the account, as if it was installed through the app.
+     *
+     * @return the device id of the new fan
+     */
+    public String addFan(String username) {
+        Account account = getAccount(username);
+        synchronized (account) {
+            Fan fan = account.addFan();
+            account.changed();
+            return fan.fanId;
+        }
+    }
+
+    /**
+     * Removes a fan from the account, as if it was removed through the app.
+     */
+    public void removeFan(String username, String deviceId) {
+        Account account = getAccount(username);
+        synchronized (account) {
+            if (account.fans.values().removeIf(fan -> fan.fanId.equals(deviceId))) {
+                account.changed();
+            }
+        }
+    }
+
+    /**
+     * @return the mode and whether the fan is on, e.g. "always_on/true", or null for an unknown fan
+     */
+    public @Nullable String getFanState(String username, String deviceId) {
+        Account account = getAccount(username);
+        synchronized (account) {
+            for (Fan fan : account.fans.values()) {
+                if (fan.fanId.equals(deviceId)) {
+                    return fan.mode + "/" + fan.fanOn;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return the speed level of the fan, from 0 to 12, or -1 for an unknown fan
+     */
+    public int getFanSpeedLevel(String username, String deviceId) {
+        Account account = getAccount(username);
+        synchronized (account) {
+            for (Fan fan : account.fans.values()) {
+                if (fan.fanId.equals(deviceId)) {
+                    return fan.speedLevel;
+                }
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @param listener called with the device id of every changed fan, after the change
+     */
+    public void addListener(Consumer<String> listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Rejects all tokens handed out so far, as if they expired.
+     */
+    public void expireTokens() {
+        tokens.clear();
+    }
+
+    public long getRequests() {
+        return requests.sum();
+    }
+
+    public long getLogins() {
+        return logins.sum();
+    }
+
+    /**
+     * @return number of requests answered with 429
+     */
+    public long getThrottled() {
+        return throttled.sum();
+    }
+
+    /**
+     * @return number of requests answered with 503 on purpose
+     */
+    public long getFailed() {
+        return failed.sum();
+    }
+
+    /**
+     * @return number of requests answered with 401
+     */
+    public long getUnauthorized() {
+        return unauthorized.sum();
+    }
+
+    /**
+     * @return number of fan updates applied
+     */
+    public long getUpdates() {
+        return updates.sum();
+    }
+
+    /**
+     * @return highest number of requests handled at the same time
+     */
+    public int getMaxConcurrentRequests() {
+        return maxConcurrentRequests.get();
+    }
+
+    private Account getAccount(String username) {
+        return accounts.computeIfAbsent(username, name -> new Account(name, settings.fansPerAccount));
+    }
+
+    @FunctionalInterface
+    private interface Handler {
+        Answer handle(HttpExchange exchange) throws IOException, InterruptedException;
+    }
+
+    private void handle(HttpExchange exchange, Handler handler) throws IOException {
+        requests.increment();
+        maxConcurrentRequests.accumulateAndGet(concurrentRequests.incrementAndGet(), Math::max);
+        try {
+            long delayMillis = settings.latency.toMillis();
+            long jitterMillis = settings.latencyJitter.toMillis();
+            if (jitterMillis > 0) {
+                delayMillis += ThreadLocalRandom.current().nextLong(jitterMillis + 1);
+            }
+            if (delayMillis > 0) {
+                Thread.sleep(delayMillis);
+            }
+            Answer answer;
+            if (!tryAcquire()) {
+                throttled.increment();
+                answer = new Answer(429, "{\"errors\":[\"Too many requests\"]}");
+                answer.headers.put("Retry-After", Integer.toString(settings.retryAfterSeconds));
+            } else if (settings.errorRate > 0 && ThreadLocalRandom.current().nextDouble() < settings.errorRate) {
+                failed.increment();
+                answer = new Answer(503, "{\"errors\":[\"Service unavailable\"]}");
+            } else {
+                answer = handler.handle(exchange);
+            }
+            send(exchange, answer);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            send(exchange, new Answer(503, ""));
+        } catch (JsonParseException | IllegalStateException | NumberFormatException e) {
+            send(exchange, new Answer(400, "{\"errors\":[\"Malformed request\"]}"));
+        } finally {
+            concurrentRequests.decrementAndGet();
+            exchange.close();
+        }
+    }
+
+    private synchronized boolean tryAcquire() {
+        if (settings.maxRequestsPerSecond <= 0) {
+            return true;
+        }
+        long now = System.nanoTime();
+        permits = Math.min(settings.maxRequestsPerSecond,
+                permits + (now - lastRefillNanos) * settings.maxRequestsPerSecond / TimeUnit.SECONDS.toNanos(1));
+        lastRefillNanos = now;
+        if (permits < 1) {
+            return false;
+        }
+        permits--;
+        return true;
+    }
+
+    private void send(HttpExchange exchange, Answer answer) throws IOException {
+        answer.headers.forEach((name, value) -> exchange.getResponseHeaders().add(name, value));
+        byte[] content = answer.content.getBytes(StandardCharsets.UTF_8);
+        if (content.length == 0) {
+            exchange.sendResponseHeaders(answer.status, -1);
+            return;
+        }
+        exchange.getResponseHeaders().add("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(answer.status, content.length);
+        try (OutputStream body = exchange.getResponseBody()) {
+            body.write(content);
+        }
+    }
+
+    private Answer signIn(HttpExchange exchange) throws IOException {
+        if (!"POST".equals(exchange.getRequestMethod())) {
+            return new Answer(405, "");
+        }
+        JsonObject body = readBody(exchange);
+        JsonElement email = body.get("email");
+        JsonElement password = body.get("password");
+        if (email == null || password == null || email.getAsString().isEmpty()
+                || password.getAsString().isEmpty()) {
+            unauthorized.increment();
+            return new Answer(401, "{\"errors\":[\"Invalid login credentials\"]}");
+        }
+        logins.increment();
+        Account account = getAccount(email.getAsString());
+        String accessToken = UUID.randomUUID().toString();
+        String client = UUID.randomUUID().toString();
+        long expiresAtMillis = System.currentTimeMillis() + settings.tokenLifetime.toMillis();
+        tokens.put(accessToken, new Token(account, client, expiresAtMillis));
+
+        Answer answer = new Answer(200, "{\"data\":{\"email\":" + gson.toJson(account.username) + "}}");
+        answer.headers.put("access-token", accessToken);
+        answer.headers.put("client", client);
+        answer.headers.put("uid", account.username);
+        answer.headers.put("expiry", Long.toString(TimeUnit.MILLISECONDS.toSeconds(expiresAtMillis)));
+        return answer;
+    }
+
+    private Answer fans(HttpExchange exchange) throws IOException, InterruptedException {
+        Account account = authorize(exchange);
+        if (account == null) {
+            unauthorized.increment();
+            return new Answer(401, "{\"errors\":[\"You need to sign in or sign up before continuing.\"]}");
+        }
+        String path = exchange.getRequestURI().getPath();
+        String fanId = path.length() > FANS_PATH.length() + 1 ? path.substring(FANS_PATH.length() + 1) : null;
+        String method = exchange.getRequestMethod();
+        if (fanId == null && "GET".equals(method)) {
+            return listFans(exchange, account);
+        } else if (fanId != null && "GET".equals(method)) {
+            synchronized (account) {
+                Fan fan = account.fans.get(fanId);
+                return fan != null ? new Answer(200, gson.toJson(fan.toJson())) : new Answer(404, "");
+            }
+        } else if (fanId != null && "PUT".equals(method)) {
+            return updateFan(exchange, account, fanId);
+        }
+        return new Answer(405, "");
+    }
+
+    private @Nullable Account authorize(HttpExchange exchange) {
+        String accessToken = exchange.getRequestHeaders().getFirst("access-token");
+        Token token = accessToken != null ? tokens.get(accessToken) : null;
+        if (token == null || System.currentTimeMillis() >= token.expiresAtMillis
+                || !token.client.equals(exchange.getRequestHeaders().getFirst("client"))
+                || !token.account.username.equals(exchange.getRequestHeaders().getFirst("uid"))) {
+            return null;
+        }
+        return token.account;
+    }
+
+    private Answer listFans(HttpExchange exchange, Account account) throws InterruptedException {
+        String ifNoneMatch = exchange.getRequestHeaders().getFirst("If-None-Match");
+        long waitMillis = settings.longPolling ? TimeUnit.SECONDS.toMillis(getWaitSeconds(exchange.getRequestURI()))
+                : 0;
+        synchronized (account) {
+            long deadline = System.currentTimeMillis() + waitMillis;
+            // Long poll: hold the request until the fans differ from the ones the client has
+            while (account.getEntityTag().equals(ifNoneMatch)) {
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0) {
+                    Answer answer = new Answer(304, "");
+                    answer.headers.put("ETag", account.getEntityTag());
+                    return answer;
+                }
+                account.wait(remaining);
+            }
+            JsonObject content = new JsonObject();
+            JsonArray fans = new JsonArray();
+            for (Fan fan : account.fans.values()) {
+                fans.add(fan.toJson());
+            }
+            content.add("fans", fans);
+            Answer answer = new Answer(200, gson.toJson(content));
+            answer.headers.put("ETag", account.getEntityTag());
+            return answer;
+        }
+    }
+
+    private static long getWaitSeconds(URI uri) {
+        String query = uri.getRawQuery();
+        if (query != null) {
+            for (String parameter : query.split("&")) {
+                if (parameter.startsWith("wait=")) {
+                    return Long.parseLong(parameter.substring("wait=".length()));
+                }
+            }
+        }
+        return 0;
+    }
+
+    private Answer updateFan(HttpExchange exchange, Account account, String fanId) throws IOException {
+        JsonObject body = readBody(exchange);
+        JsonElement mode = body.get("mode");
+        JsonElement speedLevel = body.get("speed_level");
+        if (mode != null && !List.of(MODES).contains(mode.getAsString())) {
+            return new Answer(422, "{\"errors\":[\"Invalid mode\"]}");
+        }
+        // The speed level is sent as string, both are accepted
+        int level = speedLevel != null ? Integer.parseInt(speedLevel.getAsString()) : -1;
+        if (speedLevel != null && (level < 0 || level > 12)) {
+            return new Answer(422, "{\"errors\":[\"Invalid speed level\"]}");
+        }
+        String deviceId;
+        Answer answer;
+        synchronized (account) {
+            Fan fan = account.fans.get(fanId);
+            if (fan == null) {
+                return new Answer(404, "");
+            }
+            fan.set(mode != null ? mode.getAsString() : fan.mode, level >= 0 ? level : fan.speedLevel);
+            account.changed();
+            deviceId = fan.fanId;
+            answer = new Answer(200, gson.toJson(fan.toJson()));
+        }
+        updates.increment();
+        listeners.forEach(listener -> listener.accept(deviceId));
+        return answer;
+    }
+
+    private static JsonObject readBody(HttpExchange exchange) throws IOException {
+        try (InputStreamReader reader = new InputStreamReader(exchange.getRequestBody(), StandardCharsets.UTF_8)) {
+            JsonElement body = JsonParser.parseReader(reader);
+            if (!body.isJsonObject()) {
+                throw new JsonParseException("Not an object");
+            }
+            return body.getAsJsonObject();
+        }
+    }
+
+    private static class Answer {
+        final int status;
+        final String content;
+        final Map<String, String> headers = new LinkedHashMap<>();
+
+        Answer(int status, String content) {
+            this.status = status;
+            this.content = content;
+        }
+    }
+
+    private static class Token {
+        final Account account;
+        final String client;
+        final long expiresAtMillis;
+
+        Token(Account account, String client, long expiresAtMillis) {
+            this.account = account;
+            this.client = client;
+            this.expiresAtMillis = expiresAtMillis;
+        }
+    }
+
+    /**
+     * The fans of a user, guarded by the account.
+     */
+    private static class Account {
+        final String username;
+        final Map<String, Fan> fans = new LinkedHashMap<>();
+        final long base;
+        int nextFan;
+        long version;
+
+        Account(String username, int fanCount) {
+            this.username = username;
+            this.base = Math.floorMod(username.hashCode(), 100000) * 100000L;
+            for (int i = 0; i < fanCount; i++) {
+                addFan();
+            }
+        }
+
+        Fan addFan() {
+            int i = nextFan++;
+            Fan fan = new Fan(Long.toString(base + i), String.format("%08x%04x", base, i));
+            fan.set(MODES[i % MODES.length], i % 13);
+            fans.put(fan.id, fan);
+            return fan;
+        }
+
+        String getEntityTag() {
+            return "\"" + version + "\"";
+        }
+
+        void changed() {
+            version++;
+            notifyAll();
+        }
+    }
+
+    private static class Fan {
+        final String id;
+        final String fanId;
+        String mode = "always_off";
+        int speedLevel;
+        boolean fanOn;
+
+        Fan(String id, String fanId) {
+            this.id = id;
+            this.fanId = fanId;
+        }
+
+        void set(String mode, int speedLevel) {
+            this.mode = mode;
+            this.speedLevel = speedLevel;
+            // Auto and eco let the thermostat decide, the simulated thermostat asks for air
+            this.fanOn = !"always_off".equals(mode);
+        }
+
+        JsonObject toJson() {
+            JsonObject json = new JsonObject();
+            json.addProperty("id", Long.parseLong(id));
+            json.addProperty("fan_id", fanId);
+            json.addProperty("name", "Fan " + fanId);
+            json.addProperty("mode", mode);
+            json.addProperty("speed_level", speedLevel);
+            json.addProperty("fan_on", fanOn);
+            json.addProperty("connected", true);
+            return json;
+        }
+    }
+}
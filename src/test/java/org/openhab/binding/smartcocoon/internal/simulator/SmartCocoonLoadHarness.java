@@ -0,0 +1,313 @@
+/**
+ * Copyright (c) 2010-2023 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.binding.smartcocoon.internal.simulator;
+
+import static org.openhab.binding.smartcocoon.internal.SmartCocoonBindingConstants.*;
+
+import java.lang.reflect.Proxy;
+import java.time.Duration;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.eclipse.jdt.annotation.Nullable;
+import org.eclipse.jetty.client.HttpClient;
+import org.openhab.binding.smartcocoon.internal.api.MemoryStorage;
+import org.openhab.binding.smartcocoon.internal.api.SmartCocoonAPI;
+import org.openhab.binding.smartcocoon.internal.api.SmartCocoonMetrics;
+import org.openhab.binding.smartcocoon.internal.handler.SmartCocoonBridgeHandler;
+import org.openhab.binding.smartcocoon.internal.handler.SmartCocoonHandler;
+import org.openhab.binding.smartcocoon.internal.handler.SmartCocoonPollCoordinator;
+import org.openhab.core.config.core.Configuration;
+import org.openhab.core.io.net.http.HttpClientFactory;
+import org.openhab.core.library.types.OnOffType;
+import org.openhab.core.storage.StorageService;
+import org.openhab.core.thing.Bridge;
+import org.openhab.core.thing.ChannelUID;
+import org.openhab.core.thing.Thing;
+import org.openhab.core.thing.ThingStatus;
+import org.openhab.core.thing.ThingStatusInfo;
+import org.openhab.core.thing.ThingUID;
+import org.openhab.core.thing.binding.ThingHandlerCallback;
+import org.openhab.core.thing.binding.builder.BridgeBuilder;
+import org.openhab.core.thing.binding.builder.ChannelBuilder;
+import org.openhab.core.thing.binding.builder.ThingBuilder;
+
+import com.google.gson.Gson;
+
+/**
+ * The {@link SmartCocoonLoadHarness} runs real account and fan handlers against the
+ * {@link SmartCocoonCloudSimulator} and reports poll latency, command round trip latency and the request rate.
+ *
+ * Run it with the load profile, options are passed as key=value pairs:
+ *
+ * <pre>
+ * mvn -P load -DskipChecks test-compile exec:exec -Dload.args="accounts=50 fans=20 duration=120"
+ * </pre>
+ *
+ * Options, with their defaults: accounts=5, fans=20 per account, duration=60 s, refresh=15 s, latency=50 ms,
+ * jitter=50 ms, errorRate=0, tokenLifetime=3600 s, rateLimit=0 requests per second (no limit),
+ * commands=60 per minute over all accounts, longPolling=false, virtualThreads=false.
+ *
+ * @author Mike Fedotov - Initial contribution
+ */
+@NonNullByDefault
+public class SmartCocoonLoadHarness {
+
+    private final Map<String, String> options;
+    private final Gson gson = new Gson();
+    private final Map<ThingUID, Bridge> bridges = new ConcurrentHashMap<>();
+    private final List<SmartCocoonBridgeHandler> bridgeHandlers = new ArrayList<>();
+    private final List<SmartCocoonHandler> fanHandlers = new ArrayList<>();
+    private final Map<SmartCocoonHandler, String> usernames = new HashMap<>();
+    // Commands sent and not seen by the cloud yet, by device id, with their start time
+    private final Map<String, Long> pendingCommands = new ConcurrentHashMap<>();
+    private final List<Long> commandRoundTrips = Collections.synchronizedList(new ArrayList<>());
+
+    public SmartCocoonLoadHarness(Map<String, String> options) {
+        this.options = options;
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            String[] option = arg.split("=", 2);
+            if (option.length != 2) {
+                throw new IllegalArgumentException("Expected key=value, got " + arg);
+            }
+            options.put(option[0], option[1]);
+        }
+        new SmartCocoonLoadHarness(options).run();
+        // The handlers' thread pools are not owned by the harness
+        System.exit(0);
+    }
+
+    public void run() throws Exception {
+        int accounts = getInt("accounts", 5);
+        Duration duration = Duration.ofSeconds(getInt("duration", 60));
+        SmartCocoonCloudSimulator.Settings settings = new SmartCocoonCloudSimulator.Settings();
+        settings.fansPerAccount = getInt("fans", 20);
+        settings.latency = Duration.ofMillis(getInt("latency", 50));
+        settings.latencyJitter = Duration.ofMillis(getInt("jitter", 50));
+        settings.errorRate = Double.parseDouble(options.getOrDefault("errorRate", "0"));
+        settings.tokenLifetime = Duration.ofSeconds(getInt("tokenLifetime", 3600));
+        settings.maxRequestsPerSecond = Double.parseDouble(options.getOrDefault("rateLimit", "0"));
+
+        ScheduledExecutorService commandDriver = Executors.newSingleThreadScheduledExecutor();
+        try (SmartCocoonCloudSimulator simulator = new SmartCocoonCloudSimulator(settings)) {
+            simulator.addListener(deviceId -> {
+                Long start = pendingCommands.remove(deviceId);
+                if (start != null) {
+                    commandRoundTrips.add(System.nanoTime() - start);
+                }
+            });
+            SmartCocoonPollCoordinator pollCoordinator = new SmartCocoonPollCoordinator(httpClientFactory());
+            try {
+                long start = System.nanoTime();
+                for (int i = 0; i < accounts; i++) {
+                    startAccount(simulator, pollCoordinator, "load" + i + "@example.com");
+                }
+                awaitOnline(Duration.ofMinutes(2));
+                System.out.printf("%d accounts with %d fans online after %d ms%n", accounts,
+                        fanHandlers.size(), TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+
+                long requestsBefore = simulator.getRequests();
+                long measureStart = System.nanoTime();
+                long commandPeriodMicros = TimeUnit.MINUTES.toMicros(1) / Math.max(1, getInt("commands", 60));
+                commandDriver.scheduleAtFixedRate(() -> sendCommand(simulator), commandPeriodMicros,
+                        commandPeriodMicros, TimeUnit.MICROSECONDS);
+                Thread.sleep(duration.toMillis());
+                commandDriver.shutdownNow();
+                double minutes = (System.nanoTime() - measureStart) / (double) TimeUnit.MINUTES.toNanos(1);
+                report(simulator, (simulator.getRequests() - requestsBefore) / minutes);
+            } finally {
+                fanHandlers.forEach(SmartCocoonHandler::dispose);
+                bridgeHandlers.forEach(SmartCocoonBridgeHandler::dispose);
+                pollCoordinator.dispose();
+            }
+        } finally {
+            commandDriver.shutdownNow();
+        }
+    }
+
+    private void startAccount(SmartCocoonCloudSimulator simulator, SmartCocoonPollCoordinator pollCoordinator,
+            String username) {
+        ThingUID bridgeUID = new ThingUID(THING_TYPE_BRIDGE, "account" + bridges.size());
+        Map<String, Object> configuration = new HashMap<>();
+        configuration.put("username", username);
+        configuration.put("password", "password");
+        configuration.put("apiUrl", simulator.getBaseUrl());
+        configuration.put("refreshInterval", getInt("refresh", 15));
+        configuration.put("longPolling", Boolean.parseBoolean(options.getOrDefault("longPolling", "false")));
+        configuration.put("virtualThreads", Boolean.parseBoolean(options.getOrDefault("virtualThreads", "false")));
+        Bridge bridge = BridgeBuilder.create(THING_TYPE_BRIDGE, bridgeUID)
+                .withConfiguration(new Configuration(configuration)).build();
+        bridges.put(bridgeUID, bridge);
+        SmartCocoonBridgeHandler bridgeHandler = new SmartCocoonBridgeHandler(bridge, pollCoordinator,
+                storageService(), gson);
+        bridge.setHandler(bridgeHandler);
+        bridgeHandler.setCallback(callback());
+        bridgeHandler.initialize();
+        bridgeHandlers.add(bridgeHandler);
+
+        for (String deviceId : simulator.getDeviceIds(username)) {
+            ThingUID thingUID = new ThingUID(THING_TYPE_FAN, bridgeUID, deviceId);
+            Map<String, Object> fanConfiguration = new HashMap<>();
+            fanConfiguration.put("deviceId", deviceId);
+            fanConfiguration.put("commandCoalescingWindow", 0);
+            ThingBuilder thingBuilder = ThingBuilder.create(THING_TYPE_FAN, thingUID).withBridge(bridgeUID)
+                    .withConfiguration(new Configuration(fanConfiguration));
+            for (String channelId : List.of(CHANNEL_FAN_SWITCH, CHANNEL_FAN_SPEED)) {
+                thingBuilder.withChannel(ChannelBuilder.create(new ChannelUID(thingUID, channelId), null).build());
+            }
+            Thing thing = thingBuilder.build();
+            SmartCocoonHandler handler = new SmartCocoonHandler(thing, ZoneId::systemDefault);
+            thing.setHandler(handler);
+            handler.setCallback(callback());
+            handler.initialize();
+            fanHandlers.add(handler);
+            usernames.put(handler, username);
+        }
+    }
+
+    private void awaitOnline(Duration timeout) throws InterruptedException {
+        long deadline = System.nanoTime() + timeout.toNanos();
+        while (System.nanoTime() < deadline) {
+            if (fanHandlers.stream().allMatch(handler -> handler.getThing().getStatus() == ThingStatus.ONLINE)) {
+                return;
+            }
+            Thread.sleep(100);
+        }
+        throw new IllegalStateException("Not all fans online after " + timeout);
+    }
+
+    /**
+     * Switches a random fan to the other mode through its power channel.
+     */
+    private void sendCommand(SmartCocoonCloudSimulator simulator) {
+        SmartCocoonHandler handler = fanHandlers.get(ThreadLocalRandom.current().nextInt(fanHandlers.size()));
+        String deviceId = handler.getDeviceId();
+        String username = usernames.get(handler);
+        if (username == null || pendingCommands.containsKey(deviceId)) {
+            return;
+        }
+        String state = simulator.getFanState(username, deviceId);
+        OnOffType command = state != null && state.startsWith("always_on") ? OnOffType.OFF : OnOffType.ON;
+        pendingCommands.put(deviceId, System.nanoTime());
+        handler.handleCommand(new ChannelUID(handler.getThing().getUID(), CHANNEL_FAN_SWITCH), command);
+    }
+
+    private void report(SmartCocoonCloudSimulator simulator, double requestsPerMinute) {
+        long polls = 0;
+        long unchangedPolls = 0;
+        long[] worstPollMillis = new long[3];
+        double[] percentiles = { 0.5, 0.95, 0.99 };
+        for (SmartCocoonBridgeHandler bridgeHandler : bridgeHandlers) {
+            SmartCocoonAPI api = bridgeHandler.getSmartCocoonAPI();
+            if (api == null) {
+                continue;
+            }
+            SmartCocoonMetrics metrics = api.getMetrics();
+            polls += metrics.getPolls();
+            unchangedPolls += metrics.getUnchangedPolls();
+            for (int i = 0; i < percentiles.length; i++) {
+                worstPollMillis[i] = Math.max(worstPollMillis[i],
+                        metrics.getPollFetch().percentileMillis(percentiles[i]));
+            }
+        }
+        List<Long> roundTrips;
+        synchronized (commandRoundTrips) {
+            roundTrips = new ArrayList<>(commandRoundTrips);
+        }
+        Collections.sort(roundTrips);
+
+        System.out.printf("Polls: %d, unchanged: %d%n", polls, unchangedPolls);
+        System.out.printf("Poll latency of the slowest account, p50: <= %d ms, p95: <= %d ms, p99: <= %d ms%n",
+                worstPollMillis[0], worstPollMillis[1], worstPollMillis[2]);
+        System.out.printf("Command round trips: %d, not seen by the cloud: %d%n", roundTrips.size(),
+                pendingCommands.size());
+        if (!roundTrips.isEmpty()) {
+            System.out.printf("Command round trip p50: %d ms, p95: %d ms, p99: %d ms, max: %d ms%n",
+                    percentileMillis(roundTrips, 0.5), percentileMillis(roundTrips, 0.95),
+                    percentileMillis(roundTrips, 0.99), percentileMillis(roundTrips, 1));
+        }
+        System.out.printf("Requests per minute: %.1f, per account: %.1f%n", requestsPerMinute,
+                requestsPerMinute / Math.max(1, bridgeHandlers.size()));
+        System.out.printf("Logins: %d, throttled: %d, failed on purpose: %d, unauthorized: %d%n",
+                simulator.getLogins(), simulator.getThrottled(), simulator.getFailed(), simulator.getUnauthorized());
+    }
+
+    private static long percentileMillis(List<Long> sortedNanos, double percentile) {
+        int index = (int) Math.ceil(percentile * sortedNanos.size()) - 1;
+        return TimeUnit.NANOSECONDS.toMillis(sortedNanos.get(Math.max(0, index)));
+    }
+
+    private int getInt(String option, int defaultValue) {
+        String value = options.get(option);
+        return value != null ? Integer.parseInt(value) : defaultValue;
+    }
+
+    private static HttpClientFactory httpClientFactory() {
+        return (HttpClientFactory) Proxy.newProxyInstance(HttpClientFactory.class.getClassLoader(),
+                new Class<?>[] { HttpClientFactory.class }, (proxy, method, args) -> {
+                    if ("createHttpClient".equals(method.getName())) {
+                        return new HttpClient();
+                    }
+                    throw new UnsupportedOperationException(method.getName());
+                });
+    }
+
+    private static StorageService storageService() {
+        return (StorageService) Proxy.newProxyInstance(StorageService.class.getClassLoader(),
+                new Class<?>[] { StorageService.class }, (proxy, method, args) -> {
+                    if ("getStorage".equals(method.getName())) {
+                        return new MemoryStorage();
+                    }
+                    throw new UnsupportedOperationException(method.getName());
+                });
+    }
+
+    /**
+     * @return a callback doing what the framework does for the handlers: tracking the thing status and resolving
+     *         the bridge, with all channels linked
+     */
+    private ThingHandlerCallback callback() {
+        return (ThingHandlerCallback) Proxy.newProxyInstance(ThingHandlerCallback.class.getClassLoader(),
+                new Class<?>[] { ThingHandlerCallback.class }, (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "isChannelLinked":
+                            return Boolean.TRUE;
+                        case "statusUpdated":
+                            ((Thing) args[0]).setStatusInfo((ThingStatusInfo) args[1]);
+                            return null;
+                        case "getBridge":
+                            return getBridge((ThingUID) args[0]);
+                        default:
+                            return null;
+                    }
+                });
+    }
+
+    private @Nullable Bridge getBridge(ThingUID bridgeUID) {
+        return bridges.get(bridgeUID);
+    }
+}